@@ -0,0 +1,138 @@
+---------------------------------------------------------------
+-- Copyright (C) 2017-2026 Frode Randers
+-- All rights reserved
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--    http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+---------------------------------------------------------------
+
+---------------------------------------------------------------
+-- Database schema upgrade: Derby
+--
+-- Upgrades tables created by an earlier version of
+-- database-create.sql, having 32-bit process ids. Derby can not
+-- change the type of an (identity) column in place, so tables
+-- are copied. Run with the process manager(s) stopped.
+--
+-- Derby can not re-seed an identity column from a query either,
+-- so the identity starts over at 1 after the copy. Process ids
+-- must therefore be allocated by the process manager from now
+-- on, i.e. policy 'process-id-block-size' > 0, from a sequence
+-- that is seeded below to follow the copied process ids.
+---------------------------------------------------------------
+
+---------------------------------------------------------------
+-- Blocks of process ids, reserved in advance when process ids
+-- are allocated by the process manager (and not by the database)
+--
+CREATE TABLE mu_process_sequence (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  next_value BIGINT NOT NULL
+);
+
+---------------------------------------------------------------
+-- 64-bit process ids
+--
+CREATE TABLE mu_process_new (
+  process_id BIGINT NOT NULL GENERATED BY DEFAULT AS IDENTITY (START WITH 1, INCREMENT BY 1),
+  PRIMARY KEY (process_id),
+
+  correlation_id VARCHAR(255) NOT NULL, -- for now
+
+  state INTEGER NOT NULL DEFAULT 0, -- 0=new, 1=progressing, 2=successful, 3=compensated, 4=compensation-failed, 5=abandoned
+  accept_failure BOOLEAN NOT NULL DEFAULT true,
+  result CLOB DEFAULT NULL,
+
+  created TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  modified TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+INSERT INTO mu_process_new (process_id, correlation_id, state, accept_failure, result, created, modified)
+SELECT process_id, correlation_id, state, accept_failure, result, created, modified
+FROM mu_process;
+
+CREATE TABLE mu_process_step_new (
+  process_id BIGINT NOT NULL,
+  step_id INTEGER NOT NULL, -- step id
+  PRIMARY KEY (process_id, step_id),
+
+  class_name VARCHAR(255) NOT NULL,  -- qualified class name must fit
+  method_name VARCHAR(255) NOT NULL, -- method name must fit
+  activity_params CLOB NOT NULL,
+  orchestr_params CLOB DEFAULT NULL,
+  previous_state CLOB DEFAULT NULL,
+
+  compensate_if_failure BOOLEAN NOT NULL DEFAULT false,
+  transaction_successful BOOLEAN DEFAULT NULL,
+
+  retries INTEGER NOT NULL DEFAULT 0,
+  next_attempt_at TIMESTAMP DEFAULT NULL, -- when a failed compensation may be re-attempted
+  created TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  modified TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+INSERT INTO mu_process_step_new (process_id, step_id, class_name, method_name, activity_params, orchestr_params,
+                                 previous_state, compensate_if_failure, transaction_successful, retries, created, modified)
+SELECT process_id, step_id, class_name, method_name, activity_params, orchestr_params,
+       previous_state, compensate_if_failure, transaction_successful, retries, created, modified
+FROM mu_process_step;
+
+DROP TABLE mu_process_step;
+DROP TABLE mu_process;
+
+RENAME TABLE mu_process_new TO mu_process;
+RENAME TABLE mu_process_step_new TO mu_process_step;
+
+CREATE UNIQUE INDEX mu_process_corrid_ix ON mu_process ( correlation_id );
+
+ALTER TABLE mu_process_step
+  ADD CONSTRAINT mu_p_s_process_ex
+    FOREIGN KEY (process_id) REFERENCES mu_process(process_id);
+
+-- Process ids allocated by the process manager follow the copied
+-- process ids
+--
+INSERT INTO mu_process_sequence (name, next_value)
+SELECT 'mu_process', COALESCE(MAX(process_id), 0) + 1
+FROM mu_process;
+
+---------------------------------------------------------------
+-- Supports recovery, which looks for processes in some state(s)
+-- not modified for a while
+--
+CREATE INDEX mu_process_state_ix ON mu_process ( state, modified );
+
+---------------------------------------------------------------
+-- Supports recovery, which looks for steps that are (or are not)
+-- due for another compensation attempt
+--
+CREATE INDEX mu_process_step_due_ix ON mu_process_step ( process_id, next_attempt_at );
+
+---------------------------------------------------------------
+-- Recovery leases, when recovering processes from several nodes
+--
+ALTER TABLE mu_process ADD COLUMN lease_owner VARCHAR(64) DEFAULT NULL;
+ALTER TABLE mu_process ADD COLUMN lease_expiry TIMESTAMP DEFAULT NULL;
+
+---------------------------------------------------------------
+-- Leadership among process managers (nodes), the leader being
+-- the only node running background tasks
+--
+CREATE TABLE mu_process_leader (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  owner VARCHAR(64) DEFAULT NULL, -- node currently leading
+  lease_expiry TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
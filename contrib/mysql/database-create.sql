@@ -38,11 +38,41 @@ CREATE TABLE mu_process (
   result TEXT DEFAULT NULL,
 
   created TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-  modified TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+  modified TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+  lease_owner VARCHAR(64) DEFAULT NULL, -- node recovering the process, when claiming recovery leases
+  lease_expiry TIMESTAMP NULL DEFAULT NULL
 );
 
 CREATE UNIQUE INDEX mu_process_corrid_ix ON mu_process ( correlation_id );
 
+-- Supports recovery, which looks for processes in some state(s)
+-- not modified for a while
+CREATE INDEX mu_process_state_ix ON mu_process ( state, modified );
+
+-- -------------------------------------------------------------
+-- Blocks of process ids, reserved in advance when process ids
+-- are allocated by the process manager (and not by the database)
+--
+CREATE TABLE mu_process_sequence (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  next_value BIGINT NOT NULL
+);
+
+-- -------------------------------------------------------------
+-- Leadership among process managers (nodes), the leader being
+-- the only node running background tasks
+--
+CREATE TABLE mu_process_leader (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  owner VARCHAR(64) DEFAULT NULL, -- node currently leading
+  lease_expiry TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
 -- -------------------------------------------------------------
 --
 --
@@ -64,7 +94,13 @@ CREATE TABLE mu_process_step (
   transaction_successful BOOLEAN DEFAULT NULL,
 
   retries INTEGER NOT NULL DEFAULT 0,
+  next_attempt_at TIMESTAMP NULL DEFAULT NULL, -- when a failed compensation may be re-attempted
   created TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
   modified TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
 
+-- -------------------------------------------------------------
+-- Supports recovery, which looks for steps that are (or are not)
+-- due for another compensation attempt
+--
+CREATE INDEX mu_process_step_due_ix ON mu_process_step ( process_id, next_attempt_at );
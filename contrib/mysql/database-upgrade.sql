@@ -0,0 +1,71 @@
+-- -------------------------------------------------------------
+-- Copyright (C) 2017-2026 Frode Randers
+-- All rights reserved
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--    http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+-- -------------------------------------------------------------
+
+-- -------------------------------------------------------------
+-- Database schema upgrade: MySQL
+--
+-- Upgrades tables created by an earlier version of
+-- database-create.sql. Process ids are already 64-bit on MySQL
+-- (SERIAL, i.e. BIGINT UNSIGNED), so only the process id
+-- sequence is added.
+-- -------------------------------------------------------------
+
+-- -------------------------------------------------------------
+-- Blocks of process ids, reserved in advance when process ids
+-- are allocated by the process manager (and not by the database)
+--
+CREATE TABLE mu_process_sequence (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  next_value BIGINT NOT NULL
+);
+
+-- -------------------------------------------------------------
+-- Supports recovery, which looks for processes in some state(s)
+-- not modified for a while
+--
+CREATE INDEX mu_process_state_ix ON mu_process ( state, modified );
+
+-- -------------------------------------------------------------
+-- Backoff of re-compensation attempts
+--
+ALTER TABLE mu_process_step ADD COLUMN next_attempt_at TIMESTAMP NULL DEFAULT NULL;
+
+-- -------------------------------------------------------------
+-- Supports recovery, which looks for steps that are (or are not)
+-- due for another compensation attempt
+--
+CREATE INDEX mu_process_step_due_ix ON mu_process_step ( process_id, next_attempt_at );
+
+-- -------------------------------------------------------------
+-- Recovery leases, when recovering processes from several nodes
+--
+ALTER TABLE mu_process ADD COLUMN lease_owner VARCHAR(64) DEFAULT NULL;
+ALTER TABLE mu_process ADD COLUMN lease_expiry TIMESTAMP NULL DEFAULT NULL;
+
+-- -------------------------------------------------------------
+-- Leadership among process managers (nodes), the leader being
+-- the only node running background tasks
+--
+CREATE TABLE mu_process_leader (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  owner VARCHAR(64) DEFAULT NULL, -- node currently leading
+  lease_expiry TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
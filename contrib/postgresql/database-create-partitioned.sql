@@ -0,0 +1,319 @@
+---------------------------------------------------------------
+-- Copyright (C) 2017-2026 Frode Randers
+-- All rights reserved
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--    http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+---------------------------------------------------------------
+
+---------------------------------------------------------------
+-- Database schema: PostgreSQL (12 or later), partitioned
+--
+-- An alternative to database-create.sql, where mu_process and
+-- mu_process_step are range partitioned on process id. Process
+-- ids are handed out in increasing order, so every partition
+-- holds processes created during some span of time. Use with
+-- the policy 'partitioned-process-storage' set to 'true'.
+--
+-- The process manager then drops whole partitions once every
+-- process in them has been retired (and passed retention),
+-- rather than removing retired processes one by one. Retired
+-- processes in partitions still holding live or abandoned
+-- processes are removed chunk by chunk, outside of partition
+-- maintenance. Partitions are added ahead of need, each holding
+-- 'processes-per-partition' process ids, so choose this to be
+-- about a day's worth of processes.
+--
+-- Observe:
+--  - A unique index must include the partition key, so the
+--    uniqueness of correlation ids across partitions is kept by
+--    the (non-partitioned) table mu_process_correlation, which
+--    is maintained by triggers on mu_process. Rows belonging to
+--    dropped partitions are removed by the process manager,
+--    chunk by chunk.
+--  - Process ids reserved in blocks (policy 'process-id-block-size')
+--    must be used before their partition is dropped, so keep
+--    blocks small compared to partitions.
+--
+-- Remember to grant privileges to the specific database user:
+--
+--    GRANT ALL PRIVILEGES ON TABLE mu_process TO muproc;
+--    GRANT ALL PRIVILEGES ON TABLE mu_process_step TO muproc;
+--    GRANT ALL PRIVILEGES ON TABLE mu_process_partition TO muproc;
+--    GRANT ALL PRIVILEGES ON TABLE mu_process_correlation TO muproc;
+--    GRANT ALL PRIVILEGES ON TABLE mu_process_process_id_seq TO muproc;
+--
+---------------------------------------------------------------
+
+---------------------------------------------------------------
+-- Processes
+--
+CREATE TABLE mu_process (
+  process_id BIGSERIAL,
+  PRIMARY KEY (process_id),
+
+  correlation_id VARCHAR(255) NOT NULL, -- for now
+
+  state INTEGER NOT NULL DEFAULT 0, -- 0=new, 1=progressing, 2=successful, 3=compensated, 4=compensation-failed, 5=abandoned
+  accept_failure BOOLEAN NOT NULL DEFAULT true,
+
+  result TEXT DEFAULT NULL,
+
+  created TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  modified TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+  lease_owner VARCHAR(64) DEFAULT NULL, -- node recovering the process, when claiming recovery leases
+  lease_expiry TIMESTAMP DEFAULT NULL,
+
+  recovery_bucket INTEGER GENERATED ALWAYS AS (CAST(MOD(process_id * 613, 1024) AS INTEGER)) STORED -- for sharding recovery between nodes
+
+) PARTITION BY RANGE (process_id);
+
+-- Supports recovery, which looks for processes in some state(s)
+-- not modified for a while
+CREATE INDEX mu_process_state_ix ON mu_process ( state, modified );
+
+-- Supports recovery when sharded between nodes, each node
+-- looking for processes in its own recovery buckets
+CREATE INDEX mu_process_bucket_ix ON mu_process ( recovery_bucket, state, modified );
+
+---------------------------------------------------------------
+-- Correlation ids of processes, unique across partitions. A
+-- row is inserted in the same transaction as the process, so
+-- a duplicate correlation id fails the insert of the process.
+--
+CREATE TABLE mu_process_correlation (
+  correlation_id VARCHAR(255) NOT NULL,
+  PRIMARY KEY (correlation_id),
+
+  process_id BIGINT NOT NULL
+);
+
+-- Supports removing correlation ids of dropped partitions
+CREATE INDEX mu_process_correlation_procid_ix ON mu_process_correlation ( process_id );
+
+CREATE OR REPLACE FUNCTION mu_process_correlation_insert()
+RETURNS TRIGGER AS $$
+BEGIN
+  INSERT INTO mu_process_correlation (correlation_id, process_id) VALUES (NEW.correlation_id, NEW.process_id);
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER mu_process_correlation_insert_tr
+AFTER INSERT ON mu_process
+FOR EACH ROW EXECUTE FUNCTION mu_process_correlation_insert();
+
+CREATE OR REPLACE FUNCTION mu_process_correlation_delete()
+RETURNS TRIGGER AS $$
+BEGIN
+  DELETE FROM mu_process_correlation WHERE correlation_id = OLD.correlation_id AND process_id = OLD.process_id;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Not fired when partitions are dropped
+CREATE TRIGGER mu_process_correlation_delete_tr
+AFTER DELETE ON mu_process
+FOR EACH ROW EXECUTE FUNCTION mu_process_correlation_delete();
+
+---------------------------------------------------------------
+-- Blocks of process ids, reserved in advance when process ids
+-- are allocated by the process manager (and not by the database)
+--
+CREATE TABLE mu_process_sequence (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  next_value BIGINT NOT NULL
+);
+
+---------------------------------------------------------------
+-- Leadership among process managers (nodes), the leader being
+-- the only node running background tasks
+--
+CREATE TABLE mu_process_leader (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  owner VARCHAR(64) DEFAULT NULL, -- node currently leading
+  lease_expiry TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+---------------------------------------------------------------
+--
+--
+CREATE TABLE mu_process_step (
+  process_id BIGINT NOT NULL,
+  step_id INTEGER NOT NULL, -- step id
+  PRIMARY KEY (process_id, step_id),
+
+  CONSTRAINT mu_p_s_process_ex
+  FOREIGN KEY (process_id) REFERENCES mu_process(process_id),
+
+  class_name VARCHAR(255) NOT NULL,  -- qualified class name must fit
+  method_name VARCHAR(255) NOT NULL, -- method name must fit
+  activity_params TEXT NOT NULL,
+  orchestr_params TEXT DEFAULT NULL,
+  previous_state TEXT DEFAULT NULL,
+
+  compensate_if_failure BOOLEAN NOT NULL DEFAULT false,
+  transaction_successful BOOLEAN DEFAULT NULL,
+
+  retries INTEGER NOT NULL DEFAULT 0,
+  next_attempt_at TIMESTAMP DEFAULT NULL, -- when a failed compensation may be re-attempted
+  created TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  modified TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+
+) PARTITION BY RANGE (process_id);
+
+---------------------------------------------------------------
+-- Supports recovery, which looks for steps that are (or are not)
+-- due for another compensation attempt
+--
+CREATE INDEX mu_process_step_due_ix ON mu_process_step ( process_id, next_attempt_at );
+
+---------------------------------------------------------------
+-- Catches processes with ids not (yet) covered by a partition,
+-- i.e. if partitions were not added in time. Never dropped,
+-- but cleaned up chunk by chunk.
+--
+CREATE TABLE mu_process_default PARTITION OF mu_process DEFAULT;
+CREATE UNIQUE INDEX mu_process_default_corrid_ix ON mu_process_default ( correlation_id );
+
+CREATE TABLE mu_process_step_default PARTITION OF mu_process_step DEFAULT;
+
+---------------------------------------------------------------
+-- Partitions, covering process ids from lower_id (inclusive)
+-- to upper_id (exclusive). Partitions of mu_process and
+-- mu_process_step are named mu_process_p<lower_id> and
+-- mu_process_step_p<lower_id> respectively.
+--
+CREATE TABLE mu_process_partition (
+  lower_id BIGINT NOT NULL,
+  PRIMARY KEY (lower_id),
+
+  upper_id BIGINT NOT NULL
+);
+
+---------------------------------------------------------------
+-- Adds partitions, each covering ids_per_partition process ids,
+-- until there is room for at least ids_per_partition more
+-- processes. Returns number of added partitions.
+--
+CREATE OR REPLACE FUNCTION mu_process_add_partitions(ids_per_partition BIGINT)
+RETURNS INTEGER AS $$
+DECLARE
+  high_water BIGINT;
+  lower_bound BIGINT;
+  upper_bound BIGINT;
+  added INTEGER := 0;
+BEGIN
+  -- Serializes maintenance between process managers
+  LOCK TABLE mu_process_partition IN EXCLUSIVE MODE;
+
+  -- Highest process id handed out, by the database or in blocks by the process manager(s)
+  SELECT GREATEST(
+           (SELECT last_value FROM mu_process_process_id_seq),
+           (SELECT COALESCE(MAX(next_value), 0) FROM mu_process_sequence))
+  INTO high_water;
+
+  -- Partitions may not overlap processes already in the default partition
+  SELECT GREATEST(
+           (SELECT COALESCE(MAX(upper_id), 1) FROM mu_process_partition),
+           (SELECT COALESCE(MAX(process_id), 0) + 1 FROM mu_process_default))
+  INTO lower_bound;
+
+  WHILE lower_bound <= high_water + ids_per_partition LOOP
+    upper_bound := lower_bound + ids_per_partition;
+
+    EXECUTE format('CREATE TABLE %I PARTITION OF mu_process FOR VALUES FROM (%s) TO (%s)',
+                   'mu_process_p' || lower_bound, lower_bound, upper_bound);
+    EXECUTE format('CREATE UNIQUE INDEX %I ON %I ( correlation_id )',
+                   'mu_process_p' || lower_bound || '_corrid_ix', 'mu_process_p' || lower_bound);
+    EXECUTE format('CREATE TABLE %I PARTITION OF mu_process_step FOR VALUES FROM (%s) TO (%s)',
+                   'mu_process_step_p' || lower_bound, lower_bound, upper_bound);
+
+    INSERT INTO mu_process_partition (lower_id, upper_id) VALUES (lower_bound, upper_bound);
+
+    lower_bound := upper_bound;
+    added := added + 1;
+  END LOOP;
+
+  RETURN added;
+END;
+$$ LANGUAGE plpgsql;
+
+---------------------------------------------------------------
+-- Drops partitions where every process is retired (SUCCESSFUL
+-- or COMPENSATED) and not modified during the last
+-- retention_seconds. Only partitions below the most recent
+-- process are considered. Returns process id ranges, from
+-- partition_lower (inclusive) to partition_upper (exclusive), of
+-- dropped partitions as well as of partitions that are otherwise
+-- old enough, but still hold live or abandoned processes. Retired
+-- processes in the latter (and in the default partition), as well
+-- as correlation ids of the former, are left for the process
+-- manager to remove chunk by chunk.
+--
+CREATE OR REPLACE FUNCTION mu_process_drop_retired_partitions(retention_seconds INTEGER)
+RETURNS TABLE (partition_lower BIGINT, partition_upper BIGINT, is_dropped BOOLEAN) AS $$
+DECLARE
+  p RECORD;
+  high_water BIGINT;
+  cutoff TIMESTAMP := CURRENT_TIMESTAMP - retention_seconds * INTERVAL '1 second';
+  is_recent BOOLEAN;
+  is_pinned BOOLEAN;
+BEGIN
+  -- Serializes maintenance between process managers
+  LOCK TABLE mu_process_partition IN EXCLUSIVE MODE;
+
+  SELECT COALESCE(MAX(process_id), 0) INTO high_water FROM mu_process;
+
+  FOR p IN SELECT lower_id, upper_id FROM mu_process_partition WHERE upper_id <= high_water ORDER BY lower_id LOOP
+    EXECUTE format('LOCK TABLE %I IN SHARE MODE', 'mu_process_p' || p.lower_id);
+
+    EXECUTE format('SELECT EXISTS (SELECT 1 FROM %I WHERE modified >= $1)', 'mu_process_p' || p.lower_id)
+    INTO is_recent USING cutoff;
+    CONTINUE WHEN is_recent; -- wait for retention to pass
+
+    EXECUTE format('SELECT EXISTS (SELECT 1 FROM %I WHERE state NOT IN (2, 3))', 'mu_process_p' || p.lower_id)
+    INTO is_pinned;
+
+    IF NOT is_pinned THEN
+      EXECUTE format('ALTER TABLE mu_process_step DETACH PARTITION %I', 'mu_process_step_p' || p.lower_id);
+      EXECUTE format('DROP TABLE %I', 'mu_process_step_p' || p.lower_id);
+      EXECUTE format('ALTER TABLE mu_process DETACH PARTITION %I', 'mu_process_p' || p.lower_id);
+      EXECUTE format('DROP TABLE %I', 'mu_process_p' || p.lower_id);
+
+      DELETE FROM mu_process_partition WHERE lower_id = p.lower_id;
+    END IF;
+
+    partition_lower := p.lower_id;
+    partition_upper := p.upper_id;
+    is_dropped := NOT is_pinned;
+    RETURN NEXT;
+  END LOOP;
+
+  -- Processes that ended up in the default partition
+  IF EXISTS (SELECT 1 FROM mu_process_default WHERE state IN (2, 3) AND modified < cutoff) THEN
+    SELECT MIN(process_id), MAX(process_id) + 1 INTO partition_lower, partition_upper FROM mu_process_default;
+    is_dropped := false;
+    RETURN NEXT;
+  END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+---------------------------------------------------------------
+-- Initial partitions (the process manager adds more as needed)
+--
+SELECT mu_process_add_partitions(1000000);
@@ -0,0 +1,337 @@
+---------------------------------------------------------------
+-- Copyright (C) 2017-2026 Frode Randers
+-- All rights reserved
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--    http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+---------------------------------------------------------------
+
+---------------------------------------------------------------
+-- Database schema: MS SQL Server (2016 or later), partitioned
+--
+-- An alternative to database-create.sql, where mu_process and
+-- mu_process_step are range partitioned on process id. Process
+-- ids are handed out in increasing order, so every partition
+-- holds processes created during some span of time. Use with
+-- the policy 'partitioned-process-storage' set to 'true'.
+--
+-- The process manager then truncates (and merges away) whole
+-- partitions once every process in them has been retired (and
+-- passed retention), rather than removing retired processes one
+-- by one. Retired processes in partitions still holding live or
+-- abandoned processes are removed chunk by chunk, outside of
+-- partition maintenance. Partitions are added ahead of need,
+-- each holding 'processes-per-partition' process ids, so choose
+-- this to be about a day's worth of processes.
+--
+-- Observe:
+--  - Partitions can not be truncated if indexes are not aligned
+--    with the partitions, so the uniqueness of correlation ids is
+--    kept by the (non-partitioned) table mu_process_correlation,
+--    which is maintained by triggers on mu_process. Rows belonging
+--    to truncated partitions are removed by the process manager,
+--    chunk by chunk.
+--  - Tables referenced by a foreign key can not be truncated, so
+--    there is no foreign key from process steps to processes.
+--  - Process ids reserved in blocks (policy 'process-id-block-size')
+--    must be used before their partition is truncated, so keep
+--    blocks small compared to partitions.
+---------------------------------------------------------------
+
+---------------------------------------------------------------
+-- Partitions, covering process ids from one boundary (inclusive)
+-- to the next (exclusive). The first partition (below 1) is
+-- always empty.
+--
+CREATE PARTITION FUNCTION mu_process_pf (BIGINT)
+AS RANGE RIGHT FOR VALUES (1);
+GO
+
+CREATE PARTITION SCHEME mu_process_ps
+AS PARTITION mu_process_pf ALL TO ([PRIMARY]);
+GO
+
+---------------------------------------------------------------
+-- Processes
+--
+CREATE TABLE mu_process (
+  process_id BIGINT IDENTITY(1,1),
+  PRIMARY KEY (process_id),
+
+  correlation_id VARCHAR(255) NOT NULL, -- for now
+
+  state INTEGER NOT NULL DEFAULT 0, -- 0=new, 1=progressing, 2=successful, 3=compensated, 4=compensation-failed, 5=abandoned
+  accept_failure BIT NOT NULL DEFAULT 1,
+
+  result VARCHAR(MAX) DEFAULT NULL,
+
+  created DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  modified DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+  lease_owner VARCHAR(64) DEFAULT NULL, -- node recovering the process, when claiming recovery leases
+  lease_expiry DATETIME DEFAULT NULL,
+
+  recovery_bucket AS CAST((process_id * 613) % 1024 AS INTEGER) PERSISTED -- for sharding recovery between nodes
+) ON mu_process_ps (process_id);
+GO
+
+CREATE INDEX mu_process_corrid_ix ON mu_process ( correlation_id ) ON mu_process_ps (process_id);
+GO
+
+-- Supports recovery, which looks for processes in some state(s)
+-- not modified for a while
+CREATE INDEX mu_process_state_ix ON mu_process ( state, modified ) ON mu_process_ps (process_id);
+GO
+
+-- Supports recovery when sharded between nodes, each node
+-- looking for processes in its own recovery buckets
+CREATE INDEX mu_process_bucket_ix ON mu_process ( recovery_bucket, state, modified ) ON mu_process_ps (process_id);
+GO
+
+---------------------------------------------------------------
+-- Correlation ids of processes, unique across partitions. A
+-- row is inserted in the same transaction as the process, so
+-- a duplicate correlation id fails the insert of the process.
+--
+CREATE TABLE mu_process_correlation (
+  correlation_id VARCHAR(255) NOT NULL,
+  PRIMARY KEY (correlation_id),
+
+  process_id BIGINT NOT NULL
+);
+GO
+
+-- Supports removing correlation ids of truncated partitions
+CREATE INDEX mu_process_correlation_procid_ix ON mu_process_correlation ( process_id );
+GO
+
+CREATE TRIGGER mu_process_correlation_insert_tr ON mu_process
+AFTER INSERT
+AS
+BEGIN
+  SET NOCOUNT ON;
+
+  INSERT INTO mu_process_correlation (correlation_id, process_id)
+  SELECT correlation_id, process_id
+  FROM inserted;
+END;
+GO
+
+-- Not fired when partitions are truncated
+CREATE TRIGGER mu_process_correlation_delete_tr ON mu_process
+AFTER DELETE
+AS
+BEGIN
+  SET NOCOUNT ON;
+
+  DELETE c
+  FROM mu_process_correlation c
+  INNER JOIN deleted d
+    ON (d.correlation_id = c.correlation_id AND d.process_id = c.process_id);
+END;
+GO
+
+---------------------------------------------------------------
+-- Blocks of process ids, reserved in advance when process ids
+-- are allocated by the process manager (and not by the database)
+--
+CREATE TABLE mu_process_sequence (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  next_value BIGINT NOT NULL
+);
+GO
+
+---------------------------------------------------------------
+-- Leadership among process managers (nodes), the leader being
+-- the only node running background tasks
+--
+CREATE TABLE mu_process_leader (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  owner VARCHAR(64) DEFAULT NULL, -- node currently leading
+  lease_expiry DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+GO
+
+---------------------------------------------------------------
+--
+--
+CREATE TABLE mu_process_step (
+  process_id BIGINT NOT NULL,
+  step_id INTEGER NOT NULL, -- step id
+  PRIMARY KEY (process_id, step_id),
+
+  class_name VARCHAR(255) NOT NULL,  -- qualified class name must fit
+  method_name VARCHAR(255) NOT NULL, -- method name must fit
+  activity_params VARCHAR(MAX) NOT NULL,
+  orchestr_params VARCHAR(MAX) DEFAULT NULL,
+  previous_state VARCHAR(MAX) DEFAULT NULL,
+
+  compensate_if_failure BIT NOT NULL DEFAULT 0,
+  transaction_successful BIT DEFAULT NULL,
+
+  retries INTEGER NOT NULL DEFAULT 0,
+  next_attempt_at DATETIME DEFAULT NULL, -- when a failed compensation may be re-attempted
+  created DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  modified DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
+) ON mu_process_ps (process_id);
+GO
+
+---------------------------------------------------------------
+-- Supports recovery, which looks for steps that are (or are not)
+-- due for another compensation attempt
+--
+CREATE INDEX mu_process_step_due_ix ON mu_process_step ( process_id, next_attempt_at ) ON mu_process_ps (process_id);
+GO
+
+---------------------------------------------------------------
+-- Adds partitions (by splitting the last, empty, partition),
+-- each covering @ids_per_partition process ids, until there is
+-- room for at least @ids_per_partition more processes. Returns
+-- number of added partitions.
+--
+CREATE PROCEDURE mu_process_add_partitions @ids_per_partition BIGINT
+AS
+BEGIN
+  SET NOCOUNT ON;
+  SET XACT_ABORT ON;
+
+  DECLARE @added INTEGER = 0;
+  DECLARE @high_water BIGINT;
+  DECLARE @reserved BIGINT;
+  DECLARE @boundary BIGINT;
+
+  BEGIN TRANSACTION;
+
+  -- Serializes maintenance between process managers
+  EXEC sp_getapplock @Resource = 'mu_process_partitions', @LockMode = 'Exclusive', @LockOwner = 'Transaction';
+
+  -- Highest process id handed out, by the database or in blocks by the process manager(s)
+  SELECT @high_water = COALESCE(CAST(IDENT_CURRENT('mu_process') AS BIGINT), 0);
+  SELECT @reserved = COALESCE(MAX(next_value), 0) FROM mu_process_sequence;
+  IF @reserved > @high_water SET @high_water = @reserved;
+
+  SELECT @boundary = MAX(CAST(rv.value AS BIGINT))
+  FROM sys.partition_range_values rv
+  INNER JOIN sys.partition_functions pf
+    ON (pf.function_id = rv.function_id)
+  WHERE pf.name = 'mu_process_pf';
+
+  WHILE @boundary <= @high_water + @ids_per_partition
+  BEGIN
+    -- Never split where processes already exist
+    IF @boundary <= @high_water SET @boundary = @high_water + 1;
+    SET @boundary = @boundary + @ids_per_partition;
+
+    ALTER PARTITION SCHEME mu_process_ps NEXT USED [PRIMARY];
+    ALTER PARTITION FUNCTION mu_process_pf() SPLIT RANGE (@boundary);
+
+    SET @added = @added + 1;
+  END;
+
+  COMMIT TRANSACTION;
+
+  SELECT @added AS added;
+END;
+GO
+
+---------------------------------------------------------------
+-- Truncates (and merges away) partitions where every process
+-- is retired (SUCCESSFUL or COMPENSATED) and not modified during
+-- the last @retention_seconds. Only partitions below the most
+-- recent process are considered. Returns process id ranges, from
+-- partition_lower (inclusive) to partition_upper (exclusive), of
+-- dropped partitions as well as of partitions that are otherwise
+-- old enough, but still hold live or abandoned processes. Retired
+-- processes in the latter, as well as correlation ids of the
+-- former, are left for the process manager to remove chunk by
+-- chunk.
+--
+CREATE PROCEDURE mu_process_drop_retired_partitions @retention_seconds INTEGER
+AS
+BEGIN
+  SET NOCOUNT ON;
+  SET XACT_ABORT ON;
+
+  DECLARE @high_water BIGINT;
+  DECLARE @cutoff DATETIME = DATEADD(second, -1 * @retention_seconds, CURRENT_TIMESTAMP);
+  DECLARE @partition INTEGER;
+  DECLARE @lower_id BIGINT;
+  DECLARE @upper_id BIGINT;
+  DECLARE @sql NVARCHAR(200);
+  DECLARE @ranges TABLE (partition_lower BIGINT, partition_upper BIGINT, is_dropped BIT);
+
+  BEGIN TRANSACTION;
+
+  -- Serializes maintenance between process managers
+  EXEC sp_getapplock @Resource = 'mu_process_partitions', @LockMode = 'Exclusive', @LockOwner = 'Transaction';
+
+  SELECT @high_water = COALESCE(MAX(process_id), 0) FROM mu_process;
+
+  -- Newest partitions first, since merging renumbers the partitions above
+  DECLARE partitions CURSOR LOCAL STATIC FOR
+    SELECT lo.boundary_id + 1, CAST(lo.value AS BIGINT), CAST(hi.value AS BIGINT)
+    FROM sys.partition_range_values lo
+    INNER JOIN sys.partition_range_values hi
+      ON (hi.function_id = lo.function_id AND hi.boundary_id = lo.boundary_id + 1)
+    INNER JOIN sys.partition_functions pf
+      ON (pf.function_id = lo.function_id)
+    WHERE pf.name = 'mu_process_pf'
+      AND CAST(hi.value AS BIGINT) <= @high_water
+    ORDER BY lo.boundary_id DESC;
+
+  OPEN partitions;
+  FETCH NEXT FROM partitions INTO @partition, @lower_id, @upper_id;
+  WHILE @@FETCH_STATUS = 0
+  BEGIN
+    -- Otherwise, wait for retention to pass
+    IF NOT EXISTS (SELECT 1 FROM mu_process
+                   WHERE process_id >= @lower_id AND process_id < @upper_id AND modified >= @cutoff)
+    BEGIN
+      IF EXISTS (SELECT 1 FROM mu_process
+                 WHERE process_id >= @lower_id AND process_id < @upper_id AND state NOT IN (2, 3))
+      BEGIN
+        INSERT INTO @ranges (partition_lower, partition_upper, is_dropped) VALUES (@lower_id, @upper_id, 0);
+      END
+      ELSE
+      BEGIN
+        SET @sql = N'TRUNCATE TABLE mu_process_step WITH (PARTITIONS (' + CAST(@partition AS NVARCHAR(10)) + N'))';
+        EXEC (@sql);
+        SET @sql = N'TRUNCATE TABLE mu_process WITH (PARTITIONS (' + CAST(@partition AS NVARCHAR(10)) + N'))';
+        EXEC (@sql);
+
+        -- Merges the (now empty) partition into the one below
+        ALTER PARTITION FUNCTION mu_process_pf() MERGE RANGE (@lower_id);
+
+        INSERT INTO @ranges (partition_lower, partition_upper, is_dropped) VALUES (@lower_id, @upper_id, 1);
+      END
+    END
+
+    FETCH NEXT FROM partitions INTO @partition, @lower_id, @upper_id;
+  END;
+  CLOSE partitions;
+  DEALLOCATE partitions;
+
+  COMMIT TRANSACTION;
+
+  SELECT partition_lower, partition_upper, is_dropped FROM @ranges ORDER BY partition_lower;
+END;
+GO
+
+---------------------------------------------------------------
+-- Initial partitions (the process manager adds more as needed)
+--
+EXEC mu_process_add_partitions 1000000;
+GO
@@ -23,7 +23,7 @@
 -- Processes
 --
 CREATE TABLE mu_process (
-  process_id INTEGER IDENTITY(1,1),
+  process_id BIGINT IDENTITY(1,1),
   PRIMARY KEY (process_id),
 
   correlation_id VARCHAR(255) NOT NULL, -- for now
@@ -34,18 +34,58 @@ CREATE TABLE mu_process (
   result VARCHAR(MAX) DEFAULT NULL,
 
   created DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
-  modified DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
+  modified DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+
+  lease_owner VARCHAR(64) DEFAULT NULL, -- node recovering the process, when claiming recovery leases
+  lease_expiry DATETIME DEFAULT NULL,
+
+  recovery_bucket AS CAST((process_id * 613) % 1024 AS INTEGER) PERSISTED -- for sharding recovery between nodes
 );
 GO
 
 CREATE UNIQUE INDEX mu_process_corrid_ix ON mu_process ( correlation_id );
 GO
 
+-- Supports recovery, which looks for processes in some state(s)
+-- not modified for a while
+CREATE INDEX mu_process_state_ix ON mu_process ( state, modified );
+GO
+
+-- Supports recovery when sharded between nodes, each node
+-- looking for processes in its own recovery buckets
+CREATE INDEX mu_process_bucket_ix ON mu_process ( recovery_bucket, state, modified );
+GO
+
+---------------------------------------------------------------
+-- Blocks of process ids, reserved in advance when process ids
+-- are allocated by the process manager (and not by the database)
+--
+CREATE TABLE mu_process_sequence (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  next_value BIGINT NOT NULL
+);
+GO
+
+---------------------------------------------------------------
+-- Leadership among process managers (nodes), the leader being
+-- the only node running background tasks
+--
+CREATE TABLE mu_process_leader (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  owner VARCHAR(64) DEFAULT NULL, -- node currently leading
+  lease_expiry DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+GO
+
 ---------------------------------------------------------------
 --
 --
 CREATE TABLE mu_process_step (
-  process_id INTEGER NOT NULL,
+  process_id BIGINT NOT NULL,
   step_id INTEGER NOT NULL, -- step id
   PRIMARY KEY (process_id, step_id),
 
@@ -62,7 +102,15 @@ CREATE TABLE mu_process_step (
   transaction_successful BIT DEFAULT NULL,
 
   retries INTEGER NOT NULL DEFAULT 0,
+  next_attempt_at DATETIME DEFAULT NULL, -- when a failed compensation may be re-attempted
   created DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
   modified DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
 GO
+
+---------------------------------------------------------------
+-- Supports recovery, which looks for steps that are (or are not)
+-- due for another compensation attempt
+--
+CREATE INDEX mu_process_step_due_ix ON mu_process_step ( process_id, next_attempt_at );
+GO
@@ -0,0 +1,119 @@
+---------------------------------------------------------------
+-- Copyright (C) 2017-2026 Frode Randers
+-- All rights reserved
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--    http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+---------------------------------------------------------------
+
+---------------------------------------------------------------
+-- Database schema upgrade: MS SQL Server
+--
+-- Upgrades tables created by an earlier version of
+-- database-create.sql, having 32-bit process ids. Constraints
+-- have to be dropped while changing types, so run with the
+-- process manager(s) stopped.
+---------------------------------------------------------------
+
+---------------------------------------------------------------
+-- Blocks of process ids, reserved in advance when process ids
+-- are allocated by the process manager (and not by the database)
+--
+CREATE TABLE mu_process_sequence (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  next_value BIGINT NOT NULL
+);
+GO
+
+---------------------------------------------------------------
+-- 64-bit process ids
+--
+ALTER TABLE mu_process_step DROP CONSTRAINT mu_p_s_process_ex;
+GO
+
+-- Primary keys were created without explicit names
+DECLARE @pk NVARCHAR(128);
+
+SELECT @pk = name FROM sys.key_constraints
+WHERE type = 'PK' AND parent_object_id = OBJECT_ID('mu_process_step');
+EXEC('ALTER TABLE mu_process_step DROP CONSTRAINT ' + @pk);
+
+SELECT @pk = name FROM sys.key_constraints
+WHERE type = 'PK' AND parent_object_id = OBJECT_ID('mu_process');
+EXEC('ALTER TABLE mu_process DROP CONSTRAINT ' + @pk);
+GO
+
+ALTER TABLE mu_process ALTER COLUMN process_id BIGINT NOT NULL;
+ALTER TABLE mu_process_step ALTER COLUMN process_id BIGINT NOT NULL;
+GO
+
+ALTER TABLE mu_process ADD PRIMARY KEY (process_id);
+ALTER TABLE mu_process_step ADD PRIMARY KEY (process_id, step_id);
+
+ALTER TABLE mu_process_step
+  ADD CONSTRAINT mu_p_s_process_ex
+  FOREIGN KEY (process_id) REFERENCES mu_process(process_id);
+GO
+
+---------------------------------------------------------------
+-- Supports recovery, which looks for processes in some state(s)
+-- not modified for a while
+--
+CREATE INDEX mu_process_state_ix ON mu_process ( state, modified );
+GO
+
+---------------------------------------------------------------
+-- Backoff of re-compensation attempts
+--
+ALTER TABLE mu_process_step ADD next_attempt_at DATETIME DEFAULT NULL;
+GO
+
+---------------------------------------------------------------
+-- Supports recovery, which looks for steps that are (or are not)
+-- due for another compensation attempt
+--
+CREATE INDEX mu_process_step_due_ix ON mu_process_step ( process_id, next_attempt_at );
+GO
+
+---------------------------------------------------------------
+-- Recovery leases, when recovering processes from several nodes
+--
+ALTER TABLE mu_process ADD lease_owner VARCHAR(64) DEFAULT NULL;
+GO
+ALTER TABLE mu_process ADD lease_expiry DATETIME DEFAULT NULL;
+GO
+
+---------------------------------------------------------------
+-- Leadership among process managers (nodes), the leader being
+-- the only node running background tasks
+--
+CREATE TABLE mu_process_leader (
+  name VARCHAR(64) NOT NULL,
+  PRIMARY KEY (name),
+
+  owner VARCHAR(64) DEFAULT NULL, -- node currently leading
+  lease_expiry DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+GO
+
+---------------------------------------------------------------
+-- Sharding recovery between nodes (rewrites mu_process)
+--
+ALTER TABLE mu_process ADD recovery_bucket AS CAST((process_id * 613) % 1024 AS INTEGER) PERSISTED;
+GO
+
+-- Supports recovery when sharded between nodes, each node
+-- looking for processes in its own recovery buckets
+CREATE INDEX mu_process_bucket_ix ON mu_process ( recovery_bucket, state, modified );
+GO
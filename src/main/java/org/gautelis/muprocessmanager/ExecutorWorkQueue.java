@@ -22,43 +22,117 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Adapter that exposes a {@link WorkQueue} backed by a {@link ThreadPoolExecutor}.
+ * <p>
+ * The queue may be bounded, in which case the {@link OverflowPolicy overflow policy} determines
+ * what happens to tasks that do not fit in the queue.
  */
 public class ExecutorWorkQueue implements WorkQueue {
     private static final Logger log = LoggerFactory.getLogger(ExecutorWorkQueue.class);
 
+    /**
+     * Determines what happens to a task that does not fit in a bounded queue.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Caller blocks until there is room in the queue.
+         */
+        BLOCK,
+
+        /**
+         * Task is run by the caller.
+         */
+        CALLER_RUNS,
+
+        /**
+         * Task is dropped, i.e. {@link ExecutorWorkQueue#execute(Runnable)} returns <strong>false</strong>.
+         * Suitable when the task will be rediscovered later anyhow.
+         */
+        DROP
+    }
+
     private static final long KEEP_ALIVE_MILLIS = 0L;
     private static final TimeUnit KEEP_ALIVE_UNIT = TimeUnit.MILLISECONDS;
     private static final String DEFAULT_THREAD_NAME_PREFIX = "org.gautelis.muprocessmanager.executor";
 
     private final ThreadPoolExecutor executor;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong discardedCount = new AtomicLong();
 
     public ExecutorWorkQueue(int nThreads) {
         this(nThreads, DEFAULT_THREAD_NAME_PREFIX);
     }
 
     public ExecutorWorkQueue(int nThreads, String threadNamePrefix) {
+        this(nThreads, threadNamePrefix, /* unbounded */ 0, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * @param nThreads number of threads running tasks
+     * @param threadNamePrefix prefix of thread names
+     * @param capacity maximum number of queued (not yet running) tasks, 0 means unbounded
+     * @param overflowPolicy what happens to tasks that do not fit in a bounded queue
+     */
+    public ExecutorWorkQueue(int nThreads, String threadNamePrefix, int capacity, OverflowPolicy overflowPolicy) {
         Objects.requireNonNull(threadNamePrefix, "threadNamePrefix");
-        BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+        Objects.requireNonNull(overflowPolicy, "overflowPolicy");
+
+        this.overflowPolicy = overflowPolicy;
+
+        BlockingQueue<Runnable> queue = capacity > 0 ? new ArrayBlockingQueue<>(capacity) : new LinkedBlockingQueue<>();
         executor = new LoggingThreadPoolExecutor(
                 nThreads,
                 nThreads,
                 KEEP_ALIVE_MILLIS,
                 KEEP_ALIVE_UNIT,
                 queue,
-                new NamedThreadFactory(threadNamePrefix)
+                new NamedThreadFactory(threadNamePrefix),
+                rejectionHandler(overflowPolicy)
         );
     }
 
+    private RejectedExecutionHandler rejectionHandler(OverflowPolicy overflowPolicy) {
+        switch (overflowPolicy) {
+            case CALLER_RUNS:
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+
+            case DROP:
+                return (r, executor) -> {
+                    if (!executor.isShutdown()) {
+                        droppedCount.incrementAndGet();
+                    }
+                    throw new RejectedExecutionException("Work queue is full");
+                };
+
+            case BLOCK:
+            default:
+                return (r, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Work queue has been stopped");
+                    }
+                    try {
+                        executor.getQueue().put(r);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for room in work queue");
+                    }
+                };
+        }
+    }
+
     @Override
     public void start() {
         executor.prestartAllCoreThreads();
@@ -68,8 +142,9 @@ public class ExecutorWorkQueue implements WorkQueue {
     @Override
     public void stop() {
         log.trace("Stopping executor work queue...");
-        executor.shutdownNow();
-        log.trace("Executor work queue stopped");
+        int discarded = executor.shutdownNow().size();
+        discardedCount.addAndGet(discarded);
+        log.debug("Executor work queue stopped, discarding {} queued tasks", discarded);
     }
 
     @Override
@@ -82,7 +157,12 @@ public class ExecutorWorkQueue implements WorkQueue {
             executor.execute(t);
             return true;
         } catch (RejectedExecutionException ex) {
-            log.warn("Rejected work queue task: {}", ex.getMessage());
+            if (OverflowPolicy.DROP == overflowPolicy && !executor.isShutdown()) {
+                // Expected to be rediscovered by the producer, so not worth a warning
+                log.trace("Dropped work queue task: {}", ex.getMessage());
+            } else {
+                log.warn("Rejected work queue task: {}", ex.getMessage());
+            }
             return false;
         }
     }
@@ -97,6 +177,20 @@ public class ExecutorWorkQueue implements WorkQueue {
         return executor.getQueue().size();
     }
 
+    /**
+     * @return number of tasks dropped (since the queue was full) when having {@link OverflowPolicy#DROP} overflow policy.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return number of queued (not yet running) tasks discarded, i.e. when the queue was stopped.
+     */
+    public long getDiscardedCount() {
+        return discardedCount.get();
+    }
+
     private static final class NamedThreadFactory implements ThreadFactory {
         private final String prefix;
         private final AtomicInteger counter = new AtomicInteger(0);
@@ -120,9 +214,10 @@ public class ExecutorWorkQueue implements WorkQueue {
                 long keepAliveTime,
                 TimeUnit unit,
                 BlockingQueue<Runnable> workQueue,
-                ThreadFactory threadFactory
+                ThreadFactory threadFactory,
+                RejectedExecutionHandler handler
         ) {
-            super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+            super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
         }
 
         @Override
@@ -23,6 +23,10 @@ import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
 
 /**
  * Implements the asynchronous parts of the micro-process manager, taking care of
@@ -39,15 +43,44 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
     // Timers
     private Timer dumpStatisticsTimer = null;
     private Timer recoverTimer = null;
+    private Timer purgeTimer = null;
+    private volatile boolean purging = false;
 
     private final WorkQueue recoverWorkQueue;
+    private final MuRecoveryScheduler recoveryScheduler;
+
+    // Recovery tasks submitted to recoverWorkQueue, but not yet finished
+    private final Object backlogLock = new Object();
+    private long backlog = 0L; // guarded by backlogLock
+
+    // Processes having a recovery task queued or running, so that a process is recovered by at most one task at a time
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLong inFlightHits = new AtomicLong(); // i.e. suppressed duplicates
+    private final AtomicLong inFlightMisses = new AtomicLong(); // i.e. submitted tasks
+
+    // When processes are leased before being recovered, tasks not started in time (within the lease) are skipped
+    // and leases are renewed (if possible) while recovering
+    private final long leaseMillis; // 0 if not leasing
+    private final boolean renewingLeases;
+    private final AtomicLong expiredLeases = new AtomicLong();
+
+    // When electing leader among nodes, only the leader runs background tasks
+    private final boolean electingLeader;
+    private Timer leaderTimer = null;
+    private volatile long leadingUntil = 0L; // local time, 0 if not leading
 
     //
     private final MuPersistentLog compensationLog;
     private final MuProcessManagementPolicy policy;
 
+    // Ramps up recovery after start
+    private final MuRecoveryRamp recoveryRamp;
+
+    // Adapts number of recovery tasks running at a time, if so configured
+    private final MuRecoveryLimiter recoveryLimiter; // null if not adapting
+
     //
-    private boolean justStarted = true; // updated after first successful recover()
+    private boolean justStarted = true; // updated after first successful recover() after warm-up
 
 
     /* package private */
@@ -56,10 +89,40 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
                 dataSource,
                 sqlStatements,
                 policy,
-                new ExecutorWorkQueue(policy.numberOfRecoveryThreads(), "org.gautelis.muprocessmanager.recover")
+                recoverWorkQueue(policy)
+        );
+    }
+
+    private static WorkQueue recoverWorkQueue(final MuProcessManagementPolicy policy) {
+        if (policy.useVirtualRecoveryThreads()) {
+            return new VirtualThreadWorkQueue(
+                    policy.maxRecoveryConnections(), "org.gautelis.muprocessmanager.recover",
+                    policy.recoveryQueueCapacity(), overflowPolicy(policy.recoveryQueueOverflowPolicy())
+            );
+        }
+
+        // When adapting, threads beyond the current limit are held back by the limiter
+        int nThreads = policy.numberOfRecoveryThreads();
+        if (policy.adaptRecoveryConcurrency()) {
+            nThreads = Math.max(nThreads, policy.maxRecoveryConcurrency());
+        }
+        return new ExecutorWorkQueue(
+                nThreads, "org.gautelis.muprocessmanager.recover",
+                policy.recoveryQueueCapacity(), overflowPolicy(policy.recoveryQueueOverflowPolicy())
         );
     }
 
+    private static ExecutorWorkQueue.OverflowPolicy overflowPolicy(final String name) {
+        if (null != name) {
+            try {
+                return ExecutorWorkQueue.OverflowPolicy.valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException iae) {
+                log.warn("Unknown recovery-queue-overflow-policy \"{}\", falling back on \"block\"", name);
+            }
+        }
+        return ExecutorWorkQueue.OverflowPolicy.BLOCK;
+    }
+
     /* package private */
     MuAsynchronousManagerImpl(DataSource dataSource, Properties sqlStatements, MuProcessManagementPolicy policy, WorkQueue recoverWorkQueue) {
         Objects.requireNonNull(dataSource, "dataSource");
@@ -67,11 +130,38 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
         Objects.requireNonNull(policy, "policy");
         Objects.requireNonNull(recoverWorkQueue, "recoverWorkQueue");
 
-        boolean assumeNativeProcessDataFlow = policy.assumeNativeProcessDataFlow();
-
-        compensationLog = new MuPersistentLog(dataSource, sqlStatements, assumeNativeProcessDataFlow);
+        compensationLog = new MuPersistentLog(dataSource, sqlStatements, policy);
         this.policy = policy;
         this.recoverWorkQueue = recoverWorkQueue;
+
+        // Weights in order of MuRecoveryScheduler.Lane
+        int[] weights = {
+                policy.recoveryWeightStuck(),
+                policy.recoveryWeightRecompensation(),
+                policy.recoveryWeightAbandonment(),
+                policy.recoveryWeightRetention()
+        };
+        recoveryScheduler = new MuRecoveryScheduler(weights, 1000L * policy.secondsBeforePrioritizingWaitingRecovery());
+
+        // Leave some margin for the task itself
+        leaseMillis = compensationLog.claimsRecoveryLeases() ? 900L * Math.max(1, policy.secondsOfRecoveryLease()) : 0L;
+        renewingLeases = compensationLog.renewsRecoveryLeases();
+
+        electingLeader = compensationLog.electsLeader();
+
+        recoveryRamp = new MuRecoveryRamp(1000L * policy.secondsOfRecoveryWarmUp(), policy.warmUpRecoveryTasksPerSecond());
+
+        if (policy.adaptRecoveryConcurrency()) {
+            int maxLimit = policy.maxRecoveryConcurrency();
+            if (policy.useVirtualRecoveryThreads()) {
+                maxLimit = Math.min(maxLimit, policy.maxRecoveryConnections());
+            }
+            recoveryLimiter = new MuRecoveryLimiter(
+                    policy.numberOfRecoveryThreads(), policy.minRecoveryConcurrency(), maxLimit
+            );
+        } else {
+            recoveryLimiter = null;
+        }
     }
 
     /**
@@ -79,16 +169,37 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
      * background tasks associated with detecting stuck processes and (re-)compensating
      * process tasks if the process has died.
      * <p>
-     * If you need multiple instances of MuProcessManager, at the moment you should only start
-     * the asynchronous background task in one single instance.
+     * If you need multiple instances of MuProcessManager, you should only start the asynchronous
+     * background task in one single instance -- unless recovery leases are claimed (see
+     * {@link MuProcessManagementPolicy#claimRecoveryLeases()}) or a leader is elected (see
+     * {@link MuProcessManagementPolicy#electRecoveryLeader()}), in which case only the leader
+     * actually runs background tasks.
      * <p>
      * Also initiates the statistics logging (in the background).
      * <p>
      * Recovery work is derived from persisted process state, not from the transient contents
      * of the in-memory queue. After a shutdown, a subsequent start and recovery cycle will
-     * rebuild pending recovery work from the database.
+     * rebuild pending recovery work from the database. Recovery may be ramped up during a warm-up
+     * period (see {@link MuProcessManagementPolicy#secondsOfRecoveryWarmUp()}).
      */
     public void start() {
+        // Warm up recovery, if so configured
+        recoveryRamp.begin();
+
+        // Take part in electing leader, which will periodically renew our lease if leading
+        if (electingLeader && null == leaderTimer) {
+            TimerTask leaderTask = new TimerTask() {
+                @Override
+                public void run() {
+                    heartbeat();
+                }
+            };
+
+            leaderTimer = new Timer("org.gautelis.muprocessmanager.leader");
+            long period = Math.max(1000L, 1000L * compensationLog.getLeaderLeaseSeconds() / 3);
+            leaderTimer.scheduleAtFixedRate(leaderTask, 0L, period);
+        }
+
         // Schedule statistics dump, which will periodically log characteristics of the
         // compensation log.
         if (null == dumpStatisticsTimer) {
@@ -96,7 +207,11 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
 
                 @Override
                 public void run() {
-                    compensationLog.dumpStatistics(recoverWorkQueue);
+                    if (isLeader()) {
+                        compensationLog.dumpStatistics(
+                                recoverWorkQueue, recoveryLimiter, inFlightMisses.get(), inFlightHits.get()
+                        );
+                    }
                 }
             };
             dumpStatisticsTimer = new Timer("org.gautelis.muprocessmanager.statistics");
@@ -114,7 +229,9 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
             TimerTask cleanupTask = new TimerTask() {
                 @Override
                 public void run() {
-                    recover();
+                    if (isLeader()) {
+                        recover();
+                    }
                 }
             };
 
@@ -125,6 +242,28 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
             );
         }
 
+        // Schedule removal of retired processes in bulk (or with their partitions), if not done by recovery (one by one).
+        // This is not sharded, so it is done by the first shard only (if recovery is sharded).
+        if (null == purgeTimer && compensationLog.isFirstRecoveryShard()
+                && (compensationLog.purgesRetiredProcesses() || compensationLog.managesPartitions())) {
+            purging = true;
+
+            TimerTask purgeTask = new TimerTask() {
+                @Override
+                public void run() {
+                    if (isLeader()) {
+                        purge();
+                    }
+                }
+            };
+
+            purgeTimer = new Timer("org.gautelis.muprocessmanager.purge");
+            int initialDelay = 1000 + (int)Math.round(Math.random() * 5000); // 1+ seconds
+            purgeTimer.schedule( // with fixed delay, since a purge may take a while
+                    purgeTask, initialDelay, 1000L * policy.secondsBetweenRecoveryAttempts()
+            );
+        }
+
         log.debug("Process manager asynchronous background task started.");
     }
 
@@ -148,30 +287,371 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
             recoverTimer = null;
         }
 
+        purging = false;
+        if (null != purgeTimer) {
+            purgeTimer.cancel();
+            purgeTimer = null;
+        }
+
+        if (null != leaderTimer) {
+            leaderTimer.cancel();
+            leaderTimer = null;
+        }
+        if (leadingUntil > 0L) {
+            // Let some other node take over right away
+            leadingUntil = 0L;
+            try {
+                compensationLog.releaseLeadership();
+            } catch (MuProcessException mpe) {
+                log.info("Failed to release leadership: {}", mpe.getMessage());
+            }
+        }
+
         recoverWorkQueue.stop();
 
+        // Queued tasks were discarded, and will not report back
+        recoveryScheduler.clear();
+        inFlight.clear();
+        synchronized (backlogLock) {
+            backlog = 0L;
+            backlogLock.notifyAll();
+        }
+
+        compensationLog.stop();
+
         log.debug("Process manager asynchronous background task stopped.");
     }
 
+    /*
+     * Acquires leadership, or renews our lease if already leading.
+     */
     /* package private */
-    void recover() {
-        log.trace("Running scheduled recovery...");
+    void heartbeat() {
+        final long leaseStart = System.currentTimeMillis(); // lease is at least as long counting from here
+        final boolean wasLeading = leaseStart < leadingUntil;
+
+        boolean leading = false;
+        try {
+            leading = compensationLog.acquireLeadership();
+        } catch (MuProcessException mpe) {
+            String info = "Failed to take part in electing leader: ";
+            info += mpe.getMessage();
+            log.info(info, mpe);
+        }
+
+        if (leading) {
+            leadingUntil = leaseStart + 1000L * compensationLog.getLeaderLeaseSeconds();
+            if (!wasLeading) {
+                log.info("Leading background tasks");
+            }
+        } else {
+            leadingUntil = 0L;
+            if (wasLeading) {
+                log.info("No longer leading background tasks");
+            }
+        }
+    }
+
+    /**
+     * @return true if background tasks should run in this instance, i.e. if this instance is leader or
+     * if no leader is elected.
+     */
+    /* package private */
+    boolean isLeader() {
+        return !electingLeader || System.currentTimeMillis() < leadingUntil;
+    }
+
+    /**
+     * @return number of times a recovery task was not submitted, since the process already had a
+     * recovery task queued or running.
+     */
+    /* package private */
+    long getDuplicateRecoveryCount() {
+        return inFlightHits.get();
+    }
+
+    /**
+     * @return number of recovery tasks submitted to background threads.
+     */
+    /* package private */
+    long getSubmittedRecoveryCount() {
+        return inFlightMisses.get();
+    }
+
+    /*
+     * Submits recovery task for process to background threads, keeping track of it until it finishes.
+     * The task is not submitted if the process already has a recovery task queued or running.
+     * Tasks are run in order of priority (lane), rather than in order of submission. While warming
+     * up, tasks are submitted at a limited rate -- the task is postponed if it can not be submitted
+     * before the deadline. Leased processes are recovered only while the lease -- counted from when the
+     * process was leased (leasedAt) -- is held by us.
+     */
+    private void submit(
+            final MuRecoveryScheduler.Lane lane, final long processId, final long leasedAt, final long deadline,
+            final long[] postponed, final long[] duplicates, final RecoveryTask task
+    ) {
+        if (!inFlight.add(processId)) {
+            inFlightHits.incrementAndGet();
+            duplicates[0]++;
+            return;
+        }
+        if (!recoveryRamp.acquire(deadline)) {
+            inFlight.remove(processId);
+            postponed[0]++;
+            if (leaseMillis > 0L) {
+                releaseLease(processId);
+            }
+            return;
+        }
+        inFlightMisses.incrementAndGet();
+
+        synchronized (backlogLock) {
+            backlog++;
+        }
+
+        // Process was leased to us (if leasing) when claimed, possibly a while ago
+        final long[] leaseDeadline = { leaseMillis > 0L && leasedAt > 0L ? leasedAt + leaseMillis : 0L }; // mutable in closure
+        final BooleanSupplier holdsLease = leaseDeadline[0] > 0L ? () -> checkLease(processId, leaseDeadline) : null;
+
+        recoveryScheduler.add(lane, () -> {
+            try {
+                if (null != holdsLease && !holdsLease.getAsBoolean()) {
+                    // Some other node may already be recovering this process
+                    expiredLeases.incrementAndGet();
+                    log.debug("Not recovering process {}, since lease has run out", processId);
+                    return;
+                }
+                try {
+                    run(task, holdsLease);
+                } finally {
+                    if (null != holdsLease) {
+                        // Recovered (or failed to), so process may be recovered again when next due
+                        releaseLease(processId);
+                    }
+                }
+            } finally {
+                finished(processId);
+            }
+        }, () -> finished(processId));
+
+        boolean accepted = false;
+        try {
+            // The work queue runs whatever task is next in turn
+            accepted = recoverWorkQueue.execute(this::runNext);
+        } finally {
+            if (!accepted) {
+                // Dropped (or queue stopped), so some process will be rediscovered by a later recovery
+                recoveryScheduler.dropOne();
+                postponed[0]++;
+            }
+        }
+    }
+
+    /*
+     * Checks that lease on process is still held by us, renewing it once less than half of it remains.
+     */
+    private boolean checkLease(final long processId, final long[] leaseDeadline) {
+        long now = System.currentTimeMillis();
+        if (now > leaseDeadline[0]) {
+            return false;
+        }
+        if (!renewingLeases || leaseDeadline[0] - now > leaseMillis / 2) {
+            return true;
+        }
+        try {
+            if (compensationLog.renewRecoveryLease(processId)) {
+                leaseDeadline[0] = now + leaseMillis;
+                return true;
+            }
+            leaseDeadline[0] = 0L; // lost
+            return false;
+        } catch (MuProcessException mpe) {
+            log.info("Failed to renew lease on process {}: {}", processId, mpe.getMessage());
+            return false;
+        }
+    }
+
+    private void releaseLease(final long processId) {
+        try {
+            compensationLog.releaseRecoveryLease(processId);
+        } catch (MuProcessException mpe) {
+            log.info("Failed to release lease on process {}: {}", processId, mpe.getMessage());
+        }
+    }
+
+    /* package private */
+    long getExpiredLeaseCount() {
+        return expiredLeases.get();
+    }
+
+    /*
+     * A recovery task, reporting time spent in backward behaviours (if compensating) to backwardLatency.
+     * Leased processes are compensated only while holdsLease (null if not leased) says so.
+     */
+    @FunctionalInterface
+    private interface RecoveryTask {
+        void run(LongConsumer backwardLatency, BooleanSupplier holdsLease);
+    }
+
+    /*
+     * Runs task, observing latencies if adapting recovery concurrency. Time not spent in backward
+     * behaviours is considered to be spent in the database.
+     */
+    private void run(final RecoveryTask task, final BooleanSupplier holdsLease /* may be null */) {
+        final MuRecoveryLimiter limiter = recoveryLimiter;
+        if (null == limiter) {
+            task.run(/* not observed */ null, holdsLease);
+            return;
+        }
+
+        final long[] backwardNanos = {0L}; // mutable in closure
+        final long start = System.nanoTime();
+        try {
+            task.run(nanos -> {
+                backwardNanos[0] += nanos;
+                limiter.observeCompensationLatency(nanos);
+            }, holdsLease);
+        } finally {
+            limiter.observeDatabaseLatency(System.nanoTime() - start - backwardNanos[0]);
+        }
+    }
+
+    /*
+     * Token handed to the work queue, running whatever task is next in turn -- when within
+     * limit, if adapting recovery concurrency.
+     */
+    private void runNext() {
+        final MuRecoveryLimiter limiter = recoveryLimiter;
+        if (null == limiter) {
+            recoveryScheduler.runNext();
+            return;
+        }
 
-        long size;
-        int waitLeft = 1000 * ((policy.secondsBetweenRecoveryAttempts() * 2) / 3); // two third of full cycle
-        do {
-            size = recoverWorkQueue.size();
-            if (size > 0L) {
+        try {
+            limiter.acquire();
+        } catch (InterruptedException ie) {
+            // Stopped, and queued tasks are cleared anyhow
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            recoveryScheduler.runNext();
+        } finally {
+            limiter.release();
+        }
+    }
+
+    /* package private */
+    MuRecoveryLimiter getRecoveryLimiter() {
+        return recoveryLimiter;
+    }
+
+    private void finished(final long processId) {
+        inFlight.remove(processId);
+
+        synchronized (backlogLock) {
+            if (backlog > 0L) {
+                backlog--;
+            }
+            backlogLock.notifyAll();
+        }
+    }
+
+    /*
+     * Waits for recovery tasks to finish, until fewer than 'limit' tasks remain or deadline has passed.
+     */
+    private boolean awaitBacklogBelow(final long limit, final long deadline) {
+        synchronized (backlogLock) {
+            while (backlog >= limit) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0L) {
+                    return false;
+                }
                 try {
-                    log.debug("Background threads not yet ready... {} in queue [delay]", size);
-                    Thread.sleep(1000); // 1 second
-                    waitLeft -= 1000;
-                } catch (InterruptedException ignore) {}
+                    backlogLock.wait(remaining);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
             }
-        } while (size > 0L && waitLeft > 0);
+            return true;
+        }
+    }
+
+    /*
+     * Removes retired processes in bulk, by dropping whole partitions where possible and otherwise chunk
+     * by chunk, pausing between chunks so that we do not compete (too much) with running processes.
+     */
+    /* package private */
+    void purge() {
+        log.trace("Running scheduled purge...");
+
+        final int retentionSeconds = 60 * policy.minutesToTrackProcess();
 
-        if (size > 0L) {
-            log.warn("Postponing recover in order to catch up... {} in queue", size);
+        final long pauseMillis = Math.max(0L, policy.millisecondsBetweenPurgeChunks());
+        final boolean[] first = {true}; // mutable in closure
+        final BooleanSupplier mayPurgeNextChunk = () -> {
+            if (first[0]) {
+                first[0] = false;
+                return true;
+            }
+            try {
+                // Pauses are longer while warming up, in proportion to the ramped up rate
+                Thread.sleep((long) (pauseMillis / recoveryRamp.fraction()));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return purging;
+        };
+
+        try {
+            long purged = 0L;
+            if (compensationLog.managesPartitions()) {
+                List<long[]> dropped = new ArrayList<>();
+                List<long[]> pinned = new ArrayList<>();
+                if (compensationLog.maintainPartitions(retentionSeconds, dropped, pinned) > 0) {
+                    log.info("{{} dropped partitions of retired processes}", dropped.size());
+                }
+
+                // Correlation ids of dropped partitions are kept apart (to be unique across partitions)
+                for (long[] range : dropped) {
+                    if (!purging) {
+                        break;
+                    }
+                    compensationLog.purgeProcessCorrelations(range[0], range[1], mayPurgeNextChunk);
+                }
+
+                // Partitions that could not be dropped are purged of retired processes, outside of maintenance
+                for (long[] range : pinned) {
+                    if (!purging) {
+                        break;
+                    }
+                    purged += compensationLog.purgeRetiredProcesses(retentionSeconds, range[0], range[1], mayPurgeNextChunk);
+                }
+            }
+            else {
+                purged = compensationLog.purgeRetiredProcesses(retentionSeconds, mayPurgeNextChunk);
+            }
+            if (purged > 0L) {
+                log.info("{{} removed retired processes}", purged);
+            }
+        } catch (MuProcessException mpe) {
+            String info = "Scheduled purge failed: ";
+            info += mpe.getMessage();
+            log.info(info, mpe);
+        }
+    }
+
+    /* package private */
+    void recover() {
+        log.trace("Running scheduled recovery...");
+
+        final long deadline = System.currentTimeMillis() + 1000L * ((policy.secondsBetweenRecoveryAttempts() * 2) / 3);
+
+        // Wait (at most two third of full cycle) for tasks from previous recovery to finish
+        if (!awaitBacklogBelow(1L, deadline)) {
+            log.warn("Postponing recover in order to catch up... {} in queue", recoverWorkQueue.size());
             return;
         }
 
@@ -185,15 +665,44 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
         }
 
         final long[] observations = {0L}; // mutable in closure
+        final long[] postponed = {0L}; // mutable in closure
+        final long[] duplicates = {0L}; // mutable in closure
+        final long[] deferred = {0L}; // mutable in closure
+
+        // Some work is spread over the warm-up, i.e. deferred until due
+        final boolean warmingUp = recoveryRamp.isWarmingUp();
 
         //
         try {
             final long processRetentionTime = 60L * 1000 * policy.minutesToTrackProcess();
             final long processRecompensationTime = 1000L * policy.secondsBetweenRecompensationAttempts();
             final long processAssumedStuckTime = 60L * 1000 * policy.minutesBeforeAssumingProcessStuck();
+            final boolean retiredProcessesArePurged
+                    = compensationLog.purgesRetiredProcesses() || compensationLog.managesPartitions();
+
+            // Fetch next page of processes only when background threads have (almost) caught
+            // up with the previous page, so that the queue does not grow with the backlog
+            final long pageSize = policy.recoveryPageSize();
+            final BooleanSupplier mayFetchNextPage = () -> {
+                if (awaitBacklogBelow(pageSize, deadline)) {
+                    return true;
+                }
+                log.debug("Background threads not yet ready... {} in queue, resuming in next recovery", recoverWorkQueue.size());
+                return false;
+            };
 
-            compensationLog.recover(
-                    (correlationId, processId, state, acceptCompensationFailure, created, modified, now) -> {
+            // Processes ripe for recovery are selected by the database, but since the selection
+            // may be coarser (or absent) we check the individual process anyhow
+            boolean completed = compensationLog.recover(
+                    (int) (processAssumedStuckTime / 1000),
+                    (int) (processRetentionTime / 1000),
+                    (int) (processRecompensationTime / 1000),
+                    mayFetchNextPage,
+                    // Steps (if fetched in batches) are not fetched for processes that will not be submitted below
+                    (processId, state) -> !inFlight.contains(processId)
+                            && !(MuProcessState.COMPENSATION_FAILED.ordinal() == state
+                                 && justStarted && warmingUp && !recoveryRamp.isDue(processId)),
+                    (correlationId, processId, state, acceptCompensationFailure, created, modified, now, steps, leasedAt) -> {
 
                 observations[0]++; // explicit code
                 MuProcessState _state = MuProcessState.fromInt(state);
@@ -202,7 +711,11 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
                 switch (_state) {
                     case NEW:
                         if (/* Assumed stuck */ modified.before(new Date(now.getTime() - processAssumedStuckTime))) {
-                            recoverWorkQueue.execute(() -> {
+                            if (warmingUp && !recoveryRamp.isDue(processId)) {
+                                deferred[0]++;
+                                break;
+                            }
+                            submit(MuRecoveryScheduler.Lane.RETENTION, processId, leasedAt, deadline, postponed, duplicates, (backwardLatency, holdsLease) -> {
                                 try {
                                     log.debug("Removing stuck process: correlationId=\"{}\", processId={}, state={}", correlationId, processId, _state);
                                     compensationLog.remove(correlationId, processId, modified);
@@ -221,7 +734,7 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
                         if (/* Assumed stuck */ modified.before(new Date(now.getTime() - processAssumedStuckTime))) {
 
                             // Attempt compensation
-                            recoverWorkQueue.execute(() -> {
+                            submit(MuRecoveryScheduler.Lane.STUCK, processId, leasedAt, deadline, postponed, duplicates, (backwardLatency, holdsLease) -> {
                                 log.debug("Recovering stuck process: correlationId=\"{}\", processId={}, state={}", correlationId, processId, _state);
 
                                 // Since we don't have a micro process waiting, we will not propagate any
@@ -233,7 +746,7 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
                                     // re-compensation may not be allowed if we failed at it earlier)
                                     //
                                     //noinspection ThrowableNotThrown
-                                    MuProcess.compensate(compensationLog, correlationId, processId);
+                                    MuProcess.compensate(compensationLog, correlationId, processId, steps, backwardLatency, holdsLease);
                                     recoverCount[state]++;
 
                                 } catch (MuProcessException unexpected) {
@@ -250,8 +763,13 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
 
                     case SUCCESSFUL:
                     case COMPENSATED:
-                        if (/* Is ripe for removal */ modified.before(new Date(now.getTime() - processRetentionTime))) {
-                            recoverWorkQueue.execute(() -> {
+                        if (!retiredProcessesArePurged
+                                && /* Is ripe for removal */ modified.before(new Date(now.getTime() - processRetentionTime))) {
+                            if (warmingUp && !recoveryRamp.isDue(processId)) {
+                                deferred[0]++;
+                                break;
+                            }
+                            submit(MuRecoveryScheduler.Lane.RETENTION, processId, leasedAt, deadline, postponed, duplicates, (backwardLatency, holdsLease) -> {
                                 try {
                                     log.trace("Removing retired process: correlationId=\"{}\", processId={}, state={}", correlationId, processId, _state);
                                     compensationLog.remove(correlationId, processId, modified);
@@ -271,9 +789,11 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
                         // Otherwise, if this is the first time through, we will try to re-compensate at least once
                         if (!acceptCompensationFailure
                                 || (!justStarted && /* Is ripe for removal */ modified.before(new Date(now.getTime() - processRetentionTime)))) {
-                            recoverWorkQueue.execute(() -> {
+                            submit(MuRecoveryScheduler.Lane.ABANDONMENT, processId, leasedAt, deadline, postponed, duplicates, (backwardLatency, holdsLease) -> {
                                 try {
-                                    Optional<Integer> stepCount = compensationLog.countProcessSteps(processId);
+                                    Optional<Integer> stepCount = null != steps
+                                            ? Optional.of(steps.size()) // already fetched
+                                            : compensationLog.countProcessSteps(processId);
                                     if (stepCount.isPresent() && stepCount.get() > 0) {
                                         log.debug("Abandoning process{}: correlationId=\"{}\", processId={}, state={}",
                                                 acceptCompensationFailure ? "" : " (since re-compensation prohibited)", correlationId, processId, _state);
@@ -295,9 +815,14 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
                             });
                         } else {
                             if (/* Is ripe for recompensation */ modified.before(new Date(now.getTime() - processRecompensationTime))) {
+                                if (justStarted && warmingUp && !recoveryRamp.isDue(processId)) {
+                                    // First re-compensations are spread over the warm-up (with jitter)
+                                    deferred[0]++;
+                                    break;
+                                }
 
                                 // Re-attempt compensation
-                                recoverWorkQueue.execute(() -> {
+                                submit(MuRecoveryScheduler.Lane.RECOMPENSATION, processId, leasedAt, deadline, postponed, duplicates, (backwardLatency, holdsLease) -> {
                                     log.trace("Recovering process: correlationId=\"{}\", processId={}, state={}", correlationId, processId, _state);
 
                                     // Since we don't have a micro process waiting, we will not propagate any
@@ -305,7 +830,7 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
                                     try {
                                         // Ignored returned exception -- we don't want to throw anything here
                                         //noinspection ThrowableNotThrown
-                                        MuProcess.compensate(compensationLog, correlationId, processId);
+                                        MuProcess.compensate(compensationLog, correlationId, processId, steps, backwardLatency, holdsLease);
                                         recoverCount[state]++;
 
                                     } catch (MuProcessException unexpected) {
@@ -325,9 +850,12 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
                 }
             });
 
-            // Having run recover() once, we have at least tried to recompensate
-            // processes in COMPENSATION_FAILED once.
-            justStarted = false;
+            // Having run recover() once through all processes, we have at least tried to
+            // recompensate processes in COMPENSATION_FAILED once -- unless some were deferred
+            // while warming up.
+            if (completed && !warmingUp) {
+                justStarted = false;
+            }
 
         } catch (MuProcessException mpe) {
             String info = "Scheduled recovery failed: ";
@@ -353,6 +881,18 @@ public class MuAsynchronousManagerImpl implements MuAsynchronousManager {
                 haveSomethingToDisplay = true;
             }
         }
+        if (duplicates[0] > 0) {
+            statistics.append("{").append(duplicates[0]).append(" already being recovered} ");
+            haveSomethingToDisplay = true;
+        }
+        if (postponed[0] > 0) {
+            statistics.append("{").append(postponed[0]).append(" postponed to next recovery} ");
+            haveSomethingToDisplay = true;
+        }
+        if (deferred[0] > 0) {
+            statistics.append("{").append(deferred[0]).append(" deferred while warming up} ");
+            haveSomethingToDisplay = true;
+        }
         statistics.append("{").append(observations[0]).append(" observed in total} ");
         statistics.append("{").append(recoverWorkQueue.size()).append(" in queue} ");
 
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import org.gautelis.vopn.lang.DynamicLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dispatches compensations to backward behaviours, caching what is needed per compensation class so
+ * that classes are loaded and methods looked up once, rather than for every process step.
+ * <p>
+ * For each class, the following is cached:
+ * <ul>
+ *     <li>a single instance, shared between compensations, if the class is stateless (i.e. has no instance fields).
+ *     Otherwise a new instance is created for each compensation, as before;</li>
+ *     <li>invokers by method name. The (usual) {@link MuBackwardBehaviour#backward(MuBackwardActivityContext) backward}
+ *     method is called directly through the interface, while other (persistable) method names are called
+ *     through method handles.</li>
+ * </ul>
+ * Classes are loaded (the first time) by the {@link DynamicLoader}, as before.
+ */
+/* package private */ final class MuBackwardDispatch {
+    private static final Logger log = LoggerFactory.getLogger(MuBackwardDispatch.class);
+
+    /**
+     * Invokes a backward behaviour.
+     */
+    @FunctionalInterface
+    /* package private */ interface Invoker {
+        boolean invoke(MuBackwardBehaviour activity, MuBackwardActivityContext context) throws Throwable;
+    }
+
+    private static final String BACKWARD_METHOD_NAME = "backward";
+    private static final Invoker BACKWARD = MuBackwardBehaviour::backward; // direct interface call
+    private static final MethodType INVOKER_TYPE
+            = MethodType.methodType(boolean.class, MuBackwardBehaviour.class, MuBackwardActivityContext.class);
+
+    /*
+     * What is cached per compensation class.
+     */
+    private static final class Behaviour {
+        private final MuBackwardBehaviour shared; // null unless stateless
+        private final MethodHandle constructor; // null if no accessible no-arg constructor
+        private final ConcurrentHashMap<String, Invoker> invokers = new ConcurrentHashMap<>();
+
+        private Behaviour(final Class<?> clazz) {
+            MethodHandle constructor = null;
+            try {
+                constructor = MethodHandles.publicLookup()
+                        .findConstructor(clazz, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(MuBackwardBehaviour.class));
+            }
+            catch (NoSuchMethodException | IllegalAccessException | WrongMethodTypeException ignore) {
+                // Instances are created by the loader
+            }
+            this.constructor = constructor;
+
+            MuBackwardBehaviour shared = null;
+            if (null != constructor && isStateless(clazz)) {
+                try {
+                    shared = (MuBackwardBehaviour) constructor.invokeExact();
+                }
+                catch (Throwable t) {
+                    log.debug("Failed to create shared instance of {}: {}", clazz.getName(), t.getMessage());
+                }
+            }
+            this.shared = shared;
+        }
+    }
+
+    private final DynamicLoader<MuBackwardBehaviour> loader;
+
+    private final ConcurrentHashMap<String, Class<?>> classes = new ConcurrentHashMap<>();
+    private final ClassValue<Behaviour> behaviours = new ClassValue<Behaviour>() {
+        @Override
+        protected Behaviour computeValue(final Class<?> clazz) {
+            return new Behaviour(clazz);
+        }
+    };
+
+    /* package private */
+    MuBackwardDispatch(final DynamicLoader<MuBackwardBehaviour> loader) {
+        Objects.requireNonNull(loader, "loader");
+        this.loader = loader;
+    }
+
+    /**
+     * Gets an instance of a compensation class -- shared if the class is stateless.
+     * @param className name of compensation class, as stored with the process step
+     * @return instance of compensation class, or null if not a backward behaviour
+     * @throws ClassNotFoundException if class could not be loaded
+     */
+    /* package private */
+    MuBackwardBehaviour instance(final String className) throws ClassNotFoundException {
+        Class<?> clazz = classes.get(className);
+        if (null == clazz) {
+            // Loaded (and instantiated) the first time around by the loader
+            MuBackwardBehaviour activity = loader.load(className);
+            if (null != activity) {
+                classes.putIfAbsent(className, activity.getClass());
+            }
+            return activity;
+        }
+
+        MuBackwardBehaviour activity = instance(clazz);
+        if (null == activity) {
+            // No accessible no-arg constructor, so let the loader do its thing
+            activity = loader.load(className);
+        }
+        return activity;
+    }
+
+    /*
+     * Gets an instance of a (loaded) compensation class, or null if the class has no accessible no-arg
+     * constructor.
+     */
+    /* package private */
+    MuBackwardBehaviour instance(final Class<?> clazz) throws ClassNotFoundException {
+        Behaviour behaviour = behaviours.get(clazz);
+        if (null != behaviour.shared) {
+            return behaviour.shared;
+        }
+        if (null == behaviour.constructor) {
+            return null;
+        }
+        try {
+            return (MuBackwardBehaviour) behaviour.constructor.invokeExact();
+        }
+        catch (Throwable t) {
+            throw new ClassNotFoundException("Failed to instantiate " + clazz.getName() + ": " + t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Gets an invoker of a (persistable) method of a compensation class.
+     * @param clazz the compensation class
+     * @param methodName name of method, taking a {@link MuBackwardActivityContext} and returning boolean
+     * @return invoker of method
+     * @throws NoSuchMethodException if there is no such (public) method
+     */
+    /* package private */
+    Invoker invoker(final Class<?> clazz, final String methodName) throws NoSuchMethodException {
+        if (BACKWARD_METHOD_NAME.equals(methodName) && MuBackwardBehaviour.class.isAssignableFrom(clazz)) {
+            return BACKWARD;
+        }
+
+        Behaviour behaviour = behaviours.get(clazz);
+        Invoker invoker = behaviour.invokers.get(methodName);
+        if (null == invoker) {
+            invoker = createInvoker(clazz, methodName);
+            Invoker existing = behaviour.invokers.putIfAbsent(methodName, invoker);
+            if (null != existing) {
+                invoker = existing;
+            }
+        }
+        return invoker;
+    }
+
+    private static Invoker createInvoker(final Class<?> clazz, final String methodName) throws NoSuchMethodException {
+        final Method method = clazz.getMethod(methodName, MuBackwardActivityContext.class);
+        try {
+            Class<?> returnType = method.getReturnType();
+            if (boolean.class != returnType && Boolean.class != returnType) {
+                throw new WrongMethodTypeException("returns " + returnType.getName());
+            }
+            final MethodHandle handle = MethodHandles.publicLookup().unreflect(method).asType(INVOKER_TYPE);
+            return (activity, context) -> (boolean) handle.invokeExact(activity, context);
+        }
+        catch (IllegalAccessException | WrongMethodTypeException e) {
+            // E.g. a public method in a non-public class, or not returning boolean -- invoked
+            // reflectively, failing (if at all) when invoked
+            log.debug("Invoking {}#{} reflectively: {}", clazz.getName(), methodName, e.getMessage());
+            return (activity, context) -> (boolean) method.invoke(activity, context);
+        }
+    }
+
+    /*
+     * A class is stateless if neither it nor its super classes have instance fields.
+     */
+    private static boolean isStateless(final Class<?> clazz) {
+        for (Class<?> c = clazz; null != c && Object.class != c; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bulkheads and circuit breakers for compensations run in the background, one of each per
+ * compensation (backward behaviour) class, as named by the class_name of process steps.
+ * <p>
+ * A bulkhead limits the number of compensations by a class running at a time, so that a slow
+ * downstream system does not occupy every recovery thread. A circuit breaker opens once
+ * compensations by a class have failed a number of times in a row, after which compensations by
+ * that class are skipped -- without being attempted -- for a while. Then a single compensation
+ * is let through (half-open) as a probe: if it succeeds the breaker closes, otherwise it opens
+ * again. Compensations by other classes keep flowing.
+ * <p>
+ * Every {@link #tryAcquire(String) acquired} compensation has to be {@link #release(String, boolean) released}.
+ */
+/* package private */ final class MuCompensationBreakers {
+    private static final Logger log = LoggerFactory.getLogger(MuCompensationBreakers.class);
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /*
+     * Bulkhead and breaker of a single class.
+     */
+    private static final class Breaker {
+        // All guarded by 'this'
+        private State state = State.CLOSED;
+        private int consecutiveFailures = 0;
+        private long openedNanos = 0L;
+        private int running = 0;
+    }
+
+    private final int failuresBeforeBreaking; // 0 means no breaking
+    private final long nanosBeforeProbing;
+    private final int maxRunningPerClass; // 0 means no bulkhead
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentHashMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final AtomicLong skipped = new AtomicLong();
+
+    /* package private */
+    MuCompensationBreakers(final int failuresBeforeBreaking, final int secondsBeforeProbing, final int maxRunningPerClass) {
+        this(failuresBeforeBreaking, secondsBeforeProbing, maxRunningPerClass, System::nanoTime);
+    }
+
+    /* package private */
+    MuCompensationBreakers(
+            final int failuresBeforeBreaking, final int secondsBeforeProbing, final int maxRunningPerClass,
+            final LongSupplier nanoClock
+    ) {
+        Objects.requireNonNull(nanoClock, "nanoClock");
+
+        this.failuresBeforeBreaking = Math.max(0, failuresBeforeBreaking);
+        this.nanosBeforeProbing = TimeUnit.SECONDS.toNanos(Math.max(0, secondsBeforeProbing));
+        this.maxRunningPerClass = Math.max(0, maxRunningPerClass);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Asks whether a compensation by class may run now.
+     * @param className name of compensation class, as stored with the process step
+     * @return true if compensation may run (and has to be released), false if it should be skipped
+     */
+    /* package private */
+    boolean tryAcquire(final String className) {
+        Breaker breaker = breakers.computeIfAbsent(className, name -> new Breaker());
+        synchronized (breaker) {
+            switch (breaker.state) {
+                case OPEN:
+                    if (nanoClock.getAsLong() - breaker.openedNanos < nanosBeforeProbing) {
+                        skipped.incrementAndGet();
+                        return false;
+                    }
+                    // Let a single probe through
+                    breaker.state = State.HALF_OPEN;
+                    log.debug("Probing compensations by {}", className);
+                    break;
+
+                case HALF_OPEN:
+                    // Probe already running
+                    skipped.incrementAndGet();
+                    return false;
+
+                case CLOSED:
+                default:
+                    if (maxRunningPerClass > 0 && breaker.running >= maxRunningPerClass) {
+                        skipped.incrementAndGet();
+                        return false;
+                    }
+                    break;
+            }
+            breaker.running++;
+            return true;
+        }
+    }
+
+    /**
+     * Releases compensation by class, having run it.
+     * @param className name of compensation class, as stored with the process step
+     * @param successful whether compensation was successful
+     */
+    /* package private */
+    void release(final String className, final boolean successful) {
+        Breaker breaker = breakers.get(className);
+        if (null == breaker) {
+            return; // not acquired
+        }
+        synchronized (breaker) {
+            if (breaker.running > 0) {
+                breaker.running--;
+            }
+
+            if (successful) {
+                if (State.CLOSED != breaker.state) {
+                    log.info("Compensations by {} are successful again, no longer skipping them", className);
+                }
+                breaker.state = State.CLOSED;
+                breaker.consecutiveFailures = 0;
+                return;
+            }
+
+            breaker.consecutiveFailures++;
+            if (State.HALF_OPEN == breaker.state
+                    || (State.CLOSED == breaker.state && failuresBeforeBreaking > 0 && breaker.consecutiveFailures >= failuresBeforeBreaking)) {
+                if (State.CLOSED == breaker.state) {
+                    log.info("Compensations by {} keep failing ({} times in a row), skipping them for {} seconds",
+                            className, breaker.consecutiveFailures, TimeUnit.NANOSECONDS.toSeconds(nanosBeforeProbing));
+                }
+                breaker.state = State.OPEN;
+                breaker.openedNanos = nanoClock.getAsLong();
+            }
+        }
+    }
+
+    /**
+     * @return number of compensations skipped so far
+     */
+    /* package private */
+    long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * @return number of classes whose compensations are currently skipped (breaker open or half-open)
+     */
+    /* package private */
+    int getBrokenCount() {
+        int broken = 0;
+        for (Breaker breaker : breakers.values()) {
+            synchronized (breaker) {
+                if (State.CLOSED != breaker.state) {
+                    broken++;
+                }
+            }
+        }
+        return broken;
+    }
+
+    /* package private */
+    boolean isBroken(final String className) {
+        Breaker breaker = breakers.get(className);
+        if (null == breaker) {
+            return false;
+        }
+        synchronized (breaker) {
+            return State.CLOSED != breaker.state;
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import org.gautelis.vopn.db.Database;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Collects writes to the compensation log from concurrently running processes, writing them
+ * to the database in one JDBC batch (per statement) and committing them in one transaction.
+ * <p>
+ * Writes are collected until either a maximum number of records have been collected or
+ * a maximum time has passed since the first write in the group. Callers are released when
+ * their records have been committed. If the group as a whole fails, each write is retried
+ * on its own so that one bad write does not fail the others.
+ * <p>
+ * Writes may also be submitted without waiting for them to be committed (write-behind),
+ * in which case the caller later waits for the {@link Request pending request(s)} when it
+ * needs the records to be durable. The number of pending requests is bounded, so callers
+ * block when the writer falls behind.
+ * <p>
+ * Records are written grouped per statement, in a fixed order of statements, so writes
+ * that depend on each other must not be submitted in the same group unless that order
+ * is compatible with the dependency.
+ * <p>
+ * When {@link #stop() stopped}, records already queued are written before the writer stops.
+ */
+/* package private */ final class MuGroupCommitWriter {
+    private static final Logger log = LoggerFactory.getLogger(MuGroupCommitWriter.class);
+
+    private static final long STOP_TIMEOUT_SECONDS = 30L;
+
+    /* package private */
+    interface Binder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    /**
+     * A single row-level write, i.e. a statement and the binding of its parameters.
+     */
+    /* package private */
+    static final class Record {
+        private final String key;
+        private final String sql;
+        private final Binder binder;
+        private final String description; // logged if no rows were affected
+
+        /* package private */
+        Record(final String key, final String sql, final Binder binder, final String description) {
+            this.key = key;
+            this.sql = sql;
+            this.binder = binder;
+            this.description = description;
+        }
+
+        /* package private */
+        String getKey() {
+            return key;
+        }
+
+        /* package private */
+        Binder getBinder() {
+            return binder;
+        }
+
+        /* package private */
+        String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * Records submitted together, to be written atomically.
+     */
+    /* package private */
+    final class Request {
+        private final List<Record> records;
+        private final boolean detached; // i.e. write-behind
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile SQLException failure = null;
+
+        private Request(List<Record> records, boolean detached) {
+            this.records = records;
+            this.detached = detached;
+        }
+
+        private void complete(SQLException failure /* may be null */) {
+            if (done.getCount() > 0) {
+                this.failure = failure;
+                pendingRecordCount.addAndGet(-records.size());
+                if (null != failure && detached) {
+                    lostRecordCount.addAndGet(records.size());
+                    log.warn("Failed to write {} compensation log record(s) behind process: {}",
+                            records.size(), Database.squeeze(failure));
+                }
+                done.countDown();
+            }
+        }
+
+        /**
+         * Waits for records to be committed.
+         * @throws SQLException if failing to write records
+         */
+        /* package private */
+        void await() throws SQLException {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                }
+                catch (InterruptedException ie) {
+                    // Record is (most probably) on its way to the database, so we need to know how it fared
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (null != failure) {
+                // Wrap, in order to get a stack trace from the calling thread
+                throw new SQLException(failure.getMessage(), failure.getSQLState(), failure.getErrorCode(), failure);
+            }
+        }
+    }
+
+    private final DataSource dataSource;
+    private final List<String> statementOrder;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private final BlockingQueue<Request> queue;
+    private final Request stopRequest = new Request(Collections.emptyList(), /* detached? */ true); // queued last
+    private final Thread flusher;
+    private volatile boolean running = true;
+    private final ReadWriteLock stopLock = new ReentrantReadWriteLock(); // write-locked when stopping
+
+    // Statistics
+    private final AtomicLong commitCount = new AtomicLong();
+    private final AtomicLong recordCount = new AtomicLong();
+    private final AtomicLong pendingRecordCount = new AtomicLong();
+    private final AtomicLong lostRecordCount = new AtomicLong();
+
+    /* package private */
+    MuGroupCommitWriter(
+            final DataSource dataSource, final List<String> statementOrder,
+            final int maxBatchSize, final long maxWaitMicroseconds,
+            final int capacity /* 0 means unbounded */
+    ) {
+        Objects.requireNonNull(dataSource, "dataSource");
+        Objects.requireNonNull(statementOrder, "statementOrder");
+
+        this.dataSource = dataSource;
+        this.statementOrder = statementOrder;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0L, maxWaitMicroseconds));
+        this.queue = capacity > 0 ? new ArrayBlockingQueue<>(capacity) : new LinkedBlockingQueue<>();
+
+        flusher = new Thread(this::run, "org.gautelis.muprocessmanager.group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Writes records atomically, together with records from other (concurrent) callers.
+     * Returns when the records have been committed.
+     * @param records records to write in one transaction
+     * @throws SQLException if failing to write records
+     */
+    /* package private */
+    void write(final List<Record> records) throws SQLException {
+        Objects.requireNonNull(records, "records");
+        if (records.isEmpty()) {
+            return;
+        }
+
+        enqueue(new Request(records, /* detached? */ false)).await();
+    }
+
+    /**
+     * Submits records to be written atomically, together with records from other (concurrent) callers.
+     * Returns as soon as the records have been queued, which may block if the writer has fallen behind.
+     * @param records records to write in one transaction
+     * @return the pending request, to {@link Request#await() await} when records need to be durable
+     * @throws SQLException if writer has been stopped or if interrupted while waiting to queue records
+     */
+    /* package private */
+    Request submit(final List<Record> records) throws SQLException {
+        Objects.requireNonNull(records, "records");
+
+        return enqueue(new Request(records, /* detached? */ true));
+    }
+
+    private Request enqueue(final Request request) throws SQLException {
+        // Requests are not queued while stopping, i.e. behind the stop request
+        stopLock.readLock().lock();
+        try {
+            if (!running) {
+                throw new SQLException("Group commit of compensation log has been stopped");
+            }
+
+            pendingRecordCount.addAndGet(request.records.size());
+            try {
+                queue.put(request);
+            }
+            catch (InterruptedException ie) {
+                pendingRecordCount.addAndGet(-request.records.size());
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while queueing compensation log records", ie);
+            }
+            return request;
+        }
+        finally {
+            stopLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops writer, after having written records already queued. Waits (a while) for queued records
+     * to be written, after which records still not written are failed.
+     */
+    /* package private */
+    void stop() {
+        stopLock.writeLock().lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+            queue.put(stopRequest);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            flusher.interrupt();
+            return;
+        }
+        finally {
+            stopLock.writeLock().unlock();
+        }
+
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(STOP_TIMEOUT_SECONDS));
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            log.warn("Group commit of compensation log did not write {} queued record(s) within {} seconds, giving up",
+                    pendingRecordCount.get(), STOP_TIMEOUT_SECONDS);
+            flusher.interrupt();
+        }
+    }
+
+    /* package private */
+    long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /* package private */
+    long getRecordCount() {
+        return recordCount.get();
+    }
+
+    /* package private */
+    long getPendingRecordCount() {
+        return pendingRecordCount.get();
+    }
+
+    /* package private */
+    long getLostRecordCount() {
+        return lostRecordCount.get();
+    }
+
+    private void run() {
+        List<Request> group = new ArrayList<>();
+        try {
+            boolean stopping = false;
+            while (!stopping) {
+                Request first = queue.take();
+                if (stopRequest == first) {
+                    break;
+                }
+                group.add(first);
+                int count = first.records.size();
+
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (count < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (null == next) {
+                        break;
+                    }
+                    if (stopRequest == next) {
+                        stopping = true; // after having flushed this group
+                        break;
+                    }
+                    group.add(next);
+                    count += next.records.size();
+                }
+
+                flush(group);
+                group.clear();
+            }
+            log.debug("Group commit of compensation log stopped");
+        }
+        catch (InterruptedException ie) {
+            log.debug("Group commit of compensation log interrupted");
+        }
+        finally {
+            SQLException stopped = new SQLException("Group commit of compensation log has been stopped");
+            group.forEach(request -> request.complete(stopped));
+            queue.forEach(request -> request.complete(stopped));
+        }
+    }
+
+    private void flush(final List<Request> group) {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int count = writeGrouped(conn, group);
+                conn.commit();
+                commitCount.incrementAndGet();
+                recordCount.addAndGet(count);
+                group.forEach(request -> request.complete(null));
+            }
+            catch (SQLException sqle) {
+                conn.rollback();
+
+                if (group.size() == 1) {
+                    group.get(0).complete(sqle);
+                }
+                else {
+                    // Isolate the failing write(s)
+                    log.debug("Failed to write group of {} compensation log writes, writing individually: {}",
+                            group.size(), Database.squeeze(sqle));
+
+                    for (Request request : group) {
+                        try {
+                            int count = writeGrouped(conn, Collections.singletonList(request));
+                            conn.commit();
+                            commitCount.incrementAndGet();
+                            recordCount.addAndGet(count);
+                            request.complete(null);
+                        }
+                        catch (SQLException individual) {
+                            conn.rollback();
+                            request.complete(individual);
+                        }
+                    }
+                }
+            }
+            finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        catch (SQLException sqle) {
+            group.forEach(request -> request.complete(sqle));
+        }
+        catch (RuntimeException re) {
+            SQLException sqle = new SQLException("Failed to write compensation log: " + re.getMessage(), re);
+            group.forEach(request -> request.complete(sqle));
+        }
+    }
+
+    private int writeGrouped(final Connection conn, final List<Request> group) throws SQLException {
+        // Group records per statement, in a fixed statement order
+        Map<String, List<Record>> grouped = new LinkedHashMap<>();
+        for (String key : statementOrder) {
+            grouped.put(key, new ArrayList<>());
+        }
+        for (Request request : group) {
+            for (Record record : request.records) {
+                grouped.computeIfAbsent(record.key, k -> new ArrayList<>()).add(record);
+            }
+        }
+
+        int count = 0;
+        for (List<Record> records : grouped.values()) {
+            if (records.isEmpty()) {
+                continue;
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(records.get(0).sql)) {
+                for (Record record : records) {
+                    record.binder.bind(stmt);
+                    stmt.addBatch();
+                }
+
+                int[] results = stmt.executeBatch();
+                for (int i = 0; i < results.length && i < records.size(); i++) {
+                    if (0 == results[i]) {
+                        log.debug(records.get(i).description);
+                    }
+                }
+            }
+            count += records.size();
+        }
+        return count;
+    }
+}
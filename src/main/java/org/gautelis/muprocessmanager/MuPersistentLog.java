@@ -26,11 +26,14 @@ import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.io.Reader;
-import java.lang.reflect.Method;
+import java.io.StringReader;
 import java.sql.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
 
 /**
  * Takes care of persisting compensations to a relational database and subsequently reading
@@ -47,6 +50,7 @@ public class MuPersistentLog {
     private static final Logger statisticsLog = LoggerFactory.getLogger("STATISTICS");
     private static final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
     private static final DynamicLoader<MuBackwardBehaviour> loader = new DynamicLoader<>("compensation activity");
+    private static final MuBackwardDispatch dispatch = new MuBackwardDispatch(loader);
 
     private final DataSource dataSource;
     private final Properties sqlStatements;
@@ -59,21 +63,408 @@ public class MuPersistentLog {
     private static final boolean CHECKED_AT_DEV_TIME = false;
 
     public interface CompensationRunnable {
-        boolean run(MuBackwardBehaviour activity, Method method, MuBackwardActivityContext context, int step, int retries) throws MuProcessBackwardBehaviourException;
+        boolean run(MuBackwardBehaviour activity, MuBackwardDispatch.Invoker invoker, MuBackwardActivityContext context, int step, int retries) throws MuProcessBackwardBehaviourException;
     }
 
     public interface CleanupRunnable {
-        void run(String correlationId, int processId, int state, boolean acceptCompensationFailure, java.util.Date created, java.util.Date modified, java.util.Date now);
+        void run(String correlationId, long processId, int state, boolean acceptCompensationFailure, java.util.Date created, java.util.Date modified, java.util.Date now);
     }
 
+    /* package private */ interface RecoveryRunnable {
+        void run(String correlationId, long processId, int state, boolean acceptCompensationFailure, java.util.Date created, java.util.Date modified, java.util.Date now, ProcessSteps steps /* may be null */, long leasedAt /* 0 if not leased */);
+    }
+
+    /* package private */ interface StepsFilter {
+        boolean wantsSteps(long processId, int state); // i.e. if process will be recovered
+    }
+
+    // Connection affinity, i.e. processes holding on to a connection during their lifecycle
+    private final boolean holdConnectionForProcessLifecycle;
+    private final long maxIdleProcessConnectionMillis;
+    private final Set<MuProcessConnection> openProcessConnections = ConcurrentHashMap.newKeySet();
+    private Timer processConnectionReaper = null;
+
+    // Writing process header together with first step, and refreshing header only now and then
+    private final boolean foldProcessHeaderIntoFirstStep;
+    private final long processHeartbeatMillis;
+
+    // Recording outcome of forward activities together with next step
+    private final boolean deferStepOutcomeMarking;
+
+    // Group commit of writes from concurrently running processes, and writing behind processes
+    private final boolean groupCommit;
+    private final int groupCommitMaxBatchSize;
+    private final int groupCommitMaxWaitMicroseconds;
+    private final MuProcessDurability defaultDurability;
+    private final int writeBehindBufferSize;
+    private volatile MuGroupCommitWriter groupCommitWriter = null; // created on demand
+
+    // Only warn once if (older) SQL statements do not support per state recovery
+    private volatile boolean hasWarnedAboutRecoveryStatements = false;
+
+    // Fetching processes to recover in pages, rather than all at once
+    private final int recoveryPageSize;
+    private final int recoveryFetchSize;
+
+    // Fetching process steps of processes to recover in batches, rather than process by process
+    private final boolean batchRecoveryStepFetch;
+    private final int recoveryStepBatchSize;
+
+    // Sharding recovery between nodes, each node recovering processes in its own range of recovery buckets
+    // A process falls in recovery bucket MOD(process_id * 613, 1024), where the (odd) multiplier
+    // spreads consecutive processes over buckets -- as in the recovery statements
+    /* package private */ static final int RECOVERY_BUCKETS = 1024;
+    private static final long RECOVERY_BUCKET_MULTIPLIER = 613L;
+    private final int firstRecoveryBucket; // inclusive
+    private final int lastRecoveryBucket; // exclusive
+
+    // Removing retired processes in bulk, rather than one by one
+    private final boolean bulkPurgeRetiredProcesses;
+    private final int purgeChunkSize;
+
+    // Leasing processes to recover, so that several nodes may recover processes concurrently
+    private final boolean claimRecoveryLeases;
+    private final int recoveryLeaseSeconds;
+    private final String leaseOwner = UUID.randomUUID().toString(); // identifies this node, also when electing leader
+
+    // Electing a leader among nodes, the leader being the only node running background tasks
+    private final boolean electRecoveryLeader;
+    private final int leaderLeaseSeconds;
+
+    // Removing retired processes by dropping whole partitions, rather than row by row
+    private final boolean partitionedProcessStorage;
+    private final long processesPerPartition;
+
+    // Exponential backoff of re-compensation attempts, per process step
+    private final long minRetryDelaySeconds;
+    private final long maxRetryDelaySeconds;
+
+    // Allocating process ids from blocks reserved in advance, rather than having the database generate them
+    private final long processIdBlockSize;
+    private final Object processIdLock = new Object();
+    private long nextProcessId = 0L; // guarded by processIdLock
+    private long processIdLimit = 0L; // exclusive, guarded by processIdLock
+
+    // Bulkheads and circuit breakers, per compensation class, when compensating in the background
+    private final MuCompensationBreakers compensationBreakers; // may be null
+
     /* package private */  MuPersistentLog(final DataSource dataSource, final Properties sqlStatements, final boolean assumeNativeProcessDataFlow) {
+        this(dataSource, sqlStatements, assumeNativeProcessDataFlow, null);
+    }
+
+    /* package private */  MuPersistentLog(final DataSource dataSource, final Properties sqlStatements, final MuProcessManagementPolicy policy) {
+        this(dataSource, sqlStatements, policy.assumeNativeProcessDataFlow(), policy);
+    }
+
+    private MuPersistentLog(
+            final DataSource dataSource, final Properties sqlStatements, final boolean assumeNativeProcessDataFlow,
+            final MuProcessManagementPolicy policy /* may be null */
+    ) {
         this.dataSource = dataSource;
         this.sqlStatements = sqlStatements;
         this.assumeNativeProcessDataFlow = assumeNativeProcessDataFlow;
+
+        if (null != policy) {
+            holdConnectionForProcessLifecycle = policy.holdConnectionForProcessLifecycle();
+            maxIdleProcessConnectionMillis = 1000L * Math.max(1, policy.secondsBeforeReleasingIdleProcessConnection());
+
+            foldProcessHeaderIntoFirstStep = policy.foldProcessHeaderIntoFirstStep();
+            long heartbeatMillis = 1000L * Math.max(0, policy.secondsBetweenProcessHeartbeats());
+            long maxHeartbeatMillis = 60 * 1000L * policy.minutesBeforeAssumingProcessStuck() / 2;
+            if (heartbeatMillis > maxHeartbeatMillis) {
+                log.warn("Capping seconds-between-process-heartbeats to {} seconds (half of minutes-before-assuming-process-stuck)",
+                        maxHeartbeatMillis / 1000L);
+                heartbeatMillis = maxHeartbeatMillis;
+            }
+            processHeartbeatMillis = heartbeatMillis;
+
+            deferStepOutcomeMarking = policy.deferStepOutcomeMarking();
+
+            groupCommit = policy.groupCommitCompensationLog();
+            groupCommitMaxBatchSize = policy.groupCommitMaxBatchSize();
+            groupCommitMaxWaitMicroseconds = policy.groupCommitMaxWaitMicroseconds();
+            defaultDurability = policy.writeBehindCompensationLog() ? MuProcessDurability.WRITE_BEHIND : MuProcessDurability.DURABLE;
+            writeBehindBufferSize = policy.writeBehindBufferSize();
+
+            processIdBlockSize = Math.max(0, policy.processIdBlockSize());
+
+            recoveryPageSize = Math.max(1, policy.recoveryPageSize());
+            recoveryFetchSize = Math.max(0, policy.recoveryFetchSize());
+
+            batchRecoveryStepFetch = policy.batchRecoveryStepFetch();
+            recoveryStepBatchSize = Math.max(1, policy.recoveryStepBatchSize());
+
+            int shardCount = policy.recoveryShardCount();
+            int shardIndex = policy.recoveryShardIndex();
+            if (shardCount < 1 || shardCount > RECOVERY_BUCKETS || shardIndex < 0 || shardIndex >= shardCount) {
+                log.warn("Invalid recovery-shard-count ({}) and recovery-shard-index ({}), not sharding recovery",
+                        shardCount, shardIndex);
+                shardCount = 1;
+                shardIndex = 0;
+            }
+            firstRecoveryBucket = shardIndex * RECOVERY_BUCKETS / shardCount;
+            lastRecoveryBucket = (shardIndex + 1) * RECOVERY_BUCKETS / shardCount;
+
+            bulkPurgeRetiredProcesses = policy.bulkPurgeRetiredProcesses();
+            purgeChunkSize = Math.max(1, policy.purgeChunkSize());
+
+            claimRecoveryLeases = policy.claimRecoveryLeases();
+            recoveryLeaseSeconds = Math.max(1, policy.secondsOfRecoveryLease());
+
+            electRecoveryLeader = policy.electRecoveryLeader();
+            leaderLeaseSeconds = Math.max(1, policy.secondsOfLeaderLease());
+
+            partitionedProcessStorage = policy.partitionedProcessStorage();
+            processesPerPartition = Math.max(1, policy.processesPerPartition());
+
+            minRetryDelaySeconds = Math.max(0, policy.secondsBetweenRecompensationAttempts());
+            maxRetryDelaySeconds = Math.max(minRetryDelaySeconds, policy.maxSecondsBetweenRecompensationAttempts());
+
+            if (policy.breakFailingCompensations()) {
+                compensationBreakers = new MuCompensationBreakers(
+                        policy.compensationFailuresBeforeBreaking(),
+                        policy.secondsBeforeProbingBrokenCompensation(),
+                        policy.maxConcurrentCompensationsPerClass()
+                );
+            } else {
+                compensationBreakers = null;
+            }
+        }
+        else {
+            holdConnectionForProcessLifecycle = false;
+            maxIdleProcessConnectionMillis = 60 * 1000L;
+
+            foldProcessHeaderIntoFirstStep = false;
+            processHeartbeatMillis = 0L;
+
+            deferStepOutcomeMarking = false;
+
+            groupCommit = false;
+            groupCommitMaxBatchSize = 64;
+            groupCommitMaxWaitMicroseconds = 500;
+            defaultDurability = MuProcessDurability.DURABLE;
+            writeBehindBufferSize = 8192;
+
+            processIdBlockSize = 0;
+
+            recoveryPageSize = 1000;
+            recoveryFetchSize = 200;
+
+            batchRecoveryStepFetch = false;
+            recoveryStepBatchSize = 100;
+
+            firstRecoveryBucket = 0;
+            lastRecoveryBucket = RECOVERY_BUCKETS;
+
+            bulkPurgeRetiredProcesses = false;
+            purgeChunkSize = 5000;
+
+            claimRecoveryLeases = false;
+            recoveryLeaseSeconds = 300;
+
+            electRecoveryLeader = false;
+            leaderLeaseSeconds = 30;
+
+            partitionedProcessStorage = false;
+            processesPerPartition = 1000000L;
+
+            minRetryDelaySeconds = 0L; // i.e. no backoff
+            maxRetryDelaySeconds = 0L;
+
+            compensationBreakers = null;
+        }
+
+        if (claimRecoveryLeases && !claimsRecoveryLeases()) {
+            log.warn("No lease statements for this database, recovering processes without leases (despite claim-recovery-leases)");
+        }
+        if (electRecoveryLeader && !electsLeader()) {
+            log.warn("No leadership statements for this database, running background tasks without electing leader (despite elect-recovery-leader)");
+        }
+        if (batchRecoveryStepFetch && !fetchesRecoveryStepsInBatches()) {
+            log.warn("No batched step statement for this database, fetching process steps process by process (despite batch-recovery-step-fetch)");
+        }
+        if (partitionedProcessStorage && !managesPartitions()) {
+            log.warn("No partition statements for this database, removing retired processes row by row (despite partitioned-process-storage)");
+        }
+    }
+
+    /**
+     * A connection, and the statements prepared on it, used by a single operation against the log.
+     * Either a connection of its own, fetched from the data source and closed with the lease -or-
+     * the connection held by a process, in which case the connection (and the prepared statements)
+     * survive the lease.
+     * <p>
+     * A transaction that has been begun but not committed, when the lease is closed, is rolled back.
+     */
+    private final class Lease implements AutoCloseable {
+        private final MuProcessConnection held; // may be null
+        private final Connection conn;
+        private final List<PreparedStatement> statements = new LinkedList<>();
+        private boolean inTransaction = false;
+
+        private Lease(final MuProcessConnection held) throws SQLException {
+            this.held = held;
+            this.conn = null != held ? held.acquire() : dataSource.getConnection();
+        }
+
+        private PreparedStatement prepare(final String key) throws SQLException, MuProcessException {
+            return prepare(key, Statement.NO_GENERATED_KEYS);
+        }
+
+        private PreparedStatement prepare(final String key, final int autoGeneratedKeys) throws SQLException, MuProcessException {
+            String sql = getStatement(key);
+            if (null != held) {
+                return held.prepare(sql, autoGeneratedKeys);
+            }
+            PreparedStatement stmt = conn.prepareStatement(sql, autoGeneratedKeys);
+            statements.add(stmt);
+            return stmt;
+        }
+
+        private PreparedStatement prepare(final String key, final int resultSetType, final int resultSetConcurrency) throws SQLException, MuProcessException {
+            String sql = getStatement(key);
+            if (null != held) {
+                return held.prepare(sql, resultSetType, resultSetConcurrency);
+            }
+            PreparedStatement stmt = conn.prepareStatement(sql, resultSetType, resultSetConcurrency);
+            statements.add(stmt);
+            return stmt;
+        }
+
+        private void begin() throws SQLException {
+            conn.setAutoCommit(false);
+            inTransaction = true;
+        }
+
+        private void commit() throws SQLException {
+            conn.commit();
+            inTransaction = false;
+            conn.setAutoCommit(true);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (inTransaction) {
+                    inTransaction = false;
+                    try {
+                        conn.rollback();
+                    }
+                    finally {
+                        conn.setAutoCommit(true);
+                    }
+                }
+            }
+            finally {
+                if (null != held) {
+                    held.relinquish();
+                }
+                else {
+                    for (PreparedStatement stmt : statements) {
+                        try {
+                            stmt.close();
+                        }
+                        catch (SQLException ignore) {}
+                    }
+                    conn.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a connection to be held by a process during its lifecycle, if connection affinity
+     * is enabled.
+     * @param correlationId correlation ID of process (for logging purposes)
+     * @return a process connection -or- null if processes should not hold on to connections.
+     */
+    /* package private */
+    MuProcessConnection newProcessConnection(final String correlationId) {
+        if (!holdConnectionForProcessLifecycle) {
+            return null;
+        }
+
+        synchronized (openProcessConnections) {
+            if (null == processConnectionReaper) {
+                // Guards against processes that are never finished (or failed)
+                processConnectionReaper = new Timer("org.gautelis.muprocessmanager.connection-reaper", /* daemon? */ true);
+                long period = Math.max(1000L, maxIdleProcessConnectionMillis / 2);
+                processConnectionReaper.scheduleAtFixedRate(new TimerTask() {
+                    @Override
+                    public void run() {
+                        long now = System.currentTimeMillis();
+                        for (MuProcessConnection connection : openProcessConnections) {
+                            connection.releaseIfIdle(now, maxIdleProcessConnectionMillis);
+                        }
+                    }
+                }, period, period);
+            }
+        }
+        return new MuProcessConnection(dataSource, correlationId, openProcessConnections);
+    }
+
+    /* package private */
+    void releaseProcessConnection(final MuProcessConnection connection /* may be null */) {
+        if (null != connection) {
+            connection.release();
+        }
+    }
+
+    /* package private */
+    MuProcessDurability getDefaultDurability() {
+        return defaultDurability;
+    }
+
+    private MuGroupCommitWriter getGroupCommitWriter() {
+        MuGroupCommitWriter writer = groupCommitWriter;
+        if (null == writer) {
+            synchronized (this) {
+                writer = groupCommitWriter;
+                if (null == writer) {
+                    writer = new MuGroupCommitWriter(
+                            dataSource,
+                            // Steps are stored before outcomes are marked and before headers are touched
+                            Arrays.asList("STORE_PROCESS_WITH_ID", "STORE_PROCESS_STEP", "UPDATE_PROCESS_STEP", "UPDATE_PROCESS"),
+                            groupCommitMaxBatchSize, groupCommitMaxWaitMicroseconds, writeBehindBufferSize
+                    );
+                    groupCommitWriter = writer;
+                }
+            }
+        }
+        return writer;
+    }
+
+    /**
+     * Stops background activities of the compensation log, i.e. the idle process connection reaper and
+     * group commit (writing what is queued, if anything). These are recreated on demand if the compensation
+     * log is used afterwards.
+     */
+    /* package private */
+    void stop() {
+        synchronized (openProcessConnections) {
+            if (null != processConnectionReaper) {
+                processConnectionReaper.cancel();
+                processConnectionReaper = null;
+            }
+        }
+
+        MuGroupCommitWriter writer;
+        synchronized (this) {
+            writer = groupCommitWriter;
+            groupCommitWriter = null;
+        }
+        if (null != writer) {
+            writer.stop();
+        }
     }
 
     private int i = 0; // for development purposes -- ignore please :)
 
+    private boolean hasStatement(String key) {
+        String statement = sqlStatements.getProperty(key);
+        return null != statement && !statement.isEmpty();
+    }
+
     private String getStatement(String key) throws MuProcessException {
         Objects.requireNonNull(key, "key");
 
@@ -117,73 +508,221 @@ public class MuPersistentLog {
      * @throws MuProcessException if fails to determine auto-generated process id or if Fails to persist process header
      */
     /* package private */
-    int pushProcess(
+    long pushProcess(
             final MuProcess process
+    ) throws MuProcessException {
+        return pushProcess(process, MuProcessState.NEW);
+    }
+
+    private long pushProcess(
+            final MuProcess process, final MuProcessState state
     ) throws MuProcessException {
         Objects.requireNonNull(process, "process");
 
+        try (Lease lease = new Lease(process.getConnection())) {
+            return insertProcessHeader(lease, process, state);
+        }
+        catch (SQLException sqle) {
+            throw processHeaderException(process, sqle);
+        }
+    }
+
+    /*
+     * Inserts process header, within whatever transaction (if any) is active on the lease.
+     */
+    private long insertProcessHeader(
+            final Lease lease, final MuProcess process, final MuProcessState state
+    ) throws SQLException, MuProcessException {
+        if (processIdBlockSize > 0) {
+            MuGroupCommitWriter.Record record = processHeaderRecord(process, state);
+            PreparedStatement stmt = lease.prepare(record.getKey());
+            record.getBinder().bind(stmt);
+            Database.executeUpdate(stmt);
+
+            process.setLastHeartbeat(System.currentTimeMillis());
+            return process.getProcessId();
+        }
+
+        PreparedStatement stmt = lease.prepare("STORE_PROCESS", Statement.RETURN_GENERATED_KEYS);
+        int idx = 0;
+        stmt.setString(++idx, process.getCorrelationId());
+        stmt.setInt(++idx, state.toInt());
+        stmt.setBoolean(++idx, process.getAcceptCompensationFailure());
+        Database.executeUpdate(stmt);
+
+        try (ResultSet rs = stmt.getGeneratedKeys()) {
+            if (rs.next()) {
+                long processId = rs.getLong(1);
+                process.setProcessId(processId);
+                process.setLastHeartbeat(System.currentTimeMillis());
+
+                log.trace("Persisted process: correlationId=\"{}\", processId={}", process.getCorrelationId(), processId);
+                return processId;
+            }
+            else {
+                String info = "Failed to determine auto-generated process id";
+                log.error(info); // This is nothing we can recover from
+                throw new MuProcessException(info);
+            }
+        }
+    }
+
+    /*
+     * Record describing a process header, having a process id allocated up front (which is assigned to the process).
+     */
+    private MuGroupCommitWriter.Record processHeaderRecord(
+            final MuProcess process, final MuProcessState state
+    ) throws SQLException, MuProcessException {
+        final long processId = allocateProcessId();
+        process.setProcessId(processId);
+
+        log.trace("Allocated process id: correlationId=\"{}\", processId={}", process.getCorrelationId(), processId);
+
+        return new MuGroupCommitWriter.Record(
+                "STORE_PROCESS_WITH_ID", getStatement("STORE_PROCESS_WITH_ID"),
+                stmt -> {
+                    int idx = 0;
+                    stmt.setLong(++idx, processId);
+                    stmt.setString(++idx, process.getCorrelationId());
+                    stmt.setInt(++idx, state.toInt());
+                    stmt.setBoolean(++idx, process.getAcceptCompensationFailure());
+                },
+                "Process header not stored: processId=" + processId
+        );
+    }
+
+    /*
+     * Allocates a process id from the current block of reserved process ids, reserving
+     * a new block if the current one is exhausted.
+     */
+    private long allocateProcessId() throws SQLException, MuProcessException {
+        synchronized (processIdLock) {
+            if (nextProcessId >= processIdLimit) {
+                reserveProcessIdBlock();
+            }
+            return nextProcessId++;
+        }
+    }
+
+    /*
+     * Reserves a block of process ids, in a transaction of its own. If the sequence does not yet exist,
+     * it is initialized to follow any process ids already generated by the database.
+     */
+    private void reserveProcessIdBlock() throws SQLException, MuProcessException {
         try (Connection conn = dataSource.getConnection()) {
-            try (PreparedStatement stmt = conn.prepareStatement(getStatement("STORE_PROCESS"), Statement.RETURN_GENERATED_KEYS)) {
-                int idx = 0;
-                stmt.setString(++idx, process.getCorrelationId());
-                stmt.setInt(++idx, MuProcessState.NEW.toInt());
-                stmt.setBoolean(++idx, process.getAcceptCompensationFailure());
-                Database.executeUpdate(stmt);
+            conn.setAutoCommit(false);
+            try {
+                boolean initialized = false;
+                while (true) {
+                    try (PreparedStatement stmt = conn.prepareStatement(getStatement("RESERVE_PROCESS_ID_BLOCK"))) {
+                        stmt.setLong(1, processIdBlockSize);
+                        if (Database.executeUpdate(stmt) > 0) {
+                            break;
+                        }
+                    }
 
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        int processId = rs.getInt(1);
-                        process.setProcessId(processId);
+                    if (initialized) {
+                        throw new SQLException("Failed to reserve block of process ids: no process id sequence");
+                    }
+                    initialized = true;
 
-                        log.trace("Persisted process: correlationId=\"{}\", processId={}", process.getCorrelationId(), processId);
-                        return processId;
+                    try (PreparedStatement stmt = conn.prepareStatement(getStatement("INITIALIZE_PROCESS_ID_SEQUENCE"))) {
+                        Database.executeUpdate(stmt);
+                        conn.commit();
+                        log.info("Initialized process id sequence");
                     }
-                    else {
-                        String info = "Failed to determine auto-generated process id";
-                        log.error(info); // This is nothing we can recover from
-                        throw new MuProcessException(info);
+                    catch (SQLException sqle) {
+                        // Probably initialized concurrently by someone else
+                        conn.rollback();
+                        log.debug("Failed to initialize process id sequence: {}", Database.squeeze(sqle));
+                    }
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        getStatement("FETCH_PROCESS_ID_BLOCK"),
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
+                ) {
+                    try (ResultSet rs = Database.executeQuery(stmt)) {
+                        if (!rs.next()) {
+                            throw new SQLException("Failed to reserve block of process ids: no process id sequence");
+                        }
+                        long limit = rs.getLong(1);
+                        nextProcessId = limit - processIdBlockSize;
+                        processIdLimit = limit;
                     }
                 }
+                conn.commit();
+
+                log.debug("Reserved process ids [{}, {})", nextProcessId, processIdLimit);
+            }
+            catch (SQLException sqle) {
+                conn.rollback();
+                throw sqle;
+            }
+            finally {
+                conn.setAutoCommit(true);
             }
         }
-        catch (SQLException sqle) {
-            /*
-             * Failed to persist process header for correlationId "775113c6-8f7a-4f0d-b5fd-9139727ef227":
-             * DerbySQLIntegrityConstraintViolationException [
-             *    The statement was aborted because it would have caused a duplicate key value in a unique
-             *    or primary key constraint or unique index identified by 'MU_PROCESS_CORRID_IX' defined
-             *    on 'MU_PROCESS'.
-             * ], SQLstate(23505), Vendor code(30000)
-             */
+    }
+
+    private MuProcessException processHeaderException(
+            final MuProcess process, final SQLException sqle
+    ) {
+        /*
+         * Failed to persist process header for correlationId "775113c6-8f7a-4f0d-b5fd-9139727ef227":
+         * DerbySQLIntegrityConstraintViolationException [
+         *    The statement was aborted because it would have caused a duplicate key value in a unique
+         *    or primary key constraint or unique index identified by 'MU_PROCESS_CORRID_IX' defined
+         *    on 'MU_PROCESS'.
+         * ], SQLstate(23505), Vendor code(30000)
+         */
+
+        // State: 23xyz - Integrity constraint/key violation
+        //  [SQL Server: Data already exists]
+        //  [Oracle:     Data already exists]
+        //  [DB2:        Constraint violation]
+        if (null != sqle.getSQLState() && sqle.getSQLState().startsWith("23")) {
+            // Either the correlation ID (as expected) or the process id (if process ids are generated
+            // by the database as well as allocated by us, or the database was migrated without
+            // re-seeding the identity) was taken, so we check for an existing process
+            boolean exists = true;
+            try {
+                exists = getProcessState(process.getCorrelationId()).isPresent();
+            }
+            catch (MuProcessException mpe) {
+                log.debug("Failed to check for existing process: {}", mpe.getMessage());
+            }
 
-            // State: 23xyz - Integrity constraint/key violation
-            //  [SQL Server: Data already exists]
-            //  [Oracle:     Data already exists]
-            //  [DB2:        Constraint violation]
-            if (sqle.getSQLState().startsWith("23")) {
+            if (exists) {
                 String info = "A process already exists for this business request: correlation ID \"" + process.getCorrelationId() + "\"";
                 log.trace(info);
-                throw new MuProcessAlreadyExistsException(info, sqle);
-            }
-            else {
-                String info = "Failed to persist process header for correlationId \"" + process.getCorrelationId() + "\": ";
-                info += Database.squeeze(sqle);
-                log.warn(info, sqle);
-                throw new MuProcessException(info, sqle);
+                return new MuProcessAlreadyExistsException(info, sqle);
             }
+
+            String info = "Failed to persist process header for correlationId \"" + process.getCorrelationId() + "\", ";
+            info += "since process id is already taken (is the process id identity or sequence behind existing processes?): ";
+            info += Database.squeeze(sqle);
+            log.warn(info, sqle);
+            return new MuProcessException(info, sqle);
+        }
+        else {
+            String info = "Failed to persist process header for correlationId \"" + process.getCorrelationId() + "\": ";
+            info += Database.squeeze(sqle);
+            log.warn(info, sqle);
+            return new MuProcessException(info, sqle);
         }
     }
 
     /* package private */
     Optional<Integer> countProcessSteps(
-            final int processId
+            final long processId
     ) throws MuProcessException {
         try (Connection conn = dataSource.getConnection()) {
             try (PreparedStatement stmt = conn.prepareStatement(
                     getStatement("COUNT_PROCESS_STEPS"),
                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
             ) {
-                stmt.setInt(1, processId);
+                stmt.setLong(1, processId);
 
                 try (ResultSet rs = Database.executeQuery(stmt)) {
                     if (rs.next()) {
@@ -287,27 +826,20 @@ public class MuPersistentLog {
 
     /* package private */
     void setProcessStateAndResult(
-            final int processId, final MuProcessState state, final MuProcessResult result
+            final long processId, final MuProcessState state, final MuProcessResult result
+    ) throws MuProcessException {
+        setProcessStateAndResult(processId, state, result, /* no held connection */ null);
+    }
+
+    /* package private */
+    void setProcessStateAndResult(
+            final long processId, final MuProcessState state, final MuProcessResult result,
+            final MuProcessConnection connection /* may be null */
     ) throws MuProcessException {
         Objects.requireNonNull(state, "state");
 
-        try (Connection conn = dataSource.getConnection()) {
-            try (PreparedStatement stmt = conn.prepareStatement(getStatement("UPDATE_PROCESS"))) {
-                int idx = 0;
-                stmt.setInt(++idx, state.toInt());
-                if (null == result || result.isEmpty()) {
-                    stmt.setNull(++idx, Types.CLOB);
-                }
-                else {
-                    // No need to explicitly Cloner.clone() result, since we
-                    // are implicitly cloning by persisting to database.
-                    stmt.setCharacterStream(++idx, result.toReader());
-                }
-                stmt.setInt(++idx, processId);
-                if (0 == Database.executeUpdate(stmt)) {
-                    log.debug("No process corresponding to processId={}, when storing process state and result", processId);
-                }
-            }
+        try (Lease lease = new Lease(connection)) {
+            updateProcess(lease, processId, state, result);
         }
         catch (SQLException sqle) {
             String info = "Failed to update process: ";
@@ -319,9 +851,32 @@ public class MuPersistentLog {
         log.trace("Updated process {} with state {}", processId, state);
     }
 
+    /*
+     * Updates process state and result, within whatever transaction (if any) is active on the lease.
+     */
+    private void updateProcess(
+            final Lease lease, final long processId, final MuProcessState state, final MuProcessResult result /* may be null */
+    ) throws SQLException, MuProcessException {
+        PreparedStatement stmt = lease.prepare("UPDATE_PROCESS");
+        int idx = 0;
+        stmt.setInt(++idx, state.toInt());
+        if (null == result || result.isEmpty()) {
+            stmt.setNull(++idx, Types.CLOB);
+        }
+        else {
+            // No need to explicitly Cloner.clone() result, since we
+            // are implicitly cloning by persisting to database.
+            stmt.setCharacterStream(++idx, result.toReader());
+        }
+        stmt.setLong(++idx, processId);
+        if (0 == Database.executeUpdate(stmt)) {
+            log.debug("No process corresponding to processId={}, when storing process state and result", processId);
+        }
+    }
+
     /* package private */
     void setProcessState(
-            final int processId, final MuProcessState state
+            final long processId, final MuProcessState state
     ) throws MuProcessException {
         setProcessStateAndResult(processId, state, /* no result */ null);
     }
@@ -336,7 +891,7 @@ public class MuPersistentLog {
         try (Connection conn = dataSource.getConnection()) {
             conn.setAutoCommit(false);
 
-            int processId = MuProcess.PROCESS_ID_NOT_YET_ASSIGNED;
+            long processId = MuProcess.PROCESS_ID_NOT_YET_ASSIGNED;
             MuProcessState state = null;
             boolean doContinue = true;
 
@@ -349,7 +904,7 @@ public class MuPersistentLog {
                 try (ResultSet rs = Database.executeQuery(stmt)) {
                     if (rs.next()) {
                         int idx = 0;
-                        processId = rs.getInt(++idx);
+                        processId = rs.getLong(++idx);
                         state = MuProcessState.fromInt(rs.getInt(++idx));
 
                         switch (state) {
@@ -388,40 +943,16 @@ public class MuPersistentLog {
                 return Optional.of(false);
             }
 
-            try (PreparedStatement stmt = conn.prepareStatement(
-                    getStatement("FETCH_PROCESS_STEPS_BY_PROCID_COARSE"),
-                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_UPDATABLE)
-            ) {
-                stmt.setInt(1, processId);
-
-                try (ResultSet rs = Database.executeQuery(stmt)) {
-                    while (rs.next()) {
-                        /*
-                         * 'process_id' need to be selected even though we know it, since we are using a updateable
-                         *  result set. At least this is a requirement on PostgreSQL:
-                         *    "ResultSet is not updateable.  The query that generated this result set must select
-                         *    only one table, and must select all primary keys from that table. See the JDBC 2.1
-                         *    API Specification, section 5.6 for more details."
-                         *
-                         *  We read the process_id field, so as to not haphazardly 'optimize' the SQL statement
-                         *  away (since we seemingly don't need it)
-                         */
-                        int idx = 0;
-                        int ignored = rs.getInt(++idx);
-                        int stepId = rs.getInt(++idx);
-                        int retries = rs.getInt(++idx);
-
-                        //
-                        log.trace("Removing process step (on reset): correlationId=\"{}\", processId={}, state={}, stepId={}, retries={}",
-                                correlationId, processId, state, stepId, retries);
+            try (PreparedStatement stmt = conn.prepareStatement(getStatement("REMOVE_PROCESS_STEPS"))) {
+                stmt.setLong(1, processId);
+                int stepCount = Database.executeUpdate(stmt); // A process may not have any steps...
 
-                        rs.deleteRow();
-                    }
-                }
+                log.trace("Removed {} process step(s) (on reset): correlationId=\"{}\", processId={}, state={}",
+                        stepCount, correlationId, processId, state);
             }
 
             try (PreparedStatement stmt = conn.prepareStatement(getStatement("REMOVE_PROCESS"))) {
-                stmt.setInt(1, processId);
+                stmt.setLong(1, processId);
                 if (0 == Database.executeUpdate(stmt)) {
                     log.debug("No process corresponding to processId={}, when removing process (on reset)", processId);
                 }
@@ -454,7 +985,7 @@ public class MuPersistentLog {
 
                 // Process related
                 String correlationId = rs.getString(++idx);
-                int processId = rs.getInt(++idx);
+                long processId = rs.getLong(++idx);
                 MuProcessState state = MuProcessState.fromInt(rs.getInt(++idx));
                 Timestamp created = rs.getTimestamp(++idx);
                 Timestamp modified = rs.getTimestamp(++idx);
@@ -570,17 +1101,31 @@ public class MuPersistentLog {
 
     /* package private */
     void markRetry(
-        final int processId, final int stepId
+        final long processId, final int stepId, final int retries
     ) throws MuProcessException {
+        markRetry(processId, stepId, retries, /* no held connection */ null);
+    }
 
-        try (Connection conn = dataSource.getConnection()) {
-            try (PreparedStatement stmt = conn.prepareStatement(getStatement("INCREMENT_PROCESS_STEP_RETRIES"))) {
-                int idx = 0;
-                stmt.setInt(++idx, processId);
-                stmt.setInt(++idx, stepId);
-                if (0 == Database.executeUpdate(stmt)) {
-                    log.debug("No process step corresponding to processId={} stepId={}, when increasing retries", processId, stepId);
-                }
+    /* package private */
+    void markRetry(
+            final long processId, final int stepId, final int retries,
+            final MuProcessConnection connection /* may be null */
+    ) throws MuProcessException {
+
+        try (Lease lease = new Lease(connection)) {
+            PreparedStatement stmt;
+            int idx = 0;
+            if (hasStatement("SCHEDULE_PROCESS_STEP_RETRY")) {
+                stmt = lease.prepare("SCHEDULE_PROCESS_STEP_RETRY");
+                stmt.setInt(++idx, retryDelaySeconds(retries));
+            }
+            else {
+                stmt = lease.prepare("INCREMENT_PROCESS_STEP_RETRIES");
+            }
+            stmt.setLong(++idx, processId);
+            stmt.setInt(++idx, stepId);
+            if (0 == Database.executeUpdate(stmt)) {
+                log.debug("No process step corresponding to processId={} stepId={}, when increasing retries", processId, stepId);
             }
         }
         catch (SQLException sqle) {
@@ -591,25 +1136,46 @@ public class MuPersistentLog {
         }
     }
 
+    /*
+     * Seconds until next attempt to compensate a step, having failed 'retries' times before.
+     * Doubles for every failed attempt, with 'equal jitter' (i.e. half of the delay is random).
+     */
+    private int retryDelaySeconds(final int retries) {
+        if (minRetryDelaySeconds <= 0L) {
+            return 0;
+        }
+        int doublings = Math.min(Math.max(0, retries), 30);
+        long delay = Math.min(maxRetryDelaySeconds, minRetryDelaySeconds << doublings);
+        if (delay < 0L) {
+            delay = maxRetryDelaySeconds; // overflow
+        }
+        long half = delay / 2;
+        return (int) Math.min(Integer.MAX_VALUE, half + ThreadLocalRandom.current().nextLong(delay - half + 1));
+    }
+
     /* package private */
     void markSuccessful(
-            final int processId, final int stepId, final boolean successful
+            final long processId, final int stepId, final boolean successful
     ) throws MuProcessException {
+        markSuccessful(/* no process */ null, processId, stepId, successful, /* no held connection */ null);
+    }
 
-        try (Connection conn = dataSource.getConnection()) {
-            try (PreparedStatement stmt = conn.prepareStatement(getStatement("UPDATE_PROCESS_STEP"))) {
-                int idx = 0;
-                stmt.setBoolean(++idx, successful);
-                stmt.setInt(++idx, processId);
-                stmt.setInt(++idx, stepId);
+    /* package private */
+    void markSuccessful(
+            final MuProcess process, final boolean successful
+    ) throws MuProcessException {
+        Objects.requireNonNull(process, "process");
 
-                if (0 == Database.executeUpdate(stmt)) {
-                    log.debug(
-                            "No process step corresponding to processId={}, stepId={}, when marking {}",
-                            processId, stepId, successful ? "success" : "failure"
-                    );
-                }
-            }
+        markSuccessful(process, process.getProcessId(), process.getCurrentStep(), successful, process.getConnection());
+    }
+
+    private void markSuccessful(
+            final MuProcess process /* may be null */, final long processId, final int stepId, final boolean successful,
+            final MuProcessConnection connection /* may be null */
+    ) throws MuProcessException {
+
+        try {
+            writeRecords(process, connection, Collections.singletonList(stepOutcomeRecord(processId, stepId, successful)));
         }
         catch (SQLException sqle) {
             String info = "Failed to update process step: ";
@@ -622,317 +1188,1535 @@ public class MuPersistentLog {
     }
 
     /* package private */
-    void compensate(
-            final int processId, final CompensationRunnable runnable
+    boolean isDeferringStepOutcomeMarking() {
+        return deferStepOutcomeMarking;
+    }
+
+    /**
+     * Records outcome of forward activities not yet recorded (if deferring outcome marking), in one transaction.
+     * @param process the process having outcomes of steps not yet recorded.
+     * @throws MuProcessException if failing to record outcomes.
+     */
+    /* package private */
+    void flushStepOutcomes(
+            final MuProcess process
     ) throws MuProcessException {
-        Objects.requireNonNull(runnable, "runnable");
+        Objects.requireNonNull(process, "process");
 
-        try (Connection conn = dataSource.getConnection()) {
-            try (PreparedStatement stmt = conn.prepareStatement(
-                    getStatement("FETCH_PROCESS_STEPS_BY_PROCID_DETAILED"),
-                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
-            ) {
-                stmt.setInt(1, processId);
-                try (ResultSet rs = Database.executeQuery(stmt)) {
+        // Outcomes refer to steps that may not yet have been written
+        awaitPendingWrites(process);
+
+        if (process.getPendingStepOutcomes().isEmpty()) {
+            return;
+        }
+
+        try {
+            writeRecords(/* durably */ null, process.getConnection(), stepOutcomeRecords(process));
+        }
+        catch (SQLException sqle) {
+            String info = "Failed to update process steps: ";
+            info += Database.squeeze(sqle);
+            log.warn(info, sqle);
+            throw new MuProcessException(info, sqle);
+        }
+        process.getPendingStepOutcomes().clear();
+    }
+
+    /**
+     * Waits for writes not yet committed on behalf of a process (having write-behind durability).
+     * @param process the process having pending writes.
+     * @throws MuProcessException if any of the writes failed, in which case the compensation log
+     * may be incomplete for this process.
+     */
+    /* package private */
+    void awaitPendingWrites(
+            final MuProcess process
+    ) throws MuProcessException {
+        Objects.requireNonNull(process, "process");
+
+        List<MuGroupCommitWriter.Request> pendingWrites = process.getPendingWrites();
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+
+        SQLException failure = null;
+        int failures = 0;
+        for (MuGroupCommitWriter.Request request : pendingWrites) {
+            try {
+                request.await();
+            }
+            catch (SQLException sqle) {
+                if (null == failure) {
+                    failure = sqle;
+                }
+                failures++;
+            }
+        }
+        pendingWrites.clear();
+
+        if (null != failure) {
+            String info = "Failed to write " + failures + " (behind) compensation log write(s) for process: ";
+            info += Database.squeeze(failure);
+            throw new MuProcessException(info, failure);
+        }
+    }
+
+    /*
+     * Records describing the outcome of forward activities not yet recorded. The pending outcomes
+     * are not cleared, since the records have not yet been written.
+     */
+    private List<MuGroupCommitWriter.Record> stepOutcomeRecords(
+            final MuProcess process
+    ) throws MuProcessException {
+        List<MuGroupCommitWriter.Record> records = new ArrayList<>();
+        for (Map.Entry<Integer, Boolean> outcome : process.getPendingStepOutcomes().entrySet()) {
+            records.add(stepOutcomeRecord(process.getProcessId(), outcome.getKey(), outcome.getValue()));
+        }
+        return records;
+    }
+
+    private MuGroupCommitWriter.Record stepOutcomeRecord(
+            final long processId, final int stepId, final boolean successful
+    ) throws MuProcessException {
+        return new MuGroupCommitWriter.Record(
+                "UPDATE_PROCESS_STEP", getStatement("UPDATE_PROCESS_STEP"),
+                stmt -> {
+                    int idx = 0;
+                    stmt.setBoolean(++idx, successful);
+                    stmt.setLong(++idx, processId);
+                    stmt.setInt(++idx, stepId);
+                },
+                "No process step corresponding to processId=" + processId + ", stepId=" + stepId
+                        + ", when marking " + (successful ? "success" : "failure")
+        );
+    }
+
+    private MuGroupCommitWriter.Record progressingRecord(
+            final long processId, final String when
+    ) throws MuProcessException {
+        return new MuGroupCommitWriter.Record(
+                "UPDATE_PROCESS", getStatement("UPDATE_PROCESS"),
+                stmt -> {
+                    int idx = 0;
+                    stmt.setInt(++idx, MuProcessState.PROGRESSING.toInt());
+                    stmt.setNull(++idx, Types.CLOB);
+                    stmt.setLong(++idx, processId);
+                },
+                "No process corresponding to processId=" + processId + ", when " + when
+        );
+    }
+
+    /*
+     * Executes records on lease, within whatever transaction (if any) is active on the lease.
+     */
+    private void executeRecords(
+            final Lease lease, final List<MuGroupCommitWriter.Record> records
+    ) throws SQLException, MuProcessException {
+        for (MuGroupCommitWriter.Record record : records) {
+            PreparedStatement stmt = lease.prepare(record.getKey());
+            record.getBinder().bind(stmt);
+            if (0 == Database.executeUpdate(stmt)) {
+                log.debug(record.getDescription());
+            }
+        }
+    }
+
+    /*
+     * Writes records atomically, either behind the process (if process has write-behind durability),
+     * by means of group commit (if enabled) -or- directly using the connection held by the process (if any).
+     */
+    private void writeRecords(
+            final MuProcess process /* may be null */, final MuProcessConnection connection /* may be null */,
+            final List<MuGroupCommitWriter.Record> records
+    ) throws SQLException, MuProcessException {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        if (null != process && process.getDurability() == MuProcessDurability.WRITE_BEHIND) {
+            process.getPendingWrites().add(getGroupCommitWriter().submit(records));
+            return;
+        }
+
+        if (groupCommit) {
+            getGroupCommitWriter().write(records);
+            return;
+        }
+
+        try (Lease lease = new Lease(connection)) {
+            boolean isTransaction = records.size() > 1;
+            if (isTransaction) {
+                lease.begin();
+            }
+            executeRecords(lease, records);
+            if (isTransaction) {
+                lease.commit();
+            }
+        }
+    }
+
+    /* package private */
+    void compensate(
+            final long processId, final CompensationRunnable runnable
+    ) throws MuProcessException {
+        compensate(processId, /* no held connection */ null, runnable);
+    }
+
+    /* package private */
+    void compensate(
+            final long processId, final MuProcessConnection connection /* may be null */,
+            final CompensationRunnable runnable
+    ) throws MuProcessException {
+        compensate(processId, connection, /* not gated */ false, runnable);
+    }
+
+    /*
+     * Compensates process steps. If gated (as when compensating in the background), compensations by
+     * a class that is kept from running by its bulkhead or circuit breaker are skipped -- neither run
+     * nor marked for retry -- leaving the process step to be compensated later.
+     *
+     * The steps are fetched (and decoded) up front, letting go of the connection while backward
+     * behaviours run, after which the outcome of compensations are written in a single transaction.
+     *
+     * Returns number of skipped process steps.
+     */
+    /* package private */
+    int compensate(
+            final long processId, final MuProcessConnection connection /* may be null */,
+            final boolean gated, final CompensationRunnable runnable
+    ) throws MuProcessException {
+        Objects.requireNonNull(runnable, "runnable");
+
+        ProcessSteps steps = fetchProcessSteps(processId, connection);
+        return compensate(processId, connection, steps, gated ? compensationBreakers : null, runnable, /* not leased */ null);
+    }
+
+    /*
+     * Compensates process steps already fetched (in a batch) for a process, otherwise (if null) fetching
+     * the steps. Compensations are gated in the same way as above.
+     *
+     * Returns number of skipped process steps.
+     */
+    /* package private */
+    int compensate(
+            final long processId, final ProcessSteps steps /* may be null */,
+            final boolean gated, final CompensationRunnable runnable
+    ) throws MuProcessException {
+        return compensate(processId, steps, gated, runnable, /* not leased */ null);
+    }
+
+    /*
+     * As above, for a process leased to us during recovery. The lease is checked (and renewed, if need be)
+     * before each compensation and before writing the outcome of compensations. Once the lease is lost,
+     * remaining compensations are skipped -- some other node may be recovering the process.
+     *
+     * Returns number of skipped process steps.
+     */
+    /* package private */
+    int compensate(
+            final long processId, final ProcessSteps steps /* may be null */,
+            final boolean gated, final CompensationRunnable runnable,
+            final BooleanSupplier holdsLease /* may be null */
+    ) throws MuProcessException {
+        Objects.requireNonNull(runnable, "runnable");
+
+        ProcessSteps _steps = null != steps ? steps : fetchProcessSteps(processId, /* no held connection */ null);
+        return compensate(processId, /* no held connection */ null, _steps, gated ? compensationBreakers : null, runnable, holdsLease);
+    }
+
+    private int compensate(
+            final long processId, final MuProcessConnection connection /* may be null */,
+            final ProcessSteps steps, final MuCompensationBreakers breakers /* may be null */,
+            final CompensationRunnable runnable, final BooleanSupplier holdsLease /* may be null */
+    ) throws MuProcessException {
+        // Outcome of compensations, i.e. steps to remove (if compensated) or to retry (if not)
+        List<MuGroupCommitWriter.Record> outcomes = new ArrayList<>();
+        int skipped = 0;
+
+        boolean completed = false;
+        try {
+            int remaining = steps.steps.size();
+            for (ProcessStep step : steps.steps) {
+                if (null != holdsLease && !holdsLease.getAsBoolean()) {
+                    log.debug("Skipping {} compensations of process {}, since lease was lost", remaining, processId);
+                    skipped += remaining;
+                    break;
+                }
+                if (!compensate(processId, breakers, step, runnable, outcomes)) {
+                    skipped++;
+                }
+                remaining--;
+            }
+            completed = true;
+        }
+        finally {
+            // Also record compensations run before some compensation failed (and threw). Compensations
+            // that were run are recorded even if the lease was lost in the meantime, since they did run
+            if (null != holdsLease && !outcomes.isEmpty() && !holdsLease.getAsBoolean()) {
+                log.debug("Lost lease on process {} while compensating", processId);
+            }
+            try {
+                writeCompensationOutcomes(connection, outcomes);
+            }
+            catch (MuProcessException mpe) {
+                if (completed) {
+                    throw mpe;
+                }
+                // otherwise, already failing
+            }
+        }
+        return skipped;
+    }
+
+    /*
+     * Compensates a single process step, adding the outcome to outcomes. Returns false if
+     * compensation was skipped.
+     */
+    private boolean compensate(
+            final long processId, final MuCompensationBreakers breakers /* may be null */,
+            final ProcessStep step, final CompensationRunnable runnable,
+            final List<MuGroupCommitWriter.Record> outcomes
+    ) throws MuProcessException {
+        final String correlationId = step.correlationId;
+        final int stepId = step.stepId;
+
+        // Should we compensate even if forward transaction failed? Compensating a successful
+        // forward transaction seems reasonable, but if the transaction did not accomplish anything
+        // it may not be pertinent to try to undo anything.
+        if (null != step.transWasSuccessful) {
+            if (step.compensateIfFailure && !step.transWasSuccessful) {
+                // This is the case we want to trap -- the forward transaction was not successful
+                // but we should not compensate anyhow. Therefore, we leave early
+
+                log.debug("Ignoring compensation of unsuccessful step (correlationId=\"{}\", processId={}, stepId={})",
+                        correlationId, processId, stepId);
+
+                return true;
+            }
+        } else {
+            log.info("Ignoring compensation of unsuccessful step (correlationId=\"{}\", processId={}, stepId={})",
+                    correlationId, processId, stepId);
+        }
+
+        //
+        final String className = step.className;
+        if (null != breakers && !breakers.tryAcquire(className)) {
+            log.debug("Skipping compensation by {} (correlationId=\"{}\", processId={}, stepId={})",
+                    className, correlationId, processId, stepId);
+            return false;
+        }
+        boolean compensated = false;
+        try {
+            MuBackwardBehaviour activity = dispatch.instance(className);
+            if (activity != null) {
+                if (CHECKED_AT_DEV_TIME) {
+                     //---------------------------------------------------------------------------
+                     // Used during development to trap inadvertent changes to signature of
+                     // MuBackwardBehaviour#backward, since we have a non-compile time detectable
+                     // dependency below. This if-statement is never meant to be run but is
+                     // harmless since constantly false conditional blocks are removed at
+                     // compile time (as per the Java specification)
+                     //---------------------------------------------------------------------------
+                    MuBackwardBehaviour trapChangesToInterface = context -> false;
+                }
+                MuBackwardDispatch.Invoker invoker = dispatch.invoker(activity.getClass(), step.methodName);
+
+                MuBackwardActivityContext context = new MuBackwardActivityContext(
+                        correlationId, step.acceptCompensationFailure,
+                        step.activityParameters, step.orchestrationParameters, step.preState
+                );
+
+                //
+                if (runnable.run(activity, invoker, context, stepId, step.retries)) {
+                    compensated = true;
+                    outcomes.add(popCompensationRecord(processId, stepId));
+                }
+                else {
+                    outcomes.add(retryRecord(processId, stepId, step.retries));
+                }
+            }
+            else {
+                String info = "Failed to compensate process (correlationId=\"" + correlationId + "\", processId=" + processId + ",  stepId=" + stepId + "): ";
+                info += "Not a MuBackwardActivity! " + className;
+                throw new MuProcessBackwardBehaviourException(info);
+            }
+        }
+        catch (ClassNotFoundException cnfe) {
+            String info = "Failed to instantiate compensation: ";
+            info += cnfe.getMessage();
+            log.info(info);
+            throw new MuProcessBackwardBehaviourException(info, cnfe);
+        }
+        catch (NoSuchMethodException nsme) {
+            String info = "Failed to establish call endpoint for compensation: ";
+            info += nsme.getMessage();
+            log.info(info);
+            throw new MuProcessBackwardBehaviourException(info, nsme);
+        }
+        finally {
+            if (null != breakers) {
+                breakers.release(className, compensated);
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Fetches (and decodes) steps of a process, letting go of the connection (if held) before returning.
+     */
+    private ProcessSteps fetchProcessSteps(
+            final long processId, final MuProcessConnection connection /* may be null */
+    ) throws MuProcessException {
+        ProcessSteps steps = new ProcessSteps();
+
+        try (Lease lease = new Lease(connection)) {
+            PreparedStatement stmt = lease.prepare(
+                    "FETCH_PROCESS_STEPS_BY_PROCID_DETAILED",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
+            );
+            stmt.setLong(1, processId);
+            try (ResultSet rs = Database.executeQuery(stmt)) {
+                while (rs.next()) {
+                    // correlation_id, accept_failure, step_id, compensate_if_failure, trans_successful, class_name, method_name, activity_params, orchestr_params, retries, previous_state
+                    steps.steps.add(new ProcessStep(rs, /* first column */ 1));
+                }
+            }
+        }
+        catch (SQLException sqle) {
+            String info = "Failed to query compensation: ";
+            info += Database.squeeze(sqle);
+            log.warn(info, sqle);
+            throw new MuProcessBackwardBehaviourException(info, sqle);
+        }
+        return steps;
+    }
+
+    /*
+     * Writes outcome of compensations in a single transaction, batching records per statement.
+     */
+    private void writeCompensationOutcomes(
+            final MuProcessConnection connection /* may be null */,
+            final List<MuGroupCommitWriter.Record> records
+    ) throws MuProcessException {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<MuGroupCommitWriter.Record>> grouped = new LinkedHashMap<>();
+        for (MuGroupCommitWriter.Record record : records) {
+            grouped.computeIfAbsent(record.getKey(), key -> new ArrayList<>()).add(record);
+        }
+
+        try (Lease lease = new Lease(connection)) {
+            lease.begin();
+            for (Map.Entry<String, List<MuGroupCommitWriter.Record>> entry : grouped.entrySet()) {
+                List<MuGroupCommitWriter.Record> batch = entry.getValue();
+
+                PreparedStatement stmt = lease.prepare(entry.getKey());
+                for (MuGroupCommitWriter.Record record : batch) {
+                    record.getBinder().bind(stmt);
+                    stmt.addBatch();
+                }
+                int[] results = stmt.executeBatch();
+                for (int i = 0; i < results.length && i < batch.size(); i++) {
+                    if (0 == results[i]) {
+                        log.debug(batch.get(i).getDescription());
+                    }
+                }
+            }
+            lease.commit();
+        }
+        catch (SQLException sqle) {
+            String info = "Failed to record outcome of compensations: ";
+            info += Database.squeeze(sqle);
+            log.warn(info, sqle);
+            throw new MuProcessBackwardBehaviourException(info, sqle);
+        }
+    }
+
+    /*
+     * Record removing a compensated process step.
+     */
+    private MuGroupCommitWriter.Record popCompensationRecord(
+            final long processId, final int stepId
+    ) throws MuProcessException {
+        return new MuGroupCommitWriter.Record(
+                "REMOVE_PROCESS_STEP", getStatement("REMOVE_PROCESS_STEP"),
+                stmt -> {
+                    int idx = 0;
+                    stmt.setLong(++idx, processId);
+                    stmt.setInt(++idx, stepId);
+                },
+                "No process step corresponding to processId=" + processId + " stepId=" + stepId + ", when popping compensation"
+        );
+    }
+
+    /*
+     * Record marking a failed compensation attempt, as does markRetry().
+     */
+    private MuGroupCommitWriter.Record retryRecord(
+            final long processId, final int stepId, final int retries
+    ) throws MuProcessException {
+        if (hasStatement("SCHEDULE_PROCESS_STEP_RETRY")) {
+            final int delaySeconds = retryDelaySeconds(retries);
+            return new MuGroupCommitWriter.Record(
+                    "SCHEDULE_PROCESS_STEP_RETRY", getStatement("SCHEDULE_PROCESS_STEP_RETRY"),
+                    stmt -> {
+                        int idx = 0;
+                        stmt.setInt(++idx, delaySeconds);
+                        stmt.setLong(++idx, processId);
+                        stmt.setInt(++idx, stepId);
+                    },
+                    "No process step corresponding to processId=" + processId + " stepId=" + stepId + ", when increasing retries"
+            );
+        }
+        return new MuGroupCommitWriter.Record(
+                "INCREMENT_PROCESS_STEP_RETRIES", getStatement("INCREMENT_PROCESS_STEP_RETRIES"),
+                stmt -> {
+                    int idx = 0;
+                    stmt.setLong(++idx, processId);
+                    stmt.setInt(++idx, stepId);
+                },
+                "No process step corresponding to processId=" + processId + " stepId=" + stepId + ", when increasing retries"
+        );
+    }
+
+    /*
+     * A process step, as read (and decoded) by the compensation statements.
+     */
+    private final class ProcessStep {
+        private final String correlationId;
+        private final boolean acceptCompensationFailure;
+        private final int stepId;
+        private final boolean compensateIfFailure;
+        private final Boolean transWasSuccessful; // null if unknown
+        private final String className;
+        private final String methodName;
+        private final MuActivityParameters activityParameters;
+        private final MuOrchestrationParameters orchestrationParameters; // may be null
+        private final int retries;
+        private final MuActivityState preState; // may be null
+
+        private ProcessStep(final ResultSet rs, final int firstColumn) throws SQLException, MuProcessException {
+            // correlation_id, accept_failure, step_id, compensate_if_failure, trans_successful, class_name, method_name, activity_params, orchestr_params, retries, previous_state
+            int idx = firstColumn - 1;
+            correlationId = rs.getString(++idx);
+            acceptCompensationFailure = rs.getBoolean(++idx);
+            stepId = rs.getInt(++idx);
+            compensateIfFailure = rs.getBoolean(++idx);
+            boolean transSuccessful = rs.getBoolean(++idx);
+            transWasSuccessful = rs.wasNull() ? null : transSuccessful;
+            className = rs.getString(++idx);
+            methodName = rs.getString(++idx);
+
+            // activity parameters
+            //   We need to consume the character stream right away, since the next call to
+            //   rs.getCharacterStream() may effectively sabotage it's state. This is the
+            //   case with the Derby JDBC implementation (but not with the PostgreSQL version).
+            Reader activityParamReader = rs.getCharacterStream(++idx);
+            if (!rs.wasNull()) {
+                if (assumeNativeProcessDataFlow) {
+                    activityParameters = MuNativeActivityParameters.fromReader(activityParamReader);
+                }
+                else {
+                    activityParameters = MuForeignActivityParameters.fromReader(activityParamReader);
+                }
+            }
+            else {
+                activityParameters = new MuNoActivityParameters();
+            }
+
+            // orchestration parameters
+            //   Consume the stream
+            Reader orchestrationParamReader = rs.getCharacterStream(++idx);
+            if (!rs.wasNull()) {
+                orchestrationParameters = MuOrchestrationParameters.fromReader(orchestrationParamReader);
+            }
+            else {
+                orchestrationParameters = null;
+            }
+
+            //
+            retries = rs.getInt(++idx);
+
+            // pre-state
+            //   Consume the stream
+            Reader stateReader = rs.getCharacterStream(++idx);
+            if (!rs.wasNull()) {
+                if (assumeNativeProcessDataFlow) {
+                    preState = MuNativeActivityState.fromReader(stateReader);
+                }
+                else {
+                    preState = MuForeignActivityState.fromReader(stateReader);
+                }
+            }
+            else {
+                preState = null;
+            }
+        }
+    }
+
+    /**
+     * The steps of a process (in the order they are compensated), fetched in a batch with the steps of
+     * other processes during recovery and handed to the recovery task of that process.
+     */
+    /* package private */ static final class ProcessSteps {
+        private final List<ProcessStep> steps = new ArrayList<>();
+
+        /* package private */
+        int size() {
+            return steps.size();
+        }
+
+        /* package private */
+        boolean isEmpty() {
+            return steps.isEmpty();
+        }
+    }
+
+    /* package private */
+    void cleanupAfterSuccess(
+            final long processId, final MuProcessResult result
+    ) throws MuProcessException {
+        cleanupAfterSuccess(processId, result, /* no held connection */ null);
+    }
+
+    /* package private */
+    void cleanupAfterSuccess(
+            final long processId, final MuProcessResult result, final MuProcessConnection connection /* may be null */
+    ) throws MuProcessException {
+        Objects.requireNonNull(result, "result");
+
+        // Remove process steps and set process state, in one transaction
+        try (Lease lease = new Lease(connection)) {
+            lease.begin();
+
+            PreparedStatement stmt = lease.prepare("REMOVE_PROCESS_STEPS");
+            stmt.setLong(1, processId);
+            Database.executeUpdate(stmt); // A process may not have any steps...
+
+            updateProcess(lease, processId, MuProcessState.SUCCESSFUL, result);
+            lease.commit();
+        }
+        catch (SQLException sqle) {
+            String info = "Failed to remove compensations: ";
+            info += Database.squeeze(sqle);
+            log.warn(info, sqle);
+
+            // Set process state anyhow, so that the process is not compensated by the process manager
+            setProcessStateAndResult(processId, MuProcessState.SUCCESSFUL, result, connection);
+            throw new MuProcessBackwardBehaviourException(info, sqle);
+        }
+
+        log.trace("Updated process {} with state {}", processId, MuProcessState.SUCCESSFUL);
+    }
+
+    /* package private */
+    void cleanupAfterSuccessfulCompensation(
+            final long processId
+    ) throws MuProcessException {
+        cleanupAfterSuccessfulCompensation(processId, /* no held connection */ null);
+    }
+
+    /* package private */
+    void cleanupAfterSuccessfulCompensation(
+            final long processId, final MuProcessConnection connection /* may be null */
+    ) throws MuProcessException {
+        setProcessStateAndResult(processId, MuProcessState.COMPENSATED, /* no result */ null, connection);
+    }
+
+    /* package private */
+    void cleanupAfterFailedCompensation(
+            final long processId
+    ) throws MuProcessException {
+        cleanupAfterFailedCompensation(processId, /* no held connection */ null);
+    }
+
+    /* package private */
+    void cleanupAfterFailedCompensation(
+            final long processId, final MuProcessConnection connection /* may be null */
+    ) throws MuProcessException {
+        setProcessStateAndResult(processId, MuProcessState.COMPENSATION_FAILED, /* no result */ null, connection);
+    }
+
+    /* package private */
+    void cleanupAfterFailure(
+            final long processId
+    ) throws MuProcessException {
+        cleanupAfterFailure(processId, /* no held connection */ null);
+    }
+
+    /* package private */
+    void cleanupAfterFailure(
+            final long processId, final MuProcessConnection connection /* may be null */
+    ) throws MuProcessException {
+        setProcessStateAndResult(processId, MuProcessState.ABANDONED, /* no result */ null, connection);
+    }
+
+    /* package private */
+    void dumpStatistics(
+            WorkQueue workQueue, MuRecoveryLimiter recoveryLimiter /* may be null */,
+            long submittedRecoveries, long duplicateRecoveries
+    ) {
+        Objects.requireNonNull(workQueue, "workQueue");
+
+        // Prepare collecting statistics for each state
+        final int numStates = MuProcessState.values().length;
+        long[] stateCount = new long[numStates];
+
+        //
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    getStatement("COUNT_PROCESSES"),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
+            ) {
+                try (ResultSet rs = Database.executeQuery(stmt)) {
                     while (rs.next()) {
-                        // correlation_id, accept_failure, step_id, compensate_if_failure, trans_successful, class_name, method_name, activity_params, orchestr_params, retries, previous_state
-                        int idx = 0;
-                        String correlationId = rs.getString(++idx);
-                        boolean acceptCompensationFailure = rs.getBoolean(++idx);
-                        int stepId = rs.getInt(++idx);
-
-                        // Should we compensate even if forward transaction failed? Compensating a successful
-                        // forward transaction seems reasonable, but if the transaction did not accomplish anything
-                        // it may not be pertinent to try to undo anything.
-                        boolean compensateIfFailure = rs.getBoolean(++idx);
-                        boolean transWasSuccessful = rs.getBoolean(++idx);
-                        if (!rs.wasNull()) {
-                            if (compensateIfFailure && !transWasSuccessful) {
-                                // This is the case we want to trap -- the forward transaction was not successful
-                                // but we should not compensate anyhow. Therefore, we leave early
-
-                                log.debug("Ignoring compensation of unsuccessful step (correlationId=\"{}\", processId={}, stepId={})",
-                                        correlationId, processId, stepId);
+                        // count, state
+                        int count = rs.getInt(1);
+                        int state = rs.getInt(2);
 
-                                continue;
-                            }
-                        } else {
-                            log.info("Ignoring compensation of unsuccessful step (correlationId=\"{}\", processId={}, stepId={})",
-                                    correlationId, processId, stepId);
+                        // Assemble some statistics
+                        if (state >= 0 && state < numStates) { // as it should be
+                            stateCount[state] = count;
                         }
+                    }
+                }
+            }
+        }
+        catch (SQLException sqle) {
+            String info = "Failed to count process headers: ";
+            info += Database.squeeze(sqle);
+            log.warn(info, sqle);
+        }
+        catch (MuProcessException mpe) {
+            String info = "Cannot dump statistics: ";
+            info += mpe.getMessage();
+            log.warn(info);
+        }
 
-                        //
-                        String className = rs.getString(++idx);
-                        String methodName = rs.getString(++idx);
+        // Do some reporting
+        boolean haveSomethingToDisplay = false;
+        int severity = 0;
 
-                        // activity parameters
-                        //   We need to consume the character stream right away, since the next call to
-                        //   rs.getCharacterStream() may effectively sabotage it's state. This is the
-                        //   case with the Derby JDBC implementation (but not with the PostgreSQL version).
-                        MuActivityParameters activityParameters;
-                        Reader activityParamReader = rs.getCharacterStream(++idx);
-                        if (!rs.wasNull()) {
-                            if (assumeNativeProcessDataFlow) {
-                                activityParameters = MuNativeActivityParameters.fromReader(activityParamReader);
-                            }
-                            else {
-                                activityParameters = MuForeignActivityParameters.fromReader(activityParamReader);
-                            }
-                        }
-                        else {
-                            activityParameters = new MuNoActivityParameters();
+        StringBuilder statistics = new StringBuilder();
+        long total = 0L;
+        for (int i = 0; i < numStates; i++) {
+            long count = stateCount[i];
+            total += count;
+
+            MuProcessState state = MuProcessState.fromInt(i);
+            if (count > 0) {
+                statistics.append("{").append(count).append(" ").append(state).append("} ");
+                haveSomethingToDisplay = true;
+
+                severity = Math.max(severity, i);
+            }
+        }
+        statistics.append("{").append(total).append(" in total} ");
+        statistics.append("{").append(workQueue.size()).append(" in queue} ");
+        MuGroupCommitWriter writer = groupCommitWriter;
+        if (null != writer) {
+            statistics.append("{").append(writer.getRecordCount()).append(" writes in ");
+            statistics.append(writer.getCommitCount()).append(" group commits} ");
+            statistics.append("{").append(writer.getPendingRecordCount()).append(" unflushed writes} ");
+            if (writer.getLostRecordCount() > 0) {
+                statistics.append("{").append(writer.getLostRecordCount()).append(" lost writes} ");
+                severity = Math.max(severity, MuProcessState.COMPENSATION_FAILED.ordinal());
+                haveSomethingToDisplay = true;
+            }
+        }
+        if (null != recoveryLimiter) {
+            statistics.append(recoveryLimiter).append(" ");
+        }
+        statistics.append("{").append(submittedRecoveries).append(" recovery tasks submitted} ");
+        statistics.append("{").append(duplicateRecoveries).append(" not submitted, already being recovered} ");
+        MuCompensationBreakers breakers = compensationBreakers;
+        if (null != breakers) {
+            statistics.append("{").append(breakers.getBrokenCount()).append(" broken compensation classes} ");
+            statistics.append("{").append(breakers.getSkippedCount()).append(" skipped compensations} ");
+        }
+
+        if (haveSomethingToDisplay) {
+            if (severity < MuProcessState.COMPENSATION_FAILED.ordinal()) {
+                statisticsLog.debug(statistics.toString());
+            }
+            else if (severity < MuProcessState.ABANDONED.ordinal()) {
+                statisticsLog.info(statistics.toString());
+            }
+            else {
+                statisticsLog.warn(statistics.toString());
+            }
+        }
+    }
+
+    /**
+     * Runs cleanup for processes that may need recovery. Where supported by the SQL statements, only processes
+     * that are ripe for recovery (as determined by the database, using server time) are fetched. Otherwise all
+     * live processes are fetched. In any case, the runnable has to make the final decision.
+     * <p>
+     * Processes ripe for recovery are fetched in pages (ordered by process id), each page using a connection
+     * of its own, and the next page is not fetched until <i>mayFetchNextPage</i> agrees. Thus the caller may
+     * hold back recovery until it has caught up with the processes handed to it so far.
+     * @param assumedStuckSeconds age (in seconds) of NEW and PROGRESSING processes assumed to be stuck.
+     * @param retentionSeconds age (in seconds) of SUCCESSFUL and COMPENSATED processes ripe for removal.
+     * @param recompensationSeconds age (in seconds) of COMPENSATION_FAILED processes ripe for re-compensation,
+     *                              unless some step is waiting for its next compensation attempt.
+     * @param mayFetchNextPage consulted (and may block) before fetching each page, returning false to stop recovery.
+     * @param runnable handles individual processes.
+     * @return true if all processes ripe for recovery were handed to the runnable, false if recovery was stopped
+     * (or failed) before that.
+     * @throws MuProcessException if statements are missing
+     */
+    /* package private */
+    boolean recover(
+            final int assumedStuckSeconds, final int retentionSeconds, final int recompensationSeconds,
+            final BooleanSupplier mayFetchNextPage, final CleanupRunnable runnable
+    ) throws MuProcessException {
+        Objects.requireNonNull(runnable, "runnable");
+
+        return recover(assumedStuckSeconds, retentionSeconds, recompensationSeconds, mayFetchNextPage,
+                (correlationId, processId, state, acceptCompensationFailure, created, modified, now, steps, leasedAt)
+                        -> runnable.run(correlationId, processId, state, acceptCompensationFailure, created, modified, now)
+        );
+    }
+
+    /**
+     * As above, but also handing the steps of processes to the runnable -- if fetched in batches (for each page),
+     * otherwise null. Steps are fetched for processes that may be compensated, i.e. PROGRESSING and
+     * COMPENSATION_FAILED processes.
+     */
+    /* package private */
+    boolean recover(
+            final int assumedStuckSeconds, final int retentionSeconds, final int recompensationSeconds,
+            final BooleanSupplier mayFetchNextPage, final RecoveryRunnable runnable
+    ) throws MuProcessException {
+        return recover(assumedStuckSeconds, retentionSeconds, recompensationSeconds, mayFetchNextPage,
+                (processId, state) -> true, runnable);
+    }
+
+    /**
+     * As above, but only fetching steps of (leased) processes that the caller will actually recover, according
+     * to <i>filter</i> -- e.g. not of processes already being recovered. The runnable is handed null steps
+     * for other processes.
+     */
+    /* package private */
+    boolean recover(
+            final int assumedStuckSeconds, final int retentionSeconds, final int recompensationSeconds,
+            final BooleanSupplier mayFetchNextPage, final StepsFilter filter, final RecoveryRunnable runnable
+    ) throws MuProcessException {
+        Objects.requireNonNull(mayFetchNextPage, "mayFetchNextPage");
+        Objects.requireNonNull(filter, "filter");
+        Objects.requireNonNull(runnable, "runnable");
+
+        if (!hasStatement("FETCH_STUCK_PROCESSES")
+                || !hasStatement("FETCH_RETIRED_PROCESSES")
+                || !hasStatement("FETCH_FAILED_PROCESSES")) {
+            if (!hasWarnedAboutRecoveryStatements) {
+                log.info("No per state recovery statements, falling back on fetching all live processes");
+                hasWarnedAboutRecoveryStatements = true;
+            }
+            return recover(
+                    (correlationId, processId, state, acceptCompensationFailure, created, modified, now)
+                            -> runnable.run(correlationId, processId, state, acceptCompensationFailure, created, modified, now, /* not fetched */ null, /* not leased */ 0L)
+            );
+        }
+
+        // Possibly only recovering processes leased by us, in which case other nodes may recover concurrently
+        final boolean claiming = claimsRecoveryLeases();
+
+        try {
+            return recover(claiming ? "CLAIM_STUCK_PROCESSES" : "FETCH_STUCK_PROCESSES", claiming,
+                        mayFetchNextPage, filter, runnable, assumedStuckSeconds)
+                // Unless retired processes are removed in bulk (or with their partitions)
+                && (purgesRetiredProcesses() || managesPartitions()
+                    || recover(claiming ? "CLAIM_RETIRED_PROCESSES" : "FETCH_RETIRED_PROCESSES", claiming,
+                        mayFetchNextPage, filter, runnable, retentionSeconds))
+                // Ripe for removal (abandoning is decided later) or for re-compensation
+                && recover(claiming ? "CLAIM_FAILED_PROCESSES" : "FETCH_FAILED_PROCESSES", claiming,
+                        mayFetchNextPage, filter, runnable, retentionSeconds, recompensationSeconds);
+        }
+        catch (SQLException sqle) {
+            String info = "Failed to query process headers: ";
+            info += Database.squeeze(sqle);
+            log.warn(info, sqle);
+            return false;
+        }
+    }
+
+    private boolean recover(
+            final String key, final boolean claiming, final BooleanSupplier mayFetchNextPage,
+            final StepsFilter filter, final RecoveryRunnable runnable, final int... agesInSeconds
+    ) throws SQLException, MuProcessException {
+        final boolean fetchingSteps = fetchesRecoveryStepsInBatches();
+        long lastProcessId = 0L; // process ids are positive
+
+        while (mayFetchNextPage.getAsBoolean()) {
+            // Read page and let go of connection before handing processes to the runnable
+            List<RecoveryCandidate> page = new ArrayList<>();
+            List<RecoveryCandidate> leased = page;
+            try (Connection conn = dataSource.getConnection()) {
+                if (claiming) {
+                    // Rows are locked (where supported) while read, until leased
+                    conn.setAutoCommit(false);
+                }
+                try {
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            getStatement(key),
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
+                    ) {
+                        stmt.setMaxRows(recoveryPageSize);
+                        stmt.setFetchSize(recoveryFetchSize);
+                        int idx = 0;
+                        for (int ageInSeconds : agesInSeconds) {
+                            stmt.setInt(++idx, Math.max(0, ageInSeconds));
                         }
+                        stmt.setInt(++idx, firstRecoveryBucket);
+                        stmt.setInt(++idx, lastRecoveryBucket);
+                        stmt.setLong(++idx, lastProcessId);
 
-                        // orchestration parameters
-                        //   Consume the stream
-                        MuOrchestrationParameters orchestrationParameters = null;
-                        Reader orchestrationParamReader = rs.getCharacterStream(++idx);
-                        if (!rs.wasNull()) {
-                            orchestrationParameters =
-                                    MuOrchestrationParameters.fromReader(orchestrationParamReader);
+                        try (ResultSet rs = Database.executeQuery(stmt)) {
+                            while (rs.next()) {
+                                page.add(new RecoveryCandidate(rs));
+                            }
                         }
+                    }
+
+                    if (claiming) {
+                        leased = lease(conn, page);
+                        conn.commit();
+                    }
+                }
+                catch (SQLException sqle) {
+                    if (claiming) {
+                        conn.rollback();
+                    }
+                    throw sqle;
+                }
+                finally {
+                    if (claiming) {
+                        conn.setAutoCommit(true);
+                    }
+                }
 
-                        //
-                        int retries = rs.getInt(++idx);
+                if (fetchingSteps) {
+                    // Only of processes actually leased to us, and that will be recovered
+                    fetchSteps(conn, leased, filter);
+                }
+            }
 
-                        // pre-state
-                        //   Consume the stream
-                        MuActivityState preState = null;
-                        Reader stateReader = rs.getCharacterStream(++idx);
-                        if (!rs.wasNull()) {
-                            if (assumeNativeProcessDataFlow) {
-                                preState = MuNativeActivityState.fromReader(stateReader);
-                            }
-                            else {
-                                preState = MuForeignActivityState.fromReader(stateReader);
-                            }
+            for (RecoveryCandidate candidate : leased) {
+                candidate.run(runnable);
+            }
+
+            if (page.size() < recoveryPageSize) {
+                return true; // last page
+            }
+            lastProcessId = page.get(page.size() - 1).processId;
+        }
+        return false;
+    }
+
+    /*
+     * Leases candidates to us, returning those actually leased (i.e. not leased by some other node in the meantime).
+     */
+    private List<RecoveryCandidate> lease(
+            final Connection conn, final List<RecoveryCandidate> candidates
+    ) throws SQLException, MuProcessException {
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+
+        // Lease runs out (at the latest) recoveryLeaseSeconds after this, as seen by the database
+        final long leasedAt = System.currentTimeMillis();
+
+        int[] counts;
+        try (PreparedStatement stmt = conn.prepareStatement(getStatement("LEASE_PROCESS"))) {
+            for (RecoveryCandidate candidate : candidates) {
+                int idx = 0;
+                stmt.setString(++idx, leaseOwner);
+                stmt.setInt(++idx, recoveryLeaseSeconds);
+                stmt.setLong(++idx, candidate.processId);
+                stmt.addBatch();
+            }
+            counts = stmt.executeBatch();
+        }
+
+        List<RecoveryCandidate> leased = new ArrayList<>(candidates.size());
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                RecoveryCandidate candidate = candidates.get(i);
+                candidate.leasedAt = leasedAt;
+                leased.add(candidate);
+            }
+        }
+        if (leased.size() < candidates.size()) {
+            log.debug("Leased {} of {} processes to recover, the rest being leased by other nodes", leased.size(), candidates.size());
+        }
+        return leased;
+    }
+
+    /**
+     * @return true if leases on processes may be renewed, using {@link #renewRecoveryLease(long)}, while
+     * recovering them.
+     */
+    /* package private */
+    boolean renewsRecoveryLeases() {
+        return claimsRecoveryLeases() && hasStatement("RENEW_PROCESS_LEASE");
+    }
+
+    /**
+     * Renews lease on process, so that it runs out {@link MuProcessManagementPolicy#secondsOfRecoveryLease()}
+     * from now -- but only if the lease is still held by us, i.e. has not run out and been taken by some
+     * other node.
+     * @param processId id of process
+     * @return true if lease was renewed, false if no longer held by us (or if renewal failed).
+     * @throws MuProcessException if statements are missing
+     */
+    /* package private */
+    boolean renewRecoveryLease(final long processId) throws MuProcessException {
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(getStatement("RENEW_PROCESS_LEASE"))) {
+                int idx = 0;
+                stmt.setInt(++idx, recoveryLeaseSeconds);
+                stmt.setLong(++idx, processId);
+                stmt.setString(++idx, leaseOwner);
+                return Database.executeUpdate(stmt) > 0;
+            }
+        }
+        catch (SQLException sqle) {
+            String info = "Failed to renew lease on process " + processId + ": ";
+            info += Database.squeeze(sqle);
+            log.info(info, sqle);
+            return false;
+        }
+    }
+
+    /**
+     * Lets go of lease on process, having recovered it (successfully or not), so that it may be recovered
+     * again -- by any node -- when next due, rather than when the lease runs out. Leases held by other nodes
+     * are not touched.
+     * @param processId id of process
+     * @throws MuProcessException if statements are missing
+     */
+    /* package private */
+    void releaseRecoveryLease(final long processId) throws MuProcessException {
+        if (!claimsRecoveryLeases() || !hasStatement("RELEASE_PROCESS_LEASE")) {
+            return; // lease runs out in due time
+        }
+
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(getStatement("RELEASE_PROCESS_LEASE"))) {
+                int idx = 0;
+                stmt.setLong(++idx, processId);
+                stmt.setString(++idx, leaseOwner);
+                Database.executeUpdate(stmt);
+            }
+        }
+        catch (SQLException sqle) {
+            String info = "Failed to release lease on process " + processId + ": ";
+            info += Database.squeeze(sqle);
+            log.info(info, sqle);
+        }
+    }
+
+    /*
+     * Fetches steps of candidates that may be compensated (and that the filter wants steps of), in batches
+     * of (at most) recoveryStepBatchSize processes each.
+     */
+    private void fetchSteps(
+            final Connection conn, final List<RecoveryCandidate> candidates, final StepsFilter filter
+    ) throws SQLException, MuProcessException {
+        final int progressing = MuProcessState.PROGRESSING.ordinal();
+        final int compensationFailed = MuProcessState.COMPENSATION_FAILED.ordinal();
+
+        Map<Long, ProcessSteps> batch = new HashMap<>();
+        for (RecoveryCandidate candidate : candidates) {
+            if ((candidate.state == progressing || candidate.state == compensationFailed)
+                    && filter.wantsSteps(candidate.processId, candidate.state)) {
+                candidate.steps = new ProcessSteps();
+                batch.put(candidate.processId, candidate.steps);
+
+                if (batch.size() == recoveryStepBatchSize) {
+                    fetchSteps(conn, batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            fetchSteps(conn, batch);
+        }
+    }
+
+    /*
+     * Fetches steps of a batch of processes in one query. The IN-list always has room for recoveryStepBatchSize
+     * processes (repeating the last process id as needed), so that the statement is the same for every batch.
+     */
+    private void fetchSteps(
+            final Connection conn, final Map<Long, ProcessSteps> batch
+    ) throws SQLException, MuProcessException {
+        String sql = getStatement("FETCH_PROCESS_STEPS_BY_PROCIDS_DETAILED");
+        int at = sql.indexOf("(?)");
+        if (at < 0) {
+            throw new MuProcessException("Statement FETCH_PROCESS_STEPS_BY_PROCIDS_DETAILED has no IN-list, i.e. \"(?)\"");
+        }
+        StringBuilder inList = new StringBuilder("(?");
+        for (int i = 1; i < recoveryStepBatchSize; i++) {
+            inList.append(",?");
+        }
+        inList.append(")");
+        sql = sql.substring(0, at) + inList + sql.substring(at + "(?)".length());
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(recoveryFetchSize);
+            int idx = 0;
+            long lastProcessId = 0L;
+            for (long processId : batch.keySet()) {
+                stmt.setLong(++idx, processId);
+                lastProcessId = processId;
+            }
+            while (idx < recoveryStepBatchSize) {
+                stmt.setLong(++idx, lastProcessId);
+            }
+
+            try (ResultSet rs = Database.executeQuery(stmt)) {
+                while (rs.next()) {
+                    // process_id, correlation_id, accept_failure, step_id, ...
+                    ProcessSteps steps = batch.get(rs.getLong(1));
+                    if (null != steps) {
+                        steps.steps.add(new ProcessStep(rs, /* first column after process_id */ 2));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if process steps of processes to recover are fetched in batches
+     */
+    /* package private */
+    boolean fetchesRecoveryStepsInBatches() {
+        return batchRecoveryStepFetch
+                && hasStatement("FETCH_PROCESS_STEPS_BY_PROCIDS_DETAILED");
+    }
+
+    /* package private */
+    boolean recover(
+            final CleanupRunnable runnable
+    ) throws MuProcessException {
+        Objects.requireNonNull(runnable, "runnable");
+
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    getStatement("FETCH_PROCESSES"),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
+            ) {
+                stmt.setFetchSize(recoveryFetchSize);
+
+                try (ResultSet rs = Database.executeQuery(stmt)) {
+                    /*
+                     * If multiple MuProcessManagers are running background jobs (recover) concurrently,
+                     * they will be competing to recover processes!
+                     */
+                    while (rs.next()) {
+                        RecoveryCandidate candidate = new RecoveryCandidate(rs);
+                        if (ownsRecoveryOf(candidate.processId)) {
+                            candidate.run(runnable);
                         }
+                    }
+                }
+            }
+            return true;
+        }
+        catch (SQLException sqle) {
+            String info = "Failed to query process headers: ";
+            info += Database.squeeze(sqle);
+            log.warn(info, sqle);
+            return false;
+        }
+    }
 
-                        //
-                        MuBackwardBehaviour activity = loader.load(className);
-                        if (activity != null) {
-                            if (CHECKED_AT_DEV_TIME) {
-                                 //---------------------------------------------------------------------------
-                                 // Used during development to trap inadvertent changes to signature of
-                                 // MuBackwardBehaviour#backward, since we have a non-compile time detectable
-                                 // dependency below. This if-statement is never meant to be run but is
-                                 // harmless since constantly false conditional blocks are removed at
-                                 // compile time (as per the Java specification)
-                                 //---------------------------------------------------------------------------
-                                MuBackwardBehaviour trapChangesToInterface = context -> false;
-                            }
-                            Class<?>[] parameterTypes = { MuBackwardActivityContext.class };
-                            Method method = loader.createMethod(activity, methodName, parameterTypes);
+    /*
+     * A process, as read by the recovery statements.
+     */
+    private static final class RecoveryCandidate {
+        private final String correlationId;
+        private final long processId;
+        private final int state;
+        private final boolean acceptCompensationFailure;
+        private final Timestamp created;
+        private final Timestamp modified;
+        private final Timestamp now;
+        private ProcessSteps steps = null; // unless fetched
+        private long leasedAt = 0L; // local time, unless leased
+
+        private RecoveryCandidate(final ResultSet rs) throws SQLException {
+            // correlation_id, process_id, state, accept_failure, created, modified, now
+            int idx = 0;
+            correlationId = rs.getString(++idx);
+            processId = rs.getLong(++idx);
+            state = rs.getInt(++idx);
+            acceptCompensationFailure = rs.getBoolean(++idx);
+            created = rs.getTimestamp(++idx);
+            modified = rs.getTimestamp(++idx);
+            now = rs.getTimestamp(++idx);
+        }
+
+        private void run(final CleanupRunnable runnable) {
+            runnable.run(correlationId, processId, state, acceptCompensationFailure, created, modified, now);
+        }
+
+        private void run(final RecoveryRunnable runnable) {
+            runnable.run(correlationId, processId, state, acceptCompensationFailure, created, modified, now, steps, leasedAt);
+        }
+    }
+
+    /**
+     * @return true if retired processes are removed in bulk, using {@link #purgeRetiredProcesses(int, BooleanSupplier)},
+     * rather than being handed to recovery.
+     */
+    /* package private */
+    boolean purgesRetiredProcesses() {
+        return bulkPurgeRetiredProcesses
+                && hasStatement("FETCH_RETIRED_PROCESSES")
+                && hasStatement("PURGE_RETIRED_PROCESS_STEPS")
+                && hasStatement("PURGE_RETIRED_PROCESSES");
+    }
+
+    /**
+     * Removes retired processes (and their steps) in bulk, chunk by chunk in order of process id, each chunk
+     * in a transaction of its own.
+     * @param retentionSeconds age (in seconds) of SUCCESSFUL and COMPENSATED processes ripe for removal.
+     * @param mayPurgeNextChunk consulted (and may block) before each chunk, returning false to stop.
+     * @return number of removed processes.
+     * @throws MuProcessException if statements are missing
+     */
+    /* package private */
+    long purgeRetiredProcesses(
+            final int retentionSeconds, final BooleanSupplier mayPurgeNextChunk
+    ) throws MuProcessException {
+        return purgeRetiredProcesses(retentionSeconds, 1L /* process ids are positive */, Long.MAX_VALUE, mayPurgeNextChunk);
+    }
+
+    /**
+     * Removes retired processes (and their steps) with process ids from <i>fromProcessId</i> (inclusive) to
+     * <i>toProcessId</i> (exclusive) in bulk, chunk by chunk in order of process id, each chunk in a transaction
+     * of its own. E.g. the retired processes of a partition that can not (yet) be dropped.
+     * @param retentionSeconds age (in seconds) of SUCCESSFUL and COMPENSATED processes ripe for removal.
+     * @param fromProcessId lowest process id to consider.
+     * @param toProcessId process id above the highest process id to consider.
+     * @param mayPurgeNextChunk consulted (and may block) before each chunk, returning false to stop.
+     * @return number of removed processes.
+     * @throws MuProcessException if statements are missing
+     */
+    /* package private */
+    long purgeRetiredProcesses(
+            final int retentionSeconds, final long fromProcessId, final long toProcessId,
+            final BooleanSupplier mayPurgeNextChunk
+    ) throws MuProcessException {
+        Objects.requireNonNull(mayPurgeNextChunk, "mayPurgeNextChunk");
 
-                            MuBackwardActivityContext context =
-                                    new MuBackwardActivityContext(correlationId, acceptCompensationFailure, activityParameters, orchestrationParameters, preState);
+        long purged = 0L;
+        long lastProcessId = fromProcessId - 1;
 
-                            //
-                            if (runnable.run(activity, method, context, stepId, retries)) {
-                                popCompensation(conn, processId, stepId);
-                            }
-                            else {
-                                markRetry(processId, stepId);
+        try {
+            while (mayPurgeNextChunk.getAsBoolean()) {
+                int count = 0;
+                long upperProcessId = lastProcessId;
+
+                // A connection of its own for each chunk, not held while pausing between chunks
+                try (Connection conn = dataSource.getConnection()) {
+                    // Determine range of process ids making up next chunk
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            getStatement("FETCH_RETIRED_PROCESSES"),
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
+                    ) {
+                        stmt.setMaxRows(purgeChunkSize);
+                        stmt.setFetchSize(recoveryFetchSize);
+                        int idx = 0;
+                        stmt.setInt(++idx, Math.max(0, retentionSeconds));
+                        stmt.setInt(++idx, 0); // all recovery buckets
+                        stmt.setInt(++idx, RECOVERY_BUCKETS);
+                        stmt.setLong(++idx, lastProcessId);
+
+                        try (ResultSet rs = Database.executeQuery(stmt)) {
+                            while (rs.next()) {
+                                // correlation_id, process_id, ...
+                                long processId = rs.getLong(2);
+                                if (processId >= toProcessId) {
+                                    break; // beyond range, so this is the last chunk
+                                }
+                                upperProcessId = processId;
+                                count++;
                             }
                         }
-                        else {
-                            String info = "Failed to compensate process (correlationId=\"" + correlationId + "\", processId=" + processId + ",  stepId=" + stepId + "): ";
-                            info += "Not a MuBackwardActivity! " + className;
-                            throw new MuProcessBackwardBehaviourException(info);
+                    }
+                    if (0 == count) {
+                        break;
+                    }
+
+                    conn.setAutoCommit(false);
+                    try {
+                        for (String key : Arrays.asList("PURGE_RETIRED_PROCESS_STEPS", "PURGE_RETIRED_PROCESSES")) {
+                            try (PreparedStatement stmt = conn.prepareStatement(getStatement(key))) {
+                                int idx = 0;
+                                stmt.setInt(++idx, Math.max(0, retentionSeconds));
+                                stmt.setLong(++idx, lastProcessId);
+                                stmt.setLong(++idx, upperProcessId);
+                                int rows = Database.executeUpdate(stmt);
+                                if ("PURGE_RETIRED_PROCESSES".equals(key)) {
+                                    purged += rows;
+                                }
+                            }
                         }
+                        conn.commit();
+                    }
+                    catch (SQLException sqle) {
+                        conn.rollback();
+                        throw sqle;
+                    }
+                    finally {
+                        conn.setAutoCommit(true);
                     }
                 }
+
+                lastProcessId = upperProcessId;
+                if (count < purgeChunkSize) {
+                    break; // last chunk
+                }
             }
         }
         catch (SQLException sqle) {
-            String info = "Failed to query compensation: ";
+            String info = "Failed to purge retired processes: ";
             info += Database.squeeze(sqle);
             log.warn(info, sqle);
-            throw new MuProcessBackwardBehaviourException(info, sqle);
-        }
-        catch (ClassNotFoundException cnfe) {
-            String info = "Failed to instantiate compensation: ";
-            info += cnfe.getMessage();
-            log.info(info);
-            throw new MuProcessBackwardBehaviourException(info, cnfe);
-        }
-        catch (NoSuchMethodException nsme) {
-            String info = "Failed to establish call endpoint for compensation: ";
-            info += nsme.getMessage();
-            log.info(info);
-            throw new MuProcessBackwardBehaviourException(info, nsme);
         }
+        return purged;
     }
 
+    /**
+     * @return true if process falls in the recovery buckets of this node, i.e. if recovery is not sharded
+     * or if this node recovers the shard of the process.
+     */
     /* package private */
-    void cleanupAfterSuccess(
-            final int processId, final MuProcessResult result
-    ) throws MuProcessException {
-        Objects.requireNonNull(result, "result");
+    boolean ownsRecoveryOf(final long processId) {
+        int bucket = (int) Math.floorMod(processId * RECOVERY_BUCKET_MULTIPLIER, (long) RECOVERY_BUCKETS);
+        return bucket >= firstRecoveryBucket && bucket < lastRecoveryBucket;
+    }
+
+    /**
+     * @return true if this node recovers the first shard of processes (as is the case if recovery is not sharded),
+     * being responsible for maintenance that is not sharded.
+     */
+    /* package private */
+    boolean isFirstRecoveryShard() {
+        return 0 == firstRecoveryBucket;
+    }
+
+    /**
+     * @return true if processes are leased (to this node) before being handed to recovery, so that recovery
+     * may run concurrently on several nodes without competing for the same processes.
+     */
+    /* package private */
+    boolean claimsRecoveryLeases() {
+        return claimRecoveryLeases
+                && hasStatement("CLAIM_STUCK_PROCESSES")
+                && hasStatement("CLAIM_RETIRED_PROCESSES")
+                && hasStatement("CLAIM_FAILED_PROCESSES")
+                && hasStatement("LEASE_PROCESS");
+    }
+
+    /**
+     * @return true if nodes elect a leader among themselves, using {@link #acquireLeadership()}, the leader
+     * being the only node running background tasks.
+     */
+    /* package private */
+    boolean electsLeader() {
+        return electRecoveryLeader
+                && hasStatement("ACQUIRE_LEADERSHIP")
+                && hasStatement("RELEASE_LEADERSHIP")
+                && hasStatement("INITIALIZE_LEADERSHIP");
+    }
+
+    /* package private */
+    int getLeaderLeaseSeconds() {
+        return leaderLeaseSeconds;
+    }
 
-        // Remove process steps
+    /**
+     * Makes this node leader, unless some other node is leader, or renews the lease if this node already is leader.
+     * If the leader lease does not yet exist, it is initialized.
+     * @return true if this node is leader for (at least) the coming {@link #getLeaderLeaseSeconds() lease}.
+     * @throws MuProcessException if statements are missing
+     */
+    /* package private */
+    boolean acquireLeadership() throws MuProcessException {
         try (Connection conn = dataSource.getConnection()) {
-            try (PreparedStatement stmt = conn.prepareStatement(
-                    getStatement("FETCH_PROCESS_STEPS_BY_PROCID_COARSE"),
-                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
-            ) {
-                stmt.setInt(1, processId);
-                try (ResultSet rs = Database.executeQuery(stmt)) {
-                    while (rs.next()) {
-                        // process_id, step_id, retries
-                        int stepId = rs.getInt(2);
-                        popCompensation(conn, processId, stepId);
+            boolean initialized = false;
+            while (true) {
+                try (PreparedStatement stmt = conn.prepareStatement(getStatement("ACQUIRE_LEADERSHIP"))) {
+                    int idx = 0;
+                    stmt.setString(++idx, leaseOwner);
+                    stmt.setInt(++idx, leaderLeaseSeconds);
+                    stmt.setString(++idx, leaseOwner);
+                    if (Database.executeUpdate(stmt) > 0) {
+                        return true;
                     }
                 }
+
+                if (initialized) {
+                    return false; // some other node is leader
+                }
+                initialized = true;
+
+                try (PreparedStatement stmt = conn.prepareStatement(getStatement("INITIALIZE_LEADERSHIP"))) {
+                    Database.executeUpdate(stmt);
+                    log.info("Initialized leader lease");
+                }
+                catch (SQLException sqle) {
+                    // Most probably already initialized (by someone else)
+                    log.trace("Did not initialize leader lease: {}", Database.squeeze(sqle));
+                }
             }
         }
         catch (SQLException sqle) {
-            String info = "Failed to query compensation: ";
+            String info = "Failed to acquire leadership: ";
             info += Database.squeeze(sqle);
             log.warn(info, sqle);
-            throw new MuProcessBackwardBehaviourException(info, sqle);
-        }
-        finally {
-            // Set process state
-            setProcessStateAndResult(processId, MuProcessState.SUCCESSFUL, result);
+            return false;
         }
     }
 
+    /**
+     * Lets go of leadership, if this node is leader, so that some other node may take over right away.
+     * @throws MuProcessException if statements are missing
+     */
     /* package private */
-    void cleanupAfterSuccessfulCompensation(
-            final int processId
-    ) throws MuProcessException {
-        setProcessState(processId, MuProcessState.COMPENSATED);
+    void releaseLeadership() throws MuProcessException {
+        try (Connection conn = dataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(getStatement("RELEASE_LEADERSHIP"))) {
+                stmt.setString(1, leaseOwner);
+                Database.executeUpdate(stmt);
+            }
+        }
+        catch (SQLException sqle) {
+            String info = "Failed to release leadership: ";
+            info += Database.squeeze(sqle);
+            log.info(info, sqle);
+        }
     }
 
+    /**
+     * @return true if retired processes are removed by dropping whole partitions, using
+     * {@link #maintainPartitions(int, List, List)}, rather than being handed to recovery.
+     */
     /* package private */
-    void cleanupAfterFailedCompensation(
-            final int processId
-    ) throws MuProcessException {
-        setProcessState(processId, MuProcessState.COMPENSATION_FAILED);
+    boolean managesPartitions() {
+        return partitionedProcessStorage
+                && hasStatement("ADD_PROCESS_PARTITIONS")
+                && hasStatement("DROP_RETIRED_PROCESS_PARTITIONS");
     }
 
+    /**
+     * Adds partitions ahead of need and drops partitions where every process has been retired. Retired
+     * processes in partitions that also hold live (or abandoned) processes are not removed here, but left
+     * to {@link #purgeRetiredProcesses(int, long, long, BooleanSupplier)} so that partition maintenance
+     * does not hold on to its locks while removing them.
+     * @param retentionSeconds age (in seconds) of SUCCESSFUL and COMPENSATED processes ripe for removal.
+     * @param dropped receives process id ranges, lower (inclusive) and upper (exclusive), of dropped partitions.
+     * @param pinned receives process id ranges, lower (inclusive) and upper (exclusive), of partitions where
+     *               retired processes remain to be removed.
+     * @return number of dropped partitions.
+     * @throws MuProcessException if statements are missing
+     */
     /* package private */
-    void cleanupAfterFailure(
-            final int processId
+    int maintainPartitions(
+            final int retentionSeconds, final List<long[]> dropped, final List<long[]> pinned
     ) throws MuProcessException {
-        setProcessState(processId, MuProcessState.ABANDONED);
-    }
-
-    /* package private */
-    void dumpStatistics(WorkQueue workQueue) {
-        Objects.requireNonNull(workQueue, "workQueue");
-
-        // Prepare collecting statistics for each state
-        final int numStates = MuProcessState.values().length;
-        long[] stateCount = new long[numStates];
+        Objects.requireNonNull(dropped, "dropped");
+        Objects.requireNonNull(pinned, "pinned");
 
-        //
         try (Connection conn = dataSource.getConnection()) {
-            try (PreparedStatement stmt = conn.prepareStatement(
-                    getStatement("COUNT_PROCESSES"),
-                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
-            ) {
+            // Make sure there is room for new processes before anything else
+            try (PreparedStatement stmt = conn.prepareStatement(getStatement("ADD_PROCESS_PARTITIONS"))) {
+                stmt.setLong(1, processesPerPartition);
                 try (ResultSet rs = Database.executeQuery(stmt)) {
-                    while (rs.next()) {
-                        // count, state
-                        int count = rs.getInt(1);
-                        int state = rs.getInt(2);
+                    if (rs.next() && rs.getInt(1) > 0) {
+                        log.debug("Added {} partition(s)", rs.getInt(1));
+                    }
+                }
+            }
 
-                        // Assemble some statistics
-                        if (state >= 0 && state < numStates) { // as it should be
-                            stateCount[state] = count;
+            try (PreparedStatement stmt = conn.prepareStatement(getStatement("DROP_RETIRED_PROCESS_PARTITIONS"))) {
+                stmt.setInt(1, Math.max(0, retentionSeconds));
+                try (ResultSet rs = Database.executeQuery(stmt)) {
+                    while (rs.next()) {
+                        // partition_lower, partition_upper, is_dropped
+                        long[] range = { rs.getLong(1), rs.getLong(2) };
+                        if (rs.getBoolean(3)) {
+                            dropped.add(range);
+                        }
+                        else {
+                            pinned.add(range);
                         }
                     }
                 }
             }
         }
         catch (SQLException sqle) {
-            String info = "Failed to count process headers: ";
+            String info = "Failed to maintain partitions: ";
             info += Database.squeeze(sqle);
             log.warn(info, sqle);
         }
-        catch (MuProcessException mpe) {
-            String info = "Cannot dump statistics: ";
-            info += mpe.getMessage();
-            log.warn(info);
-        }
-
-        // Do some reporting
-        boolean haveSomethingToDisplay = false;
-        int severity = 0;
-
-        StringBuilder statistics = new StringBuilder();
-        long total = 0L;
-        for (int i = 0; i < numStates; i++) {
-            long count = stateCount[i];
-            total += count;
-
-            MuProcessState state = MuProcessState.fromInt(i);
-            if (count > 0) {
-                statistics.append("{").append(count).append(" ").append(state).append("} ");
-                haveSomethingToDisplay = true;
-
-                severity = Math.max(severity, i);
-            }
-        }
-        statistics.append("{").append(total).append(" in total} ");
-        statistics.append("{").append(workQueue.size()).append(" in queue} ");
-
-        if (haveSomethingToDisplay) {
-            if (severity < MuProcessState.COMPENSATION_FAILED.ordinal()) {
-                statisticsLog.debug(statistics.toString());
-            }
-            else if (severity < MuProcessState.ABANDONED.ordinal()) {
-                statisticsLog.info(statistics.toString());
-            }
-            else {
-                statisticsLog.warn(statistics.toString());
-            }
-        }
+        return dropped.size();
     }
 
+    /**
+     * Removes correlation ids of processes with process ids from <i>fromProcessId</i> (inclusive) to
+     * <i>toProcessId</i> (exclusive), chunk by chunk, once their partition has been dropped. Correlation ids
+     * are kept unique across partitions in a table of their own (where available), which is not partitioned.
+     * @param fromProcessId lowest process id of dropped partition.
+     * @param toProcessId process id above the highest process id of dropped partition.
+     * @param mayPurgeNextChunk consulted (and may block) before each chunk, returning false to stop.
+     * @return number of removed correlation ids.
+     * @throws MuProcessException if statement is missing
+     */
     /* package private */
-    void recover(
-            final CleanupRunnable runnable
+    long purgeProcessCorrelations(
+            final long fromProcessId, final long toProcessId, final BooleanSupplier mayPurgeNextChunk
     ) throws MuProcessException {
-        Objects.requireNonNull(runnable, "runnable");
+        Objects.requireNonNull(mayPurgeNextChunk, "mayPurgeNextChunk");
 
-        try (Connection conn = dataSource.getConnection()) {
-            try (PreparedStatement stmt = conn.prepareStatement(
-                    getStatement("FETCH_PROCESSES"),
-                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)
-            ) {
-                try (ResultSet rs = Database.executeQuery(stmt)) {
-                    /*
-                     * If multiple MuProcessManagers are running background jobs (recover) concurrently,
-                     * they will be competing to recover processes!
-                     */
-                    while (rs.next()) {
-                        // correlation_id, process_id, state, accept_failure, created, modified, now
-                        int idx = 0;
-                        String correlationId = rs.getString(++idx);
-                        int processId = rs.getInt(++idx);
-                        int state = rs.getInt(++idx);
-                        boolean acceptCompensationFailure = rs.getBoolean(++idx);
-                        Timestamp created = rs.getTimestamp(++idx);
-                        Timestamp modified = rs.getTimestamp(++idx);
-                        Timestamp now = rs.getTimestamp(++idx);
+        if (!hasStatement("PURGE_PROCESS_CORRELATIONS")) {
+            return 0L;
+        }
 
-                        runnable.run(correlationId, processId, state, acceptCompensationFailure, created, modified, now);
+        long purged = 0L;
+        try {
+            for (long lower = fromProcessId; lower < toProcessId && mayPurgeNextChunk.getAsBoolean(); ) {
+                long upper = Math.min(toProcessId, lower + purgeChunkSize);
+
+                // A connection of its own for each chunk, not held while pausing between chunks
+                try (Connection conn = dataSource.getConnection()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(getStatement("PURGE_PROCESS_CORRELATIONS"))) {
+                        stmt.setLong(1, lower);
+                        stmt.setLong(2, upper);
+                        purged += Database.executeUpdate(stmt);
                     }
                 }
+                lower = upper;
             }
         }
         catch (SQLException sqle) {
-            String info = "Failed to query process headers: ";
+            String info = "Failed to purge correlation ids of dropped partition: ";
             info += Database.squeeze(sqle);
             log.warn(info, sqle);
         }
+        return purged;
     }
 
     /* package private */
-    void abandon(String correlationId, int processId) throws MuProcessException {
+    void abandon(String correlationId, long processId) throws MuProcessException {
         log.trace("Abandoning process: correlationId=\"{}\", processId={}", correlationId, processId);
         setProcessState(processId, MuProcessState.ABANDONED);
     }
@@ -945,7 +2729,7 @@ public class MuPersistentLog {
 
     /* package private */
     void remove(
-            String correlationId, int processId, Date modified
+            String correlationId, long processId, Date modified
     ) throws MuProcessException {
         Objects.requireNonNull(correlationId, "correlationId");
 
@@ -955,12 +2739,12 @@ public class MuPersistentLog {
             conn.setAutoCommit(false);
 
             try (PreparedStatement stmt = conn.prepareStatement(getStatement("REMOVE_PROCESS_STEPS"))) {
-                stmt.setInt(1, processId);
+                stmt.setLong(1, processId);
                 Database.executeUpdate(stmt); // A process may not have any steps...
             }
 
             try (PreparedStatement stmt = conn.prepareStatement(getStatement("REMOVE_PROCESS"))) {
-                stmt.setInt(1, processId);
+                stmt.setLong(1, processId);
 
                 /*
                  * Part of effort to study repeated removal of processes:
@@ -1005,6 +2789,15 @@ public class MuPersistentLog {
     //    Methods called from MuProcess and tightly integrated with the MuProcess lifecycle
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
+    /*
+     * Determines whether the process header ('modified') should be refreshed, when the process
+     * is already PROGRESSING.
+     */
+    private boolean isHeartbeatDue(final MuProcess process) {
+        return 0L == processHeartbeatMillis
+                || System.currentTimeMillis() - process.getLastHeartbeat() >= processHeartbeatMillis;
+    }
+
     /* package private */
     void touchProcess(
             final MuProcess process
@@ -1014,20 +2807,23 @@ public class MuPersistentLog {
         // Persist
         if (0 == process.incrementCurrentStep()) {
             // Log process header
+            if (foldProcessHeaderIntoFirstStep) {
+                pushProcess(process, MuProcessState.PROGRESSING);
+                return;
+            }
             pushProcess(process);
         }
+        else if (!isHeartbeatDue(process)) {
+            // Process is already PROGRESSING and was recently touched
+            return;
+        }
 
-        try (Connection conn = dataSource.getConnection()) {
+        try {
             // Potentially check whether process state is NEW or (already) PROGRESSING
-            try (PreparedStatement stmt = conn.prepareStatement(getStatement("UPDATE_PROCESS"))) {
-                int idx = 0;
-                stmt.setInt(++idx, MuProcessState.PROGRESSING.toInt());
-                stmt.setNull(++idx, Types.CLOB);
-                stmt.setInt(++idx, process.getProcessId());
-                if (0 == Database.executeUpdate(stmt)) {
-                    log.debug("No process  corresponding to processId={}, when touching process", process.getProcessId());
-                }
-            }
+            writeRecords(process, process.getConnection(), Collections.singletonList(
+                    progressingRecord(process.getProcessId(), "touching process")
+            ));
+            process.setLastHeartbeat(System.currentTimeMillis());
         }
         catch (SQLException sqle) {
             String info = "Failed to touch process header: ";
@@ -1067,7 +2863,7 @@ public class MuPersistentLog {
                 //---------------------------------------------------------------------------
                 MuBackwardBehaviour trapChangesToInterface = context -> false;
             }
-            clazz.getMethod(activity.getPersistableMethodName(), MuBackwardActivityContext.class);
+            dispatch.invoker(clazz, methodName); // cached
         }
         catch (NoSuchMethodException nsme) {
             // Not ever expected to happen in production! Can potentially happen in development though,
@@ -1080,11 +2876,17 @@ public class MuPersistentLog {
         }
 
         // Persist
-        if (0 == process.incrementCurrentStep()) {
+        final boolean isFirstStep = 0 == process.incrementCurrentStep();
+        final boolean foldProcessHeader = isFirstStep && foldProcessHeaderIntoFirstStep;
+        if (isFirstStep && !foldProcessHeader) {
             // Log process header
             pushProcess(process);
         }
 
+        // The header is (already) PROGRESSING if folded, otherwise it is NEW after the first step
+        // and only needs refreshing now and then after subsequent steps
+        final boolean updateProcessHeader = !foldProcessHeader && (isFirstStep || isHeartbeatDue(process));
+
         if (log.isTraceEnabled()) {
             String info = "Persisting process step " + process.getProcessId() + "#";
             info += process.getCurrentStep();
@@ -1093,57 +2895,56 @@ public class MuPersistentLog {
             log.trace(info);
         }
 
-        try (Connection conn = dataSource.getConnection()) {
-            conn.setAutoCommit(false);
-
-            try (PreparedStatement stmt = conn.prepareStatement(getStatement("STORE_PROCESS_STEP"))) {
-                int idx = 0;
-                stmt.setInt(++idx, process.getProcessId());
-                stmt.setInt(++idx, process.getCurrentStep());
-
-                // class::method of compensation
-                stmt.setString(++idx, className);
-                stmt.setString(++idx, methodName);
-
-                // activity parameters
-                stmt.setCharacterStream(++idx, activityParameters.toReader());
-
-                // orchestration parameters (if applicable)
-                if (null != orchestrationParameters && !orchestrationParameters.isEmpty()) {
-                    stmt.setCharacterStream(++idx, orchestrationParameters.toReader());
-                }
-                else {
-                    stmt.setNull(++idx, Types.CLOB);
-                }
-
-                // pre-state (if applicable)
-                if (null != preState && !preState.isEmpty()) {
-                    stmt.setCharacterStream(++idx, preState.toReader());
+        try {
+            if (foldProcessHeader && processIdBlockSize > 0) {
+                // Process id is known up front, so the process header may be written in the same batch
+                // (and possibly the same group commit) as the first step
+                List<MuGroupCommitWriter.Record> records = new ArrayList<>();
+                records.add(processHeaderRecord(process, MuProcessState.PROGRESSING));
+                records.addAll(processStepRecords(
+                        process, className, methodName, activityParameters, orchestrationParameters, preState,
+                        onlyCompensateIfTransactionWasSuccessful, /* update process header? */ false
+                ));
+
+                try {
+                    // Process header is always written durably
+                    writeRecords(/* durably */ null, process.getConnection(), records);
                 }
-                else {
-                    stmt.setNull(++idx, Types.CLOB);
+                catch (SQLException sqle) {
+                    throw processHeaderException(process, sqle);
                 }
+                process.setLastHeartbeat(System.currentTimeMillis());
+            }
+            else if (foldProcessHeader) {
+                try (Lease lease = new Lease(process.getConnection())) {
+                    lease.begin();
 
-                // remember whether we should compensate
-                stmt.setBoolean(++idx, onlyCompensateIfTransactionWasSuccessful);
+                    // Log process header, in same transaction as the first step
+                    try {
+                        insertProcessHeader(lease, process, MuProcessState.PROGRESSING);
+                    }
+                    catch (SQLException sqle) {
+                        throw processHeaderException(process, sqle);
+                    }
 
-                if (0 == Database.executeUpdate(stmt)) {
-                    log.debug("No process step corresponding to processId={} stepId={} stored, when storing process step", process.getProcessId(), process.getCurrentStep());
+                    executeRecords(lease, processStepRecords(
+                            process, className, methodName, activityParameters, orchestrationParameters, preState,
+                            onlyCompensateIfTransactionWasSuccessful, /* update process header? */ false
+                    ));
+                    lease.commit();
                 }
             }
-
-            // Potentially check whether process state is NEW or (already) PROGRESSING
-            try (PreparedStatement stmt = conn.prepareStatement(getStatement("UPDATE_PROCESS"))) {
-                int idx = 0;
-                stmt.setInt(++idx, MuProcessState.PROGRESSING.toInt());
-                stmt.setNull(++idx, Types.CLOB);
-                stmt.setInt(++idx, process.getProcessId());
-                if (0 == Database.executeUpdate(stmt)) {
-                    log.debug("No process corresponding to processId={}, when storing process step", process.getProcessId());
-                }
+            else {
+                writeRecords(process, process.getConnection(), processStepRecords(
+                        process, className, methodName, activityParameters, orchestrationParameters, preState,
+                        onlyCompensateIfTransactionWasSuccessful, updateProcessHeader
+                ));
             }
 
-            conn.commit();
+            process.getPendingStepOutcomes().clear();
+            if (updateProcessHeader) {
+                process.setLastHeartbeat(System.currentTimeMillis());
+            }
         }
         catch (SQLException sqle) {
             String info = "Failed to persist process step: ";
@@ -1153,6 +2954,88 @@ public class MuPersistentLog {
         }
     }
 
+    /*
+     * Records describing a process step, preceded by the outcome of previous step(s) if deferred and
+     * (optionally) followed by an update of the process header.
+     */
+    private List<MuGroupCommitWriter.Record> processStepRecords(
+            final MuProcess process,
+            final String className, final String methodName,
+            final MuActivityParameters activityParameters,
+            final MuOrchestrationParameters orchestrationParameters,
+            final MuActivityState preState,
+            final boolean onlyCompensateIfTransactionWasSuccessful,
+            final boolean updateProcessHeader
+    ) throws MuProcessException {
+        // Record outcome of previous step(s), if deferred
+        List<MuGroupCommitWriter.Record> records = stepOutcomeRecords(process);
+
+        records.add(processStepRecord(
+                process.getProcessId(), process.getCurrentStep(), className, methodName,
+                activityParameters, orchestrationParameters, preState,
+                onlyCompensateIfTransactionWasSuccessful
+        ));
+
+        if (updateProcessHeader) {
+            // Potentially check whether process state is NEW or (already) PROGRESSING
+            records.add(progressingRecord(process.getProcessId(), "storing process step"));
+        }
+        return records;
+    }
+
+    private MuGroupCommitWriter.Record processStepRecord(
+            final long processId, final int stepId,
+            final String className, final String methodName,
+            final MuActivityParameters activityParameters,
+            final MuOrchestrationParameters orchestrationParameters,
+            final MuActivityState preState,
+            final boolean onlyCompensateIfTransactionWasSuccessful
+    ) throws MuProcessException {
+        // Serialized right away, since the record may be written (behind) after the process has
+        // moved on -- and orchestration parameters are modified from step to step
+        final String activityJson = activityParameters.toJson();
+        final String orchestrationJson
+                = null != orchestrationParameters && !orchestrationParameters.isEmpty() ? orchestrationParameters.toJson() : null;
+        final String preStateJson = null != preState && !preState.isEmpty() ? preState.toJson() : null;
+
+        return new MuGroupCommitWriter.Record(
+                "STORE_PROCESS_STEP", getStatement("STORE_PROCESS_STEP"),
+                stmt -> {
+                    int idx = 0;
+                    stmt.setLong(++idx, processId);
+                    stmt.setInt(++idx, stepId);
+
+                    // class::method of compensation
+                    stmt.setString(++idx, className);
+                    stmt.setString(++idx, methodName);
+
+                    // activity parameters
+                    stmt.setCharacterStream(++idx, new StringReader(activityJson));
+
+                    // orchestration parameters (if applicable)
+                    if (null != orchestrationJson) {
+                        stmt.setCharacterStream(++idx, new StringReader(orchestrationJson));
+                    }
+                    else {
+                        stmt.setNull(++idx, Types.CLOB);
+                    }
+
+                    // pre-state (if applicable)
+                    if (null != preStateJson) {
+                        stmt.setCharacterStream(++idx, new StringReader(preStateJson));
+                    }
+                    else {
+                        stmt.setNull(++idx, Types.CLOB);
+                    }
+
+                    // remember whether we should compensate
+                    stmt.setBoolean(++idx, onlyCompensateIfTransactionWasSuccessful);
+                },
+                "No process step corresponding to processId=" + processId + " stepId=" + stepId
+                        + " stored, when storing process step"
+        );
+    }
+
     /* package private */
     void pushCompensation(
             final MuProcess process, final MuBackwardBehaviour activity,
@@ -1173,25 +3056,4 @@ public class MuPersistentLog {
         pushCompensation(process, activity, activityParameters, null,
                 null, onlyCompensateIfTransactionWasSuccessful);
     }
-
-    private void popCompensation(
-            Connection conn, final int processId, final int stepId
-    ) throws MuProcessException {
-        Objects.requireNonNull(conn, "conn");
-
-        try (PreparedStatement stmt = conn.prepareStatement(getStatement("REMOVE_PROCESS_STEP"))) {
-            int idx = 0;
-            stmt.setInt(++idx, processId);
-            stmt.setInt(++idx, stepId);
-            if (0 == Database.executeUpdate(stmt)) {
-                log.debug("No process step corresponding to processId={} stepId={}, when popping compensation", processId, stepId);
-            }
-        }
-        catch (SQLException sqle) {
-            String info = "Failed to remove process step: ";
-            info += Database.squeeze(sqle);
-            log.warn(info, sqle);
-            throw new MuProcessBackwardBehaviourException(info, sqle);
-        }
-    }
 }
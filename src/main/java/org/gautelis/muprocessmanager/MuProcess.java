@@ -22,10 +22,15 @@ import org.gautelis.muprocessmanager.payload.MuNativeProcessResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
 
 /**
  * Models a micro-process, identified by a unique correlation ID, in which individual
@@ -36,16 +41,21 @@ import java.util.Optional;
 public class MuProcess {
     private static final Logger log = LoggerFactory.getLogger(MuProcess.class);
 
-    public final static int PROCESS_ID_NOT_YET_ASSIGNED = -1;
+    public final static long PROCESS_ID_NOT_YET_ASSIGNED = -1L;
     private final static String LAMBDA_INDICATION = "lambda$";
 
     //
     private final String correlationId;
-    private int processId = PROCESS_ID_NOT_YET_ASSIGNED;
+    private long processId = PROCESS_ID_NOT_YET_ASSIGNED;
 
     //
     private int currentStep = 0; // meaning no steps yet
     private final MuPersistentLog compensationLog;
+    private final MuProcessConnection connection; // may be null
+    private long lastHeartbeat = 0L; // when process header was last written
+    private final Map<Integer, Boolean> pendingStepOutcomes = new LinkedHashMap<>(); // stepId -> successful
+    private final MuProcessDurability durability;
+    private final List<MuGroupCommitWriter.Request> pendingWrites = new ArrayList<>(); // if writing behind
 
     //
     private final boolean acceptCompensationFailure;
@@ -59,14 +69,28 @@ public class MuProcess {
             final String correlationId, MuPersistentLog compensationLog,
             final boolean acceptCompensationFailure, final boolean assumeNativeProcessDataFlow,
             final boolean onlyCompensateIfTransactionWasSuccessful
+    ) {
+        this(correlationId, compensationLog, acceptCompensationFailure, assumeNativeProcessDataFlow,
+             onlyCompensateIfTransactionWasSuccessful, compensationLog.getDefaultDurability());
+    }
+
+    /* package private */
+    MuProcess(
+            final String correlationId, MuPersistentLog compensationLog,
+            final boolean acceptCompensationFailure, final boolean assumeNativeProcessDataFlow,
+            final boolean onlyCompensateIfTransactionWasSuccessful,
+            final MuProcessDurability durability
     ) {
         Objects.requireNonNull(correlationId, "correlationId");
         Objects.requireNonNull(compensationLog, "compensationLog");
+        Objects.requireNonNull(durability, "durability");
 
         this.correlationId = correlationId;
         this.compensationLog = compensationLog;
         this.acceptCompensationFailure = acceptCompensationFailure;
         this.onlyCompensateIfTransactionWasSuccessful = onlyCompensateIfTransactionWasSuccessful;
+        this.durability = durability;
+        this.connection = compensationLog.newProcessConnection(correlationId);
 
         if (assumeNativeProcessDataFlow) {
             result = new MuNativeProcessResult();
@@ -81,12 +105,12 @@ public class MuProcess {
     }
 
     /* package private */
-    int getProcessId() {
+    long getProcessId() {
         return processId;
     }
 
     /* package private */
-    void setProcessId(int processId) {
+    void setProcessId(long processId) {
         this.processId = processId;
     }
 
@@ -94,6 +118,35 @@ public class MuProcess {
         return correlationId;
     }
 
+    /* package private */
+    long getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+
+    /* package private */
+    void setLastHeartbeat(long lastHeartbeat) {
+        this.lastHeartbeat = lastHeartbeat;
+    }
+
+    /* package private */
+    Map<Integer, Boolean> getPendingStepOutcomes() {
+        return pendingStepOutcomes;
+    }
+
+    public MuProcessDurability getDurability() {
+        return durability;
+    }
+
+    /* package private */
+    List<MuGroupCommitWriter.Request> getPendingWrites() {
+        return pendingWrites;
+    }
+
+    /* package private */
+    MuProcessConnection getConnection() {
+        return connection; // may be null
+    }
+
     /* package private */
     int incrementCurrentStep() {
         return currentStep++; // returning previous
@@ -157,7 +210,7 @@ public class MuProcess {
             // relevant syndrome:
             //     - failed, but managed to compensate
             //     - failed and so did compensation(s)
-            throw compensate(compensationLog, correlationId, processId);
+            throw compensate();
         }
     }
 
@@ -185,14 +238,14 @@ public class MuProcess {
                 preState.orElse(null), /* forwardBehaviour */ activity, /* backwardBehaviour */ activity,
                 activityParameters, orchestrationParameters
         );
-        compensationLog.markSuccessful(processId, currentStep, forwardSuccess);
+        recordStepOutcome(forwardSuccess);
 
         if (!forwardSuccess) {
             // So we failed. Now run backward actions, and throw exception corresponding to
             // relevant syndrome:
             //     - failed, but managed to compensate
             //     - failed and so did compensation(s)
-            throw compensate(compensationLog, correlationId, processId);
+            throw compensate();
         }
     }
 
@@ -243,14 +296,14 @@ public class MuProcess {
         boolean forwardSuccess = runForwardAction(
                 preState.orElse(null), forwardBehaviour, backwardBehaviour, activityParameters, orchestrationParameters
         );
-        compensationLog.markSuccessful(processId, currentStep, forwardSuccess);
+        recordStepOutcome(forwardSuccess);
 
         if (!forwardSuccess) {
             // So we failed. Now run backward actions, and throw exception corresponding to
             // relevant syndrome:
             //     - failed, but managed to compensate
             //     - failed and so did compensation(s)
-            throw compensate(compensationLog, correlationId, processId);
+            throw compensate();
         }
     }
 
@@ -272,6 +325,16 @@ public class MuProcess {
         execute(forwardBehaviour, backwardBehaviour, activityParameters, null);
     }
 
+    private void recordStepOutcome(final boolean forwardSuccess) throws MuProcessException {
+        if (compensationLog.isDeferringStepOutcomeMarking()) {
+            // Recorded together with next step, or when compensating or failing process
+            pendingStepOutcomes.put(currentStep, forwardSuccess);
+        }
+        else {
+            compensationLog.markSuccessful(this, forwardSuccess);
+        }
+    }
+
     private boolean runForwardAction(
             final MuActivityState preState,
             final MuForwardBehaviour forwardBehaviour, final MuBackwardBehaviour backwardBehaviour,
@@ -324,14 +387,28 @@ public class MuProcess {
      * {@link MuProcessState#SUCCESSFUL SUCCESSFUL}.
      */
     public void finished() {
+        // Process steps are removed, so there is no point in recording outcomes
+        pendingStepOutcomes.clear();
+
+        try {
+            // Process steps written behind the process have to be in place before they are removed
+            compensationLog.awaitPendingWrites(this);
+        }
+        catch (MuProcessException mpe) {
+            log.info("Failed to write process steps behind {}: {}", this, mpe.getMessage());
+        }
+
         try {
-            compensationLog.cleanupAfterSuccess(getProcessId(), result);
+            compensationLog.cleanupAfterSuccess(getProcessId(), result, connection);
         }
         catch (Exception mpe) {
             String info = "Failed to mark process as successful: ";
             info += mpe.getMessage();
             log.warn(info);
         }
+        finally {
+            compensationLog.releaseProcessConnection(connection);
+        }
     }
 
     /**
@@ -340,13 +417,17 @@ public class MuProcess {
      */
     public void failed() {
         try {
-            compensationLog.cleanupAfterFailure(getProcessId());
+            compensationLog.flushStepOutcomes(this);
+            compensationLog.cleanupAfterFailure(getProcessId(), connection);
         }
         catch (MuProcessException mpe) {
             String info = "Failed to mark process as failed: ";
             info += mpe.getMessage();
             log.warn(info);
         }
+        finally {
+            compensationLog.releaseProcessConnection(connection);
+        }
     }
 
     /* package private */ Optional<MuProcessState> getProcessState() throws MuProcessException {
@@ -379,13 +460,94 @@ public class MuProcess {
     }
 
     /*
-     * This is the synchronous handling of compensation, which has another
-     * treatment of acceptCompensationFailure than has the asynchronous one.
+     * Compensates this process, using (and thereafter releasing) any connection held by the process.
+     */
+    private MuProcessException compensate() throws MuProcessException {
+        try {
+            try {
+                compensationLog.awaitPendingWrites(this);
+            }
+            catch (MuProcessException mpe) {
+                // Compensation can only see what actually made it to the compensation log
+                log.warn("Failed to write process steps before compensating {}: {}", this, mpe.getMessage());
+            }
+            try {
+                compensationLog.flushStepOutcomes(this);
+            }
+            catch (MuProcessException mpe) {
+                // Compensation handles steps with unknown outcome
+                log.info("Failed to record outcome of process steps before compensating {}: {}", this, mpe.getMessage());
+            }
+            return compensate(compensationLog, correlationId, processId, connection, /* not fetched */ null, /* not gated */ false, /* not observed */ null, /* not leased */ null);
+        }
+        finally {
+            compensationLog.releaseProcessConnection(connection);
+        }
+    }
+
+    /* package private */
+    static MuProcessException compensate(
+            final MuPersistentLog compensationLog,
+            final String correlationId, final long processId
+    ) throws MuProcessException {
+        return compensate(compensationLog, correlationId, processId, /* not observed */ null);
+    }
+
+    /*
+     * Compensates in the background, reporting time (in nanoseconds) spent in each invocation of a
+     * backward behaviour to backwardLatency. Compensations by classes kept from running by their
+     * bulkhead or circuit breaker are skipped, in which case the process is not compensated (yet).
      */
     /* package private */
     static MuProcessException compensate(
             final MuPersistentLog compensationLog,
-            final String correlationId, final int processId
+            final String correlationId, final long processId,
+            final LongConsumer backwardLatency /* may be null */
+    ) throws MuProcessException {
+        return compensate(compensationLog, correlationId, processId, /* not fetched */ null, backwardLatency);
+    }
+
+    /*
+     * As above, compensating process steps already fetched (in a batch) during recovery -- if not null.
+     */
+    /* package private */
+    static MuProcessException compensate(
+            final MuPersistentLog compensationLog,
+            final String correlationId, final long processId,
+            final MuPersistentLog.ProcessSteps steps /* may be null */,
+            final LongConsumer backwardLatency /* may be null */
+    ) throws MuProcessException {
+        return compensate(compensationLog, correlationId, processId, steps, backwardLatency, /* not leased */ null);
+    }
+
+    /*
+     * As above, for a process leased to us during recovery. The lease is checked (and renewed, if need be)
+     * by holdsLease before each compensation and before the process changes state. If the lease is lost,
+     * the process is left in its current state -- some other node may be recovering it.
+     */
+    /* package private */
+    static MuProcessException compensate(
+            final MuPersistentLog compensationLog,
+            final String correlationId, final long processId,
+            final MuPersistentLog.ProcessSteps steps /* may be null */,
+            final LongConsumer backwardLatency /* may be null */,
+            final BooleanSupplier holdsLease /* may be null */
+    ) throws MuProcessException {
+        return compensate(compensationLog, correlationId, processId, /* no held connection */ null, steps, /* gated */ true, backwardLatency, holdsLease);
+    }
+
+    /*
+     * This is the synchronous handling of compensation, which has another
+     * treatment of acceptCompensationFailure than has the asynchronous one.
+     */
+    private static MuProcessException compensate(
+            final MuPersistentLog compensationLog,
+            final String correlationId, final long processId,
+            final MuProcessConnection connection /* may be null */,
+            final MuPersistentLog.ProcessSteps steps /* may be null */,
+            final boolean gated,
+            final LongConsumer backwardLatency /* may be null */,
+            final BooleanSupplier holdsLease /* may be null */
     ) throws MuProcessException {
         Objects.requireNonNull(compensationLog, "compensationLog");
         Objects.requireNonNull(correlationId, "correlationId");
@@ -393,15 +555,17 @@ public class MuProcess {
         MuProcessException exception;
 
         List<FailedCompensation> failedCompensations = new LinkedList<>();
+        int skippedCompensations = 0;
         try {
-            compensationLog.compensate(processId, (activity, method, context, step, retries) -> {
+            MuPersistentLog.CompensationRunnable runnable = (activity, invoker, context, step, retries) -> {
                 boolean compensationSuccess;
 
                 String activityName = activity.getClass().getName();
 
+                long start = System.nanoTime();
                 try {
                     // Run backward transaction
-                    compensationSuccess = (boolean) method.invoke(activity, context);
+                    compensationSuccess = invoker.invoke(activity, context);
 
                     // Record failure, if needed
                     if (!compensationSuccess) {
@@ -417,6 +581,10 @@ public class MuProcess {
                         String info = "Failed to compensate step " + step + " activity (\"" + activityName + "\"): correlationId=\"" + correlationId + "\"";
                         throw new MuProcessBackwardBehaviourException(info, t);
                     }
+                } finally {
+                    if (null != backwardLatency) {
+                        backwardLatency.accept(System.nanoTime() - start);
+                    }
                 }
 
                 if (!compensationSuccess) {
@@ -430,23 +598,45 @@ public class MuProcess {
                 }
 
                 return compensationSuccess;
-            });
+            };
+
+            if (null != holdsLease) {
+                skippedCompensations = compensationLog.compensate(processId, steps, gated, runnable, holdsLease);
+            } else if (null != steps) {
+                skippedCompensations = compensationLog.compensate(processId, steps, gated, runnable);
+            } else {
+                skippedCompensations = compensationLog.compensate(processId, connection, gated, runnable);
+            }
         }
         finally {
-            if (failedCompensations.isEmpty()) {
-                compensationLog.cleanupAfterSuccessfulCompensation(processId);
+            if (null != holdsLease && !holdsLease.getAsBoolean()) {
+                // Some other node may be recovering the process, so leave it in its current state
+                String info = "Lost lease on process while compensating";
+                exception = new MuProcessBackwardBehaviourException(info);
+
+            } else if (failedCompensations.isEmpty() && 0 == skippedCompensations) {
+                compensationLog.cleanupAfterSuccessfulCompensation(processId, connection);
 
                 String info = "Forward activity failed, but compensations were successful";
                 exception = new MuProcessForwardBehaviourException(info);
 
+            } else if (failedCompensations.isEmpty()) {
+                // Nothing failed, but some compensations were skipped. Leave the process in its
+                // current state, so that it is compensated again later
+                String info = "Forward activity failed and " + skippedCompensations + " compensation activities were skipped";
+                exception = new MuProcessBackwardBehaviourException(info);
+
             } else {
-                compensationLog.cleanupAfterFailedCompensation(processId);
+                compensationLog.cleanupAfterFailedCompensation(processId, connection);
 
                 StringBuilder info = new StringBuilder("Forward activity failed and so did some compensation activities: ");
                 for (FailedCompensation failedCompensation : failedCompensations) {
                     info.append("{step=").append(failedCompensation.getStep());
                     info.append(" activity=").append(failedCompensation.getActivityName()).append("} ");
                 }
+                if (skippedCompensations > 0) {
+                    info.append("{").append(skippedCompensations).append(" skipped} ");
+                }
                 exception = new MuProcessBackwardBehaviourException(info.toString());
             }
         }
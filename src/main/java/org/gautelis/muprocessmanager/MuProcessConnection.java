@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A database connection held on behalf of a single {@link MuProcess}, from the first
+ * step of the process until the process is finished, failed or compensated. Statements
+ * prepared on the connection are kept and reused between steps.
+ * <p>
+ * The physical connection is acquired lazily and may be released at any time when
+ * not in use (e.g. by the idle connection reaper in {@link MuPersistentLog}), in which
+ * case it is transparently re-acquired the next time the process needs it.
+ */
+/* package private */ final class MuProcessConnection {
+    private static final Logger log = LoggerFactory.getLogger(MuProcessConnection.class);
+
+    private final DataSource dataSource;
+    private final String correlationId;
+    private final Set<MuProcessConnection> openConnections;
+
+    private Connection conn = null;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    private int users = 0;
+    private long lastUsed = 0L;
+
+    /* package private */
+    MuProcessConnection(
+            final DataSource dataSource, final String correlationId, final Set<MuProcessConnection> openConnections
+    ) {
+        Objects.requireNonNull(dataSource, "dataSource");
+        Objects.requireNonNull(correlationId, "correlationId");
+        Objects.requireNonNull(openConnections, "openConnections");
+
+        this.dataSource = dataSource;
+        this.correlationId = correlationId;
+        this.openConnections = openConnections;
+    }
+
+    /* package private */
+    synchronized Connection acquire() throws SQLException {
+        if (null == conn || conn.isClosed()) {
+            statements.clear();
+            conn = dataSource.getConnection();
+            openConnections.add(this);
+        }
+        users++;
+        lastUsed = System.currentTimeMillis();
+        return conn;
+    }
+
+    /* package private */
+    synchronized PreparedStatement prepare(final String sql, final int autoGeneratedKeys) throws SQLException {
+        if (null == conn) {
+            throw new SQLException("Connection not acquired");
+        }
+
+        String key = autoGeneratedKeys + ":" + sql;
+        PreparedStatement stmt = statements.get(key);
+        if (null == stmt || stmt.isClosed()) {
+            stmt = conn.prepareStatement(sql, autoGeneratedKeys);
+            statements.put(key, stmt);
+        }
+        else {
+            stmt.clearParameters();
+        }
+        return stmt;
+    }
+
+    /* package private */
+    synchronized PreparedStatement prepare(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        if (null == conn) {
+            throw new SQLException("Connection not acquired");
+        }
+
+        String key = resultSetType + "/" + resultSetConcurrency + ":" + sql;
+        PreparedStatement stmt = statements.get(key);
+        if (null == stmt || stmt.isClosed()) {
+            stmt = conn.prepareStatement(sql, resultSetType, resultSetConcurrency);
+            statements.put(key, stmt);
+        }
+        else {
+            stmt.clearParameters();
+        }
+        return stmt;
+    }
+
+    /* package private */
+    synchronized void relinquish() {
+        if (users > 0) {
+            users--;
+        }
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /* package private */
+    synchronized void release() {
+        if (null == conn) {
+            return;
+        }
+
+        for (PreparedStatement stmt : statements.values()) {
+            try {
+                stmt.close();
+            }
+            catch (SQLException ignore) {}
+        }
+        statements.clear();
+
+        try {
+            conn.close();
+        }
+        catch (SQLException sqle) {
+            log.debug("Failed to close connection held by process with correlationId=\"{}\": {}", correlationId, sqle.getMessage());
+        }
+        conn = null;
+        users = 0;
+        openConnections.remove(this);
+    }
+
+    /**
+     * @return true if a physical connection is currently held
+     */
+    /* package private */
+    synchronized boolean isHeld() {
+        return null != conn;
+    }
+
+    /* package private */
+    synchronized boolean releaseIfIdle(final long now, final long maxIdleMillis) {
+        if (null == conn || users > 0 || now - lastUsed < maxIdleMillis) {
+            return false;
+        }
+
+        log.info("Releasing connection held by idle process (not finished?): correlationId=\"{}\", idle for {} ms",
+                correlationId, now - lastUsed);
+        release();
+        return true;
+    }
+}
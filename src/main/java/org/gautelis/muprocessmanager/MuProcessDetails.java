@@ -53,7 +53,7 @@ public class MuProcessDetails {
     }
 
     private final String correlationId;
-    private final int processId;
+    private final long processId;
     private final MuProcessState state;
     private final Date created;
     private final Date modified;
@@ -61,7 +61,7 @@ public class MuProcessDetails {
 
     /* package private */
     MuProcessDetails(
-            final String correlationId, final int processId, final MuProcessState state, final Date created, final Date modified
+            final String correlationId, final long processId, final MuProcessState state, final Date created, final Date modified
     ) {
         Objects.requireNonNull(correlationId, "correlationId");
         Objects.requireNonNull(state, "state");
@@ -79,7 +79,7 @@ public class MuProcessDetails {
         return correlationId;
     }
 
-    public int getProcessId() {
+    public long getProcessId() {
         return processId;
     }
 
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+/**
+ * Durability of the compensation log of a {@link MuProcess}, i.e. whether compensations
+ * are committed to the database before the corresponding forward activity is run or
+ * written shortly thereafter.
+ */
+public enum MuProcessDurability {
+    /**
+     * Compensations are committed to the database before the corresponding forward
+     * activity is run.
+     */
+    DURABLE,
+
+    /**
+     * Compensations are queued and written to the database in the background, so the
+     * corresponding forward activity is run without waiting for the database. The
+     * compensations are guaranteed to have been written when the process is finished,
+     * failed or compensated, but the most recent compensations may be lost if the
+     * process manager dies abruptly. The number of compensations not yet written is
+     * bounded by the 'write-behind-buffer-size' policy.
+     */
+    WRITE_BEHIND
+}
@@ -73,4 +73,361 @@ public interface MuProcessManagementPolicy {
      */
     @Configurable(property = "assume-native-process-data-flow", value = "true")
     boolean assumeNativeProcessDataFlow();
+
+    /**
+     * @return <strong>true</strong> if a {@link MuProcess} should hold on to a single database connection
+     * (with prepared statements) from its first step until it is finished, failed or compensated, -or-
+     * <strong>false</strong> if every operation against the persistent log should fetch a connection
+     * from the data source on its own.
+     */
+    @Configurable(property = "hold-connection-for-process-lifecycle", value = "false")
+    boolean holdConnectionForProcessLifecycle();
+
+    /**
+     * @return number of seconds a connection held by a process may be idle before it is released back to the
+     * data source. Guards against processes that are never finished (or failed). The process will transparently
+     * acquire a new connection if it is used again.
+     */
+    @Configurable(property = "seconds-before-releasing-idle-process-connection", value = "60")
+    int secondsBeforeReleasingIdleProcessConnection();
+
+    /**
+     * @return <strong>true</strong> if the process header should be written (directly as
+     * {@link MuProcessState#PROGRESSING PROGRESSING}) in the same transaction as the first process step,
+     * -or- <strong>false</strong> if the header is written on its own before the first step.
+     */
+    @Configurable(property = "fold-process-header-into-first-step", value = "false")
+    boolean foldProcessHeaderIntoFirstStep();
+
+    /**
+     * @return minimum number of seconds between refreshing the process header (the 'modified' timestamp)
+     * when storing subsequent process steps. A value of 0 refreshes the header for every step. Is capped
+     * to half of {@link #minutesBeforeAssumingProcessStuck()}, so that a running process is never assumed stuck.
+     */
+    @Configurable(property = "seconds-between-process-heartbeats", value = "0")
+    int secondsBetweenProcessHeartbeats();
+
+    /**
+     * @return <strong>true</strong> if the outcome of a forward activity should be recorded together with
+     * the next process step (or when the process is compensated or failed), -or- <strong>false</strong> if
+     * the outcome is recorded right away. If a process dies with an outcome not yet recorded, the step
+     * is compensated as if the outcome was unknown.
+     */
+    @Configurable(property = "defer-step-outcome-marking", value = "false")
+    boolean deferStepOutcomeMarking();
+
+    /**
+     * @return <strong>true</strong> if writes to the compensation log from concurrently running processes
+     * should be collected and committed together (group commit), -or- <strong>false</strong> if every
+     * process commits its own writes. Callers are released when their writes have been committed.
+     */
+    @Configurable(property = "group-commit-compensation-log", value = "false")
+    boolean groupCommitCompensationLog();
+
+    /**
+     * @return maximum number of records written in one group commit.
+     */
+    @Configurable(property = "group-commit-max-batch-size", value = "64")
+    int groupCommitMaxBatchSize();
+
+    /**
+     * @return maximum number of microseconds to wait for more writes, after the first write
+     * in a group commit.
+     */
+    @Configurable(property = "group-commit-max-wait-microseconds", value = "500")
+    int groupCommitMaxWaitMicroseconds();
+
+    /**
+     * @return <strong>true</strong> if processes by default should have {@link MuProcessDurability#WRITE_BEHIND}
+     * durability, -or- <strong>false</strong> if processes by default should have {@link MuProcessDurability#DURABLE}
+     * durability. May be overridden on a per process basis.
+     */
+    @Configurable(property = "write-behind-compensation-log", value = "false")
+    boolean writeBehindCompensationLog();
+
+    /**
+     * @return maximum number of writes queued (and not yet written) for processes having
+     * {@link MuProcessDurability#WRITE_BEHIND} durability. Processes will wait for the queue
+     * to drain if this is exceeded.
+     */
+    @Configurable(property = "write-behind-buffer-size", value = "8192")
+    int writeBehindBufferSize();
+
+    /**
+     * @return number of process ids reserved at a time (from the mu_process_sequence table) when process ids are
+     * allocated by the process manager. With 0, process ids are generated by the database (identity column)
+     * when inserting process headers. Once process ids have been allocated in blocks, the database should not
+     * go back to generating process ids unless the identity column is re-seeded accordingly. Derby databases
+     * upgraded by {@code contrib/derby/database-upgrade.sql} require process ids to be allocated in blocks.
+     */
+    @Configurable(property = "process-id-block-size", value = "0")
+    int processIdBlockSize();
+
+    /**
+     * @return maximum number of processes fetched in one page when recovering processes. The next page is not
+     * fetched until the recovery threads have caught up, so that neither memory nor connections are held on to
+     * in proportion to the number of processes awaiting recovery.
+     */
+    @Configurable(property = "recovery-page-size", value = "1000")
+    int recoveryPageSize();
+
+    /**
+     * @return number of rows fetched from the database in each round trip when reading a page of processes to
+     * recover (a hint to the JDBC driver).
+     */
+    @Configurable(property = "recovery-fetch-size", value = "200")
+    int recoveryFetchSize();
+
+    /**
+     * @return maximum number of recovery tasks queued (and not yet running) in the background. What happens when the
+     * queue is full is determined by {@link #recoveryQueueOverflowPolicy()}. With 0, the queue is unbounded.
+     */
+    @Configurable(property = "recovery-queue-capacity", value = "4096")
+    int recoveryQueueCapacity();
+
+    /**
+     * @return what happens to recovery tasks that do not fit in the (bounded) queue: 'block' waits for room in the
+     * queue, 'caller-runs' runs the task in the recovery thread itself and 'drop' skips the task, leaving the
+     * process to be rediscovered by the next recovery.
+     */
+    @Configurable(property = "recovery-queue-overflow-policy", value = "block")
+    String recoveryQueueOverflowPolicy();
+
+    /**
+     * @return relative share of background threads given to compensating stuck processes, when recovery tasks of
+     * different kinds are waiting. See also {@link #secondsBeforePrioritizingWaitingRecovery()}.
+     */
+    @Configurable(property = "recovery-weight-stuck", value = "8")
+    int recoveryWeightStuck();
+
+    /**
+     * @return relative share of background threads given to re-compensating processes that failed compensation.
+     */
+    @Configurable(property = "recovery-weight-recompensation", value = "4")
+    int recoveryWeightRecompensation();
+
+    /**
+     * @return relative share of background threads given to abandoning processes.
+     */
+    @Configurable(property = "recovery-weight-abandonment", value = "2")
+    int recoveryWeightAbandonment();
+
+    /**
+     * @return relative share of background threads given to removing retired processes.
+     */
+    @Configurable(property = "recovery-weight-retention", value = "1")
+    int recoveryWeightRetention();
+
+    /**
+     * @return number of seconds a recovery task may wait before it goes first, regardless of its kind, so that no kind
+     * of recovery starves. With 0, tasks are run strictly according to weight.
+     */
+    @Configurable(property = "seconds-before-prioritizing-waiting-recovery", value = "60")
+    int secondsBeforePrioritizingWaitingRecovery();
+
+    /**
+     * @return maximum number of seconds before re-attempting compensation of an individual process step. After each
+     * failed attempt, the time before the next attempt doubles, starting at {@link
+     * #secondsBetweenRecompensationAttempts()} and capped by this value. Some randomness (jitter) is added, so
+     * that steps failing together are not retried together.
+     */
+    @Configurable(property = "max-seconds-between-recompensation-attempts", value = "3600")
+    int maxSecondsBetweenRecompensationAttempts();
+
+    /**
+     * @return <strong>true</strong> if retired (i.e. {@link MuProcessState#SUCCESSFUL SUCCESSFUL} and {@link
+     * MuProcessState#COMPENSATED COMPENSATED}) processes should be removed in bulk, chunk by chunk, by a
+     * maintenance job of its own, -or- <strong>false</strong> if every retired process is removed by a recovery
+     * task of its own.
+     */
+    @Configurable(property = "bulk-purge-retired-processes", value = "false")
+    boolean bulkPurgeRetiredProcesses();
+
+    /**
+     * @return maximum number of retired processes removed in one transaction, when removing retired processes in bulk.
+     */
+    @Configurable(property = "purge-chunk-size", value = "5000")
+    int purgeChunkSize();
+
+    /**
+     * @return number of milliseconds to pause between chunks, when removing retired processes in bulk.
+     */
+    @Configurable(property = "milliseconds-between-purge-chunks", value = "100")
+    int millisecondsBetweenPurgeChunks();
+
+    /**
+     * @return <strong>true</strong> if the tables are partitioned on process id (see
+     * <i>database-create-partitioned.sql</i> for PostgreSQL and SQL Server), so that retired processes are
+     * removed by dropping whole partitions once every process in them has been retired (and chunk by chunk from
+     * partitions that also hold live or abandoned processes), -or-
+     * <strong>false</strong> if retired processes are removed row by row. Requires database support; falls back
+     * to removing retired processes row by row otherwise.
+     */
+    @Configurable(property = "partitioned-process-storage", value = "false")
+    boolean partitionedProcessStorage();
+
+    /**
+     * @return number of process ids covered by each partition added, when the tables are partitioned. Preferably about
+     * a day's worth of processes, since retired processes are kept until their partition is dropped.
+     */
+    @Configurable(property = "processes-per-partition", value = "1000000")
+    int processesPerPartition();
+
+    /**
+     * @return <strong>true</strong> if recovery should lease the processes it recovers, so that background tasks may
+     * run in several process manager instances (nodes) against the same database, each node only recovering
+     * processes leased by itself, -or- <strong>false</strong> if background tasks run in only one instance.
+     * Falls back to recovering without leases if the database lacks support.
+     */
+    @Configurable(property = "claim-recovery-leases", value = "false")
+    boolean claimRecoveryLeases();
+
+    /**
+     * @return number of seconds a process is leased to a node, when claiming recovery leases. Should be well above the
+     * time needed to recover a page of processes, since a node does not start recovering a process whose lease
+     * has (or is about to) run out. The lease is counted from when the process was claimed, and is renewed while
+     * compensating once half of it remains.
+     */
+    @Configurable(property = "seconds-of-recovery-lease", value = "300")
+    int secondsOfRecoveryLease();
+
+    /**
+     * @return <strong>true</strong> if process managers (nodes) running against the same database should elect a leader
+     * among themselves, the leader being the only node running background tasks, -or- <strong>false</strong> if
+     * background tasks run wherever started. Falls back to running background tasks wherever started if the
+     * database lacks support.
+     */
+    @Configurable(property = "elect-recovery-leader", value = "false")
+    boolean electRecoveryLeader();
+
+    /**
+     * @return number of seconds a node leads, unless renewing its lease, when electing a leader. The lease is renewed
+     * three times per lease, so another node takes over within this number of seconds if the leader dies.
+     */
+    @Configurable(property = "seconds-of-leader-lease", value = "30")
+    int secondsOfLeaderLease();
+
+    /**
+     * @return number of process managers (nodes) sharing recovery between themselves, each recovering only processes in
+     * its own share (shard) of recovery buckets, when node membership is static. With 1, recovery is not
+     * sharded. See also {@link #recoveryShardIndex()}. Maintenance (removing retired processes in bulk or with
+     * their partitions) only runs in shard 0.
+     * <p>
+     * Rather than sharding on process_id mod shardCount, every process falls in one of 1024 fixed recovery buckets,
+     * MOD(process_id * 613, 1024), and each shard owns a contiguous range of buckets (at most 1024 shards). Since the
+     * bucket of a process does not depend on the number of shards, it may be kept in an indexed computed column
+     * (PostgreSQL and SQL Server), and changing the number of shards only moves bucket ranges between nodes -- where
+     * changing the divisor of a plain modulo would move (almost) every process. Consider claiming recovery leases
+     * (see {@link #claimRecoveryLeases()}) while changing the number of shards, so that nodes having old and new
+     * ranges do not recover the same process.
+     */
+    @Configurable(property = "recovery-shard-count", value = "1")
+    int recoveryShardCount();
+
+    /**
+     * @return index (from 0 to {@link #recoveryShardCount()} - 1) of this process manager (node), when sharing recovery
+     * between nodes.
+     */
+    @Configurable(property = "recovery-shard-index", value = "0")
+    int recoveryShardIndex();
+
+    /**
+     * @return whether recovery tasks should run on virtual threads (Java 21 or later), one thread per task, rather than
+     * on a fixed pool of {@link #numberOfRecoveryThreads()} platform threads. A task blocked on the database or
+     * on a slow compensation then does not hold up other tasks. At most {@link #maxRecoveryConnections()} tasks
+     * run at a time. Falls back on a pool of {@link #maxRecoveryConnections()} platform threads if virtual threads are
+     * not available.
+     */
+    @Configurable(property = "use-virtual-recovery-threads", value = "false")
+    boolean useVirtualRecoveryThreads();
+
+    /**
+     * @return maximum number of recovery tasks running at a time on virtual threads, each task using (at most) one
+     * database connection. Should fit within the connection pool. See {@link #useVirtualRecoveryThreads()}.
+     */
+    @Configurable(property = "max-recovery-connections", value = "32")
+    int maxRecoveryConnections();
+
+    /**
+     * @return number of seconds, after start, during which recovery is ramped up. Recovery tasks are then submitted at
+     * a rate growing from a tenth of {@link #warmUpRecoveryTasksPerSecond()} to the full rate, first
+     * re-compensations of COMPENSATION_FAILED processes and removals of retired processes are spread over the
+     * warm-up, and bulk removal of retired processes pauses longer between chunks. Suitable when restarting
+     * after downtime, since every process progressing at that time will be seen as stuck. With 0, there is no
+     * warm-up.
+     */
+    @Configurable(property = "seconds-of-recovery-warm-up", value = "0")
+    int secondsOfRecoveryWarmUp();
+
+    /**
+     * @return number of recovery tasks submitted per second at the end of the warm-up. See {@link
+     * #secondsOfRecoveryWarmUp()}.
+     */
+    @Configurable(property = "warm-up-recovery-tasks-per-second", value = "200")
+    int warmUpRecoveryTasksPerSecond();
+
+    /**
+     * @return whether the number of recovery tasks running at a time should adapt to observed latencies, i.e. time
+     * spent in the database by recovery tasks and time spent in backward behaviours. The number is decreased
+     * when latencies grow beyond their usual levels, and increased otherwise, within {@link
+     * #minRecoveryConcurrency()} and {@link #maxRecoveryConcurrency()}. Starts at {@link
+     * #numberOfRecoveryThreads()}.
+     */
+    @Configurable(property = "adapt-recovery-concurrency", value = "false")
+    boolean adaptRecoveryConcurrency();
+
+    /**
+     * @return minimum number of recovery tasks running at a time, when adapting recovery concurrency.
+     */
+    @Configurable(property = "min-recovery-concurrency", value = "1")
+    int minRecoveryConcurrency();
+
+    /**
+     * @return maximum number of recovery tasks running at a time, when adapting recovery concurrency. The number of
+     * recovery threads is raised to this number (or, with virtual recovery threads, this number is capped by
+     * {@link #maxRecoveryConnections()}).
+     */
+    @Configurable(property = "max-recovery-concurrency", value = "16")
+    int maxRecoveryConcurrency();
+
+    /**
+     * @return whether compensations run in the background by a compensation class that keeps failing are skipped for a
+     * while (circuit breaker), so that recovery of processes compensated by other classes keeps flowing
+     */
+    @Configurable(property = "break-failing-compensations", value = "false")
+    boolean breakFailingCompensations();
+
+    /**
+     * @return number of consecutive failed compensations by a compensation class before skipping compensations by that
+     * class (if break-failing-compensations)
+     */
+    @Configurable(property = "compensation-failures-before-breaking", value = "5")
+    int compensationFailuresBeforeBreaking();
+
+    /**
+     * @return number of seconds to skip compensations by a failing compensation class, before letting a single
+     * compensation through as a probe (if break-failing-compensations)
+     */
+    @Configurable(property = "seconds-before-probing-broken-compensation", value = "60")
+    int secondsBeforeProbingBrokenCompensation();
+
+    /**
+     * @return maximum number of compensations by a single compensation class running in the background at a time,
+     * further compensations being skipped (if break-failing-compensations). 0 means no limit
+     */
+    @Configurable(property = "max-concurrent-compensations-per-class", value = "0")
+    int maxConcurrentCompensationsPerClass();
+
+    /**
+     * @return whether process steps of processes to recover are fetched in batches, for a page of processes at a time,
+     * rather than by each recovery task on its own
+     */
+    @Configurable(property = "batch-recovery-step-fetch", value = "false")
+    boolean batchRecoveryStepFetch();
+
+    /**
+     * @return number of processes whose steps are fetched in a single query (if batch-recovery-step-fetch)
+     */
+    @Configurable(property = "recovery-step-batch-size", value = "100")
+    int recoveryStepBatchSize();
 }
@@ -52,8 +52,12 @@ public class MuProcessManager implements MuSynchronousManager, MuAsynchronousMan
      * background tasks associated with detecting stuck processes and (re-)compensating
      * process tasks if the process has died.
      * <p>
-     * If you need multiple instances of MuProcessManager, at the moment you should only start
-     * the asynchronous background task in one single instance.
+     * If you need multiple instances of MuProcessManager, you should only start the asynchronous
+     * background task in one single instance -- unless recovery leases are claimed (see
+     * {@link MuProcessManagementPolicy#claimRecoveryLeases()}), in which case every instance
+     * may run background tasks, each recovering only processes leased by itself -- or a leader
+     * is elected (see {@link MuProcessManagementPolicy#electRecoveryLeader()}), in which case
+     * every instance may start background tasks but only the leader actually runs them.
      * <p>
      * Also initiates the statistics logging (in the background).
      * <p>
@@ -73,9 +77,13 @@ public class MuProcessManager implements MuSynchronousManager, MuAsynchronousMan
      * This also stops the in-memory recovery queue. Queued recovery tasks that have not yet
      * started are discarded at shutdown and will instead be rebuilt from persisted database
      * state after the next {@link #start()}.
+     * <p>
+     * Writes to the compensation log that are queued for group commit (see
+     * {@link MuProcessManagementPolicy#groupCommitCompensationLog()}) are written before returning.
      */
     public void stop() {
         asynchronousManager.stop();
+        synchronousManager.stop();
     }
 
     /**
@@ -124,6 +132,37 @@ public class MuProcessManager implements MuSynchronousManager, MuAsynchronousMan
         return synchronousManager.newProcess(correlationId, acceptCompensationFailure);
     }
 
+    /**
+     * Creates a new persisted process, a process that handles activities with compensations that are
+     * persisted to database, with an explicit {@link MuProcessDurability durability} of the compensations.
+     * <p>
+     * A process with {@link MuProcessDurability#WRITE_BEHIND} durability does not wait for compensations to
+     * be written to database before running activities, trading a short window of possible loss of compensations
+     * (should the process manager die abruptly) for lower latency. Otherwise as
+     * {@link MuProcessManager#newProcess(String)}.
+     *
+     * @param correlationId a correlation ID identifying the business request.
+     * @param durability durability of compensations (on a per process basis).
+     * @return a persisted {@link MuProcess}
+     */
+    public MuProcess newProcess(final String correlationId, MuProcessDurability durability) {
+        return synchronousManager.newProcess(correlationId, durability);
+    }
+
+    /**
+     * Creates a new persisted process, a process that handles activities with compensations that are
+     * persisted to database, with an explicit {@link MuProcessDurability durability} of the compensations.
+     * Otherwise as {@link MuProcessManager#newProcess(String, boolean)}.
+     *
+     * @param correlationId a correlation ID identifying the business request.
+     * @param acceptCompensationFailure indicate (on a per process basis) whether re-compensation is allowed.
+     * @param durability durability of compensations (on a per process basis).
+     * @return a persisted {@link MuProcess}
+     */
+    public MuProcess newProcess(final String correlationId, boolean acceptCompensationFailure, MuProcessDurability durability) {
+        return synchronousManager.newProcess(correlationId, acceptCompensationFailure, durability);
+    }
+
     /**
      * Retrieves process state ({@link MuProcessState}) for a process, identified by correlation ID.
      * {@link MuProcessState} is available for a time period after the corresponding {@link MuProcess}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import java.util.Locale;
+
+/**
+ * Adapts the number of recovery tasks running at a time (the limit) to observed latencies, so that
+ * recovery runs at full speed when the database (and the targets of compensations) are idle, but
+ * backs off when they are busy.
+ * <p>
+ * Two latencies are observed: time spent in the database by each recovery task and time spent in
+ * each invocation of a backward behaviour. For each, a recent (fast moving) average is compared
+ * to a baseline (slowly moving) average. The limit is adjusted once per window of as many finished
+ * tasks as the limit itself, but at least some (AIMD): if either recent latency exceeds its baseline by some tolerance,
+ * the limit is decreased multiplicatively. Otherwise, if tasks were actually held back by the limit,
+ * the limit is increased by one. The limit stays within hard minimum and maximum limits.
+ */
+/* package private */ final class MuRecoveryLimiter {
+
+    private static final double BACKOFF = 0.75; // multiplicative decrease
+    private static final double TOLERANCE = 2.0; // of baseline, before considered congested
+    private static final double RECENT_SMOOTHING = 0.2;
+    private static final double BASELINE_SMOOTHING = 0.01;
+    private static final int MIN_SAMPLES = 10; // before latency is considered, and in each window
+
+    /*
+     * Moving averages (in nanoseconds) of some latency.
+     */
+    private static final class Latency {
+        private double recent = 0.0;
+        private double baseline = 0.0;
+        private long samples = 0L;
+
+        private void observe(final long nanos) {
+            if (0L == samples++) {
+                recent = baseline = nanos;
+            } else {
+                recent += RECENT_SMOOTHING * (nanos - recent);
+                baseline += BASELINE_SMOOTHING * (nanos - baseline);
+            }
+        }
+
+        private boolean isCongested() {
+            return samples >= MIN_SAMPLES && recent > TOLERANCE * baseline;
+        }
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    // All guarded by 'this'
+    private int limit;
+    private int running = 0;
+    private int finishedInWindow = 0;
+    private boolean heldBackInWindow = false;
+    private final Latency database = new Latency();
+    private final Latency compensation = new Latency();
+
+    /* package private */
+    MuRecoveryLimiter(final int initialLimit, final int minLimit, final int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /**
+     * Waits until running another task is within limit.
+     */
+    /* package private */
+    synchronized void acquire() throws InterruptedException {
+        if (running >= limit) {
+            heldBackInWindow = true;
+            do {
+                wait();
+            } while (running >= limit);
+        }
+        running++;
+    }
+
+    /**
+     * Marks a task as finished, possibly adjusting the limit.
+     */
+    /* package private */
+    synchronized void release() {
+        if (running > 0) {
+            running--;
+        }
+
+        if (++finishedInWindow >= Math.max(limit, MIN_SAMPLES)) {
+            if (database.isCongested() || compensation.isCongested()) {
+                limit = Math.max(minLimit, Math.min(limit - 1, (int) (limit * BACKOFF)));
+            } else if (heldBackInWindow) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+            finishedInWindow = 0;
+            heldBackInWindow = false;
+        }
+        notifyAll();
+    }
+
+    /**
+     * @param nanos time spent in the database by a recovery task
+     */
+    /* package private */
+    synchronized void observeDatabaseLatency(final long nanos) {
+        database.observe(Math.max(0L, nanos));
+    }
+
+    /**
+     * @param nanos time spent in an invocation of a backward behaviour
+     */
+    /* package private */
+    synchronized void observeCompensationLatency(final long nanos) {
+        compensation.observe(Math.max(0L, nanos));
+    }
+
+    /* package private */
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    /* package private */
+    int getMinLimit() {
+        return minLimit;
+    }
+
+    /* package private */
+    int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /* package private */
+    synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * @return recent average time (in milliseconds) spent in the database by a recovery task
+     */
+    /* package private */
+    synchronized double getDatabaseLatencyMillis() {
+        return database.recent / 1e6;
+    }
+
+    /**
+     * @return baseline average time (in milliseconds) spent in the database by a recovery task
+     */
+    /* package private */
+    synchronized double getDatabaseBaselineMillis() {
+        return database.baseline / 1e6;
+    }
+
+    /**
+     * @return recent average time (in milliseconds) spent in an invocation of a backward behaviour
+     */
+    /* package private */
+    synchronized double getCompensationLatencyMillis() {
+        return compensation.recent / 1e6;
+    }
+
+    /**
+     * @return baseline average time (in milliseconds) spent in an invocation of a backward behaviour
+     */
+    /* package private */
+    synchronized double getCompensationBaselineMillis() {
+        return compensation.baseline / 1e6;
+    }
+
+    /**
+     * @return summary of limit and latencies, for the statistics log
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT,
+                "{%d of %d (%d-%d) recovery tasks running} {%.1f ms in database (baseline %.1f ms)} {%.1f ms compensating (baseline %.1f ms)}",
+                running, limit, minLimit, maxLimit,
+                database.recent / 1e6, database.baseline / 1e6,
+                compensation.recent / 1e6, compensation.baseline / 1e6
+        );
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Ramps up recovery during a warm-up period after start, so that a restart after downtime does
+ * not flood the database or the targets of compensations.
+ * <p>
+ * During warm-up, recovery tasks are let in by a token bucket, the rate of which grows linearly
+ * from a tenth of the full rate at start to the full rate at the end of warm-up. Work that may
+ * just as well wait, such as first re-compensations of COMPENSATION_FAILED processes and removal
+ * of retired processes, is also spread over the warm-up: every process is given a (pseudo random,
+ * but stable) point in time during warm-up, before which it is not {@link #isDue(long) due}.
+ * After warm-up, everything is let in right away.
+ */
+/* package private */ final class MuRecoveryRamp {
+
+    private static final double INITIAL_FRACTION = 0.1; // of full rate
+
+    private final long warmUpNanos; // 0 means no warm-up
+    private final double tasksPerSecond; // at end of warm-up
+    private final LongSupplier nanoClock;
+
+    // All guarded by 'this'
+    private long startNanos;
+    private double tokens = 0.0;
+    private long refilledNanos;
+
+    /* package private */
+    MuRecoveryRamp(final long warmUpMillis, final int tasksPerSecond) {
+        this(warmUpMillis, tasksPerSecond, System::nanoTime);
+    }
+
+    /* package private */
+    MuRecoveryRamp(final long warmUpMillis, final int tasksPerSecond, final LongSupplier nanoClock) {
+        Objects.requireNonNull(nanoClock, "nanoClock");
+
+        this.warmUpNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, warmUpMillis));
+        this.tasksPerSecond = Math.max(1, tasksPerSecond);
+        this.nanoClock = nanoClock;
+
+        startNanos = refilledNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * (Re-)starts warm-up, i.e. when the process manager is started.
+     */
+    /* package private */
+    synchronized void begin() {
+        startNanos = refilledNanos = nanoClock.getAsLong();
+        tokens = 0.0;
+    }
+
+    /**
+     * @return true while warming up
+     */
+    /* package private */
+    synchronized boolean isWarmingUp() {
+        return nanoClock.getAsLong() - startNanos < warmUpNanos;
+    }
+
+    /**
+     * @return true if processing of process is due, i.e. if its point in time during warm-up has passed
+     */
+    /* package private */
+    synchronized boolean isDue(final long processId) {
+        long elapsed = nanoClock.getAsLong() - startNanos;
+        if (elapsed >= warmUpNanos) {
+            return true;
+        }
+        // Spreads consecutive process ids evenly (golden ratio)
+        long offset = Long.remainderUnsigned(processId * 0x9E3779B97F4A7C15L, warmUpNanos);
+        return elapsed >= offset;
+    }
+
+    /**
+     * @return fraction (0.1 to 1.0) of full rate, at this point of warm-up
+     */
+    /* package private */
+    synchronized double fraction() {
+        return fraction(nanoClock.getAsLong());
+    }
+
+    private double fraction(final long now) {
+        long elapsed = now - startNanos;
+        if (elapsed >= warmUpNanos) {
+            return 1.0;
+        }
+        return INITIAL_FRACTION + (1.0 - INITIAL_FRACTION) * ((double) elapsed / warmUpNanos);
+    }
+
+    /**
+     * Takes a token from the bucket, waiting for a token if needed (but not beyond deadline).
+     * Tokens are not needed after warm-up.
+     * @param deadline latest point in time (as of {@link System#currentTimeMillis()}) to wait until
+     * @return true if a token was taken (or not needed), false if deadline would be passed (or if interrupted)
+     */
+    /* package private */
+    boolean acquire(final long deadline) {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = nanoClock.getAsLong();
+                if (now - startNanos >= warmUpNanos) {
+                    return true;
+                }
+
+                // At most a second's worth of tokens are saved up
+                double rate = tasksPerSecond * fraction(now);
+                tokens = Math.min(Math.max(1.0, rate), tokens + rate * (now - refilledNanos) / 1e9);
+                refilledNanos = now;
+
+                if (tokens >= 1.0) {
+                    tokens -= 1.0;
+                    return true;
+                }
+                waitNanos = (long) Math.ceil((1.0 - tokens) / rate * 1e9);
+            }
+
+            long waitMillis = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            if (System.currentTimeMillis() + waitMillis > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
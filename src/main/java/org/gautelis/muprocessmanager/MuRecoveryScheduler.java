@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orders recovery tasks by priority, so that compensating stuck processes does not have to wait
+ * behind (possibly a lot of) housekeeping.
+ * <p>
+ * Tasks are held in separate lanes, one per kind of recovery. The work queue is handed
+ * {@link #runNext() tokens} rather than the tasks themselves, one token per task, and each token
+ * runs whichever task is next in turn when the token itself is run. Lanes take turns in proportion
+ * to their weights (smooth weighted round robin), but a task that has waited longer than a maximum
+ * wait is run before anything else so that no lane starves.
+ */
+/* package private */ final class MuRecoveryScheduler {
+
+    /* package private */
+    enum Lane {
+        STUCK,          // compensating stuck PROGRESSING processes
+        RECOMPENSATION, // re-compensating COMPENSATION_FAILED processes
+        ABANDONMENT,    // abandoning COMPENSATION_FAILED processes
+        RETENTION       // removing retired (and stuck NEW) processes
+    }
+
+    private static final class Entry {
+        private final Runnable task;
+        private final Runnable onDrop;
+        private final long enqueued = System.nanoTime();
+
+        private Entry(final Runnable task, final Runnable onDrop) {
+            this.task = task;
+            this.onDrop = onDrop;
+        }
+    }
+
+    private final int[] weights;
+    private final long maxWaitNanos;
+
+    // All guarded by 'this'
+    private final List<Deque<Entry>> lanes;
+    private final int[] currentWeights;
+
+    /* package private */
+    MuRecoveryScheduler(final int[] weights /* per lane */, final long maxWaitMillis /* 0 means no aging */) {
+        Objects.requireNonNull(weights, "weights");
+        if (weights.length != Lane.values().length) {
+            throw new IllegalArgumentException("Expected " + Lane.values().length + " weights, got " + weights.length);
+        }
+
+        this.weights = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            this.weights[i] = Math.max(0, weights[i]);
+        }
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, maxWaitMillis));
+
+        lanes = new ArrayList<>(weights.length);
+        for (int i = 0; i < weights.length; i++) {
+            lanes.add(new ArrayDeque<>());
+        }
+        currentWeights = new int[weights.length];
+    }
+
+    /**
+     * Adds task to lane. A token, i.e. {@link #runNext()}, has to be handed to the work queue for each added task.
+     * @param lane lane of task
+     * @param task the task
+     * @param onDrop run instead of task, if the task is {@link #dropOne() dropped} or {@link #clear() cleared}
+     */
+    /* package private */
+    synchronized void add(final Lane lane, final Runnable task, final Runnable onDrop) {
+        lanes.get(lane.ordinal()).addLast(new Entry(task, onDrop));
+    }
+
+    /**
+     * Runs next task in turn, if any. This is the token handed to the work queue.
+     */
+    /* package private */
+    void runNext() {
+        Entry entry;
+        synchronized (this) {
+            entry = next();
+        }
+        if (null != entry) {
+            entry.task.run();
+        }
+    }
+
+    /**
+     * Drops one task, when a token could not be handed to the work queue. The most recently
+     * added task in the lane of lowest priority is dropped (which need not be the task just added,
+     * since a token already in the work queue may have picked that one up).
+     */
+    /* package private */
+    void dropOne() {
+        Entry dropped = null;
+        synchronized (this) {
+            for (int i = lanes.size() - 1; i >= 0 && null == dropped; i--) {
+                dropped = lanes.get(i).pollLast();
+            }
+        }
+        if (null != dropped) {
+            dropped.onDrop.run();
+        }
+    }
+
+    /**
+     * Drops all tasks, i.e. when the work queue (and thus the tokens) have been discarded.
+     */
+    /* package private */
+    void clear() {
+        Deque<Entry> dropped = new ArrayDeque<>();
+        synchronized (this) {
+            for (int i = 0; i < lanes.size(); i++) {
+                dropped.addAll(lanes.get(i));
+                lanes.get(i).clear();
+                currentWeights[i] = 0;
+            }
+        }
+        dropped.forEach(entry -> entry.onDrop.run());
+    }
+
+    /* package private */
+    synchronized int size(final Lane lane) {
+        return lanes.get(lane.ordinal()).size();
+    }
+
+    private Entry next() {
+        // Any task having waited too long goes first, oldest first
+        int oldest = -1;
+        long oldestEnqueued = 0L;
+        for (int i = 0; i < lanes.size(); i++) {
+            Entry head = lanes.get(i).peekFirst();
+            if (null != head && (oldest < 0 || head.enqueued - oldestEnqueued < 0)) {
+                oldest = i;
+                oldestEnqueued = head.enqueued;
+            }
+        }
+        if (oldest < 0) {
+            return null; // all lanes are empty
+        }
+        if (maxWaitNanos > 0L && System.nanoTime() - oldestEnqueued > maxWaitNanos) {
+            return lanes.get(oldest).pollFirst();
+        }
+
+        // Otherwise lanes (having tasks) take turns according to weight
+        int selected = -1;
+        int total = 0;
+        for (int i = 0; i < lanes.size(); i++) {
+            if (lanes.get(i).isEmpty() || 0 == weights[i]) {
+                continue;
+            }
+            currentWeights[i] += weights[i];
+            total += weights[i];
+            if (selected < 0 || currentWeights[i] > currentWeights[selected]) {
+                selected = i;
+            }
+        }
+        if (selected < 0) {
+            // Only lanes without weight have tasks
+            return lanes.get(oldest).pollFirst();
+        }
+        currentWeights[selected] -= total;
+        return lanes.get(selected).pollFirst();
+    }
+}
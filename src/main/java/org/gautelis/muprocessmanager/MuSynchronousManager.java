@@ -63,6 +63,41 @@ public interface MuSynchronousManager {
      */
     MuProcess newProcess(final String correlationId, boolean acceptCompensationFailure);
 
+    /**
+     * Creates a new persisted process, a process that handles activities with compensations that are
+     * persisted to database, with an explicit {@link MuProcessDurability durability} of the compensations.
+     * <p>
+     * A process with {@link MuProcessDurability#WRITE_BEHIND} durability does not wait for compensations to
+     * be written to database before running activities, trading a short window of possible loss of compensations
+     * (should the process manager die abruptly) for lower latency. Otherwise as
+     * {@link MuSynchronousManager#newProcess(String)}.
+     * <p>
+     * Implementations not supporting durabilities other than {@link MuProcessDurability#DURABLE} may rely on
+     * this default, which ignores durability.
+     *
+     * @param correlationId a correlation ID identifying the business request.
+     * @param durability durability of compensations (on a per process basis).
+     * @return a persisted {@link MuProcess}
+     */
+    default MuProcess newProcess(final String correlationId, MuProcessDurability durability) {
+        return newProcess(correlationId);
+    }
+
+    /**
+     * Creates a new persisted process, a process that handles activities with compensations that are
+     * persisted to database, with an explicit {@link MuProcessDurability durability} of the compensations.
+     * Otherwise as {@link MuSynchronousManager#newProcess(String, boolean)}, to which this default
+     * delegates (ignoring durability).
+     *
+     * @param correlationId a correlation ID identifying the business request.
+     * @param acceptCompensationFailure indicate (on a per process basis) whether re-compensation is allowed.
+     * @param durability durability of compensations (on a per process basis).
+     * @return a persisted {@link MuProcess}
+     */
+    default MuProcess newProcess(final String correlationId, boolean acceptCompensationFailure, MuProcessDurability durability) {
+        return newProcess(correlationId, acceptCompensationFailure);
+    }
+
     /**
      * Retrieves process state ({@link MuProcessState}) for a process, identified by correlation ID.
      * {@link MuProcessState} is available for a time period after the corresponding {@link MuProcess}
@@ -54,7 +54,16 @@ public class MuSynchronousManagerImpl implements MuSynchronousManager {
         assumeNativeProcessDataFlow = policy.assumeNativeProcessDataFlow();
         onlyCompensateIfTransactionWasSuccessful = policy.onlyCompensateIfTransactionWasSuccessful();
 
-        compensationLog = new MuPersistentLog(dataSource, sqlStatements, assumeNativeProcessDataFlow);
+        compensationLog = new MuPersistentLog(dataSource, sqlStatements, policy);
+    }
+
+    /**
+     * Stops background activities of the compensation log used by processes, e.g. writes
+     * queued for group commit are written.
+     */
+    /* package private */
+    void stop() {
+        compensationLog.stop();
     }
 
     /**
@@ -113,6 +122,43 @@ public class MuSynchronousManagerImpl implements MuSynchronousManager {
         );
     }
 
+    /**
+     * Creates a new persisted process, a process that handles activities with compensations that are
+     * persisted to database, with an explicit {@link MuProcessDurability durability} of the compensations.
+     * <p>
+     * A process with {@link MuProcessDurability#WRITE_BEHIND} durability does not wait for compensations to
+     * be written to database before running activities, trading a short window of possible loss of compensations
+     * (should the process manager die abruptly) for lower latency. Otherwise as
+     * {@link MuSynchronousManagerImpl#newProcess(String)}.
+     *
+     * @param correlationId a correlation ID identifying the business request.
+     * @param durability durability of compensations (on a per process basis).
+     * @return a persisted {@link MuProcess}
+     */
+    public MuProcess newProcess(final String correlationId, MuProcessDurability durability) {
+        return newProcess(correlationId, acceptCompensationFailure, durability);
+    }
+
+    /**
+     * Creates a new persisted process, a process that handles activities with compensations that are
+     * persisted to database, with an explicit {@link MuProcessDurability durability} of the compensations.
+     * Otherwise as {@link MuSynchronousManagerImpl#newProcess(String, boolean)}.
+     *
+     * @param correlationId a correlation ID identifying the business request.
+     * @param acceptCompensationFailure indicate (on a per process basis) whether re-compensation is allowed.
+     * @param durability durability of compensations (on a per process basis).
+     * @return a persisted {@link MuProcess}
+     */
+    public MuProcess newProcess(final String correlationId, boolean acceptCompensationFailure, MuProcessDurability durability) {
+        return new MuProcess(
+                correlationId, compensationLog,
+                acceptCompensationFailure,
+                assumeNativeProcessDataFlow,
+                onlyCompensateIfTransactionWasSuccessful,
+                durability
+        );
+    }
+
     /**
      * Retrieves process state ({@link MuProcessState}) for a process, identified by correlation ID.
      * {@link MuProcessState} is available for a time period after the corresponding {@link MuProcess}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import org.gautelis.vopn.queue.WorkQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link WorkQueue} running every task on a thread of its own, preferably a virtual thread
+ * (Java 21 or later), with a cap on the number of tasks running at a time.
+ * <p>
+ * Tasks waiting for their turn are held by their (parked) threads, rather than in a queue, so
+ * a task blocked on the database or on a slow compensation does not hold up tasks beyond the cap.
+ * Tasks are let in, in order of submission, as running tasks finish. The number of waiting tasks
+ * may be bounded, in which case the {@link ExecutorWorkQueue.OverflowPolicy overflow policy}
+ * determines what happens to tasks that do not fit, just as with {@link ExecutorWorkQueue}.
+ * <p>
+ * If virtual threads are not available (before Java 21), tasks are instead run by a fixed pool of
+ * platform threads, one per running task, through an {@link ExecutorWorkQueue} having the same
+ * capacity and overflow policy -- so waiting tasks are then held in a queue rather than by threads.
+ */
+public class VirtualThreadWorkQueue implements WorkQueue {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadWorkQueue.class);
+
+    private static final String DEFAULT_THREAD_NAME_PREFIX = "org.gautelis.muprocessmanager.virtual";
+    private static final int DEFAULT_WAITING_PER_RUNNING = 64;
+
+    private final ThreadFactory threadFactory; // null if virtual threads are not available
+    private final ExecutorWorkQueue platformThreads; // used if virtual threads are not available
+    private final Semaphore permits; // fair, so that tasks are let in in order of submission
+    private final int capacity;
+    private final ExecutorWorkQueue.OverflowPolicy overflowPolicy;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong discardedCount = new AtomicLong();
+
+    // Threads of tasks waiting or running, interrupted on stop
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    private final Object lock = new Object();
+    private int waiting = 0; // guarded by lock
+    private boolean stopped = false; // guarded by lock
+
+    public VirtualThreadWorkQueue(int maxRunning) {
+        this(maxRunning, DEFAULT_THREAD_NAME_PREFIX);
+    }
+
+    public VirtualThreadWorkQueue(int maxRunning, String threadNamePrefix) {
+        this(
+                maxRunning, threadNamePrefix,
+                DEFAULT_WAITING_PER_RUNNING * Math.max(1, maxRunning), ExecutorWorkQueue.OverflowPolicy.BLOCK
+        );
+    }
+
+    /**
+     * @param maxRunning maximum number of tasks running at a time
+     * @param threadNamePrefix prefix of thread names
+     * @param capacity maximum number of waiting (not yet running) tasks, 0 means unbounded
+     * @param overflowPolicy what happens to tasks that do not fit when bounded
+     */
+    public VirtualThreadWorkQueue(
+            int maxRunning, String threadNamePrefix, int capacity, ExecutorWorkQueue.OverflowPolicy overflowPolicy
+    ) {
+        Objects.requireNonNull(threadNamePrefix, "threadNamePrefix");
+        Objects.requireNonNull(overflowPolicy, "overflowPolicy");
+
+        this.permits = new Semaphore(Math.max(1, maxRunning), /* fair */ true);
+        this.capacity = Math.max(0, capacity);
+        this.overflowPolicy = overflowPolicy;
+
+        threadFactory = virtualThreadFactory(threadNamePrefix);
+        if (null == threadFactory) {
+            log.info("Virtual threads are not available, falling back on {} platform threads", Math.max(1, maxRunning));
+            platformThreads = new ExecutorWorkQueue(Math.max(1, maxRunning), threadNamePrefix, this.capacity, overflowPolicy);
+        } else {
+            platformThreads = null;
+        }
+    }
+
+    /*
+     * Thread.ofVirtual().name(prefix, 1).factory(), if available. Looked up reflectively since we
+     * are compiled for Java 8.
+     */
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.trace("No virtual threads: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void start() {
+        if (null != platformThreads) {
+            platformThreads.start();
+            return;
+        }
+
+        // Threads are created as tasks are submitted
+        log.trace("Starting virtual thread work queue...");
+    }
+
+    @Override
+    public void stop() {
+        if (null != platformThreads) {
+            platformThreads.stop();
+            return;
+        }
+
+        log.trace("Stopping virtual thread work queue...");
+        int discarded;
+        synchronized (lock) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            discarded = waiting; // will not run
+            lock.notifyAll();
+        }
+        discardedCount.addAndGet(discarded);
+        threads.forEach(Thread::interrupt);
+        log.debug("Virtual thread work queue stopped, discarding {} waiting tasks", discarded);
+    }
+
+    @Override
+    public boolean execute(Runnable t) {
+        Objects.requireNonNull(t, "t");
+        if (null != platformThreads) {
+            return platformThreads.execute(t);
+        }
+
+        boolean callerRuns = false;
+        Thread thread = null;
+        synchronized (lock) {
+            while (!stopped && capacity > 0 && waiting >= capacity) {
+                if (ExecutorWorkQueue.OverflowPolicy.DROP == overflowPolicy) {
+                    droppedCount.incrementAndGet();
+                    // Expected to be rediscovered by the producer, so not worth a warning
+                    log.trace("Dropped work queue task: Work queue is full");
+                    return false;
+                }
+                if (ExecutorWorkQueue.OverflowPolicy.CALLER_RUNS == overflowPolicy) {
+                    callerRuns = true;
+                    break;
+                }
+
+                // Block until there is room
+                try {
+                    lock.wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Rejected work queue task: Interrupted while waiting for room in work queue");
+                    return false;
+                }
+            }
+            if (stopped) {
+                return false;
+            }
+
+            if (!callerRuns) {
+                waiting++;
+                thread = threadFactory.newThread(() -> run(t));
+                threads.add(thread);
+            }
+        }
+
+        if (callerRuns) {
+            t.run();
+        } else {
+            thread.start();
+        }
+        return true;
+    }
+
+    private void run(Runnable t) {
+        try {
+            boolean acquired = false;
+            try {
+                permits.acquire();
+                acquired = true;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+
+            synchronized (lock) {
+                waiting--;
+                lock.notifyAll();
+
+                if (stopped || !acquired) {
+                    if (acquired) {
+                        permits.release();
+                    }
+                    if (!stopped) {
+                        // Interrupted while waiting, by someone else than stop()
+                        discardedCount.incrementAndGet();
+                        log.debug("Discarded waiting task: Interrupted while waiting to run");
+                    }
+                    return; // if stopped, task was counted as discarded by stop()
+                }
+            }
+
+            try {
+                t.run();
+
+            } catch (RuntimeException re) {
+                log.warn("Failed to run queued task: {}", re.getMessage(), re);
+
+            } finally {
+                permits.release();
+            }
+        } finally {
+            threads.remove(Thread.currentThread());
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (null != platformThreads) {
+            return platformThreads.isEmpty();
+        }
+        return 0L == size();
+    }
+
+    /**
+     * @return number of waiting (not yet running) tasks, 0 once stopped.
+     */
+    @Override
+    public long size() {
+        if (null != platformThreads) {
+            return platformThreads.size();
+        }
+        synchronized (lock) {
+            return stopped ? 0L : waiting;
+        }
+    }
+
+    /**
+     * @return number of tasks dropped (since the queue was full) when having
+     * {@link ExecutorWorkQueue.OverflowPolicy#DROP DROP} overflow policy.
+     */
+    public long getDroppedCount() {
+        if (null != platformThreads) {
+            return platformThreads.getDroppedCount();
+        }
+        return droppedCount.get();
+    }
+
+    /**
+     * @return number of waiting (not yet running) tasks discarded, i.e. when the queue was stopped.
+     */
+    public long getDiscardedCount() {
+        if (null != platformThreads) {
+            return platformThreads.getDiscardedCount();
+        }
+        return discardedCount.get();
+    }
+
+    /**
+     * @return whether tasks run on virtual threads, rather than on platform threads.
+     */
+    public boolean usesVirtualThreads() {
+        return null == platformThreads;
+    }
+}
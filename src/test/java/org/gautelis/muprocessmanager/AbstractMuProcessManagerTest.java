@@ -17,14 +17,20 @@
  */
 package org.gautelis.muprocessmanager;
 
+import org.gautelis.muprocessmanager.payload.MuNativeActivityParameters;
 import org.gautelis.vopn.queue.WorkQueue;
 import org.junit.After;
 import org.junit.Before;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -191,6 +197,51 @@ abstract class AbstractMuProcessManagerTest {
         private boolean onlyCompensateIfTransactionWasSuccessful = false;
         private int numberOfRecoveryThreads = 1;
         private boolean assumeNativeProcessDataFlow = true;
+        private boolean holdConnectionForProcessLifecycle = false;
+        private int secondsBeforeReleasingIdleProcessConnection = 60;
+        private boolean foldProcessHeaderIntoFirstStep = false;
+        private int secondsBetweenProcessHeartbeats = 0;
+        private boolean deferStepOutcomeMarking = false;
+        private boolean groupCommitCompensationLog = false;
+        private int groupCommitMaxBatchSize = 64;
+        private int groupCommitMaxWaitMicroseconds = 500;
+        private boolean writeBehindCompensationLog = false;
+        private int writeBehindBufferSize = 8192;
+        private int processIdBlockSize = 0;
+        private int recoveryPageSize = 1000;
+        private int recoveryFetchSize = 200;
+        private int recoveryQueueCapacity = 4096;
+        private String recoveryQueueOverflowPolicy = "block";
+        private int recoveryWeightStuck = 8;
+        private int recoveryWeightRecompensation = 4;
+        private int recoveryWeightAbandonment = 2;
+        private int recoveryWeightRetention = 1;
+        private int secondsBeforePrioritizingWaitingRecovery = 60;
+        private int maxSecondsBetweenRecompensationAttempts = 3600;
+        private boolean bulkPurgeRetiredProcesses = false;
+        private int purgeChunkSize = 5000;
+        private int millisecondsBetweenPurgeChunks = 100;
+        private boolean partitionedProcessStorage = false;
+        private int processesPerPartition = 1000000;
+        private boolean claimRecoveryLeases = false;
+        private int secondsOfRecoveryLease = 300;
+        private boolean electRecoveryLeader = false;
+        private int secondsOfLeaderLease = 30;
+        private int recoveryShardCount = 1;
+        private int recoveryShardIndex = 0;
+        private boolean useVirtualRecoveryThreads = false;
+        private int maxRecoveryConnections = 32;
+        private int secondsOfRecoveryWarmUp = 0;
+        private int warmUpRecoveryTasksPerSecond = 200;
+        private boolean adaptRecoveryConcurrency = false;
+        private int minRecoveryConcurrency = 1;
+        private int maxRecoveryConcurrency = 16;
+        private boolean breakFailingCompensations = false;
+        private int compensationFailuresBeforeBreaking = 5;
+        private int secondsBeforeProbingBrokenCompensation = 60;
+        private int maxConcurrentCompensationsPerClass = 0;
+        private boolean batchRecoveryStepFetch = false;
+        private int recoveryStepBatchSize = 100;
 
         TestPolicyBuilder minutesToTrackProcess(int value) {
             minutesToTrackProcess = value;
@@ -237,6 +288,231 @@ abstract class AbstractMuProcessManagerTest {
             return this;
         }
 
+        TestPolicyBuilder holdConnectionForProcessLifecycle(boolean value) {
+            holdConnectionForProcessLifecycle = value;
+            return this;
+        }
+
+        TestPolicyBuilder secondsBeforeReleasingIdleProcessConnection(int value) {
+            secondsBeforeReleasingIdleProcessConnection = value;
+            return this;
+        }
+
+        TestPolicyBuilder foldProcessHeaderIntoFirstStep(boolean value) {
+            foldProcessHeaderIntoFirstStep = value;
+            return this;
+        }
+
+        TestPolicyBuilder secondsBetweenProcessHeartbeats(int value) {
+            secondsBetweenProcessHeartbeats = value;
+            return this;
+        }
+
+        TestPolicyBuilder deferStepOutcomeMarking(boolean value) {
+            deferStepOutcomeMarking = value;
+            return this;
+        }
+
+        TestPolicyBuilder groupCommitCompensationLog(boolean value) {
+            groupCommitCompensationLog = value;
+            return this;
+        }
+
+        TestPolicyBuilder groupCommitMaxBatchSize(int value) {
+            groupCommitMaxBatchSize = value;
+            return this;
+        }
+
+        TestPolicyBuilder groupCommitMaxWaitMicroseconds(int value) {
+            groupCommitMaxWaitMicroseconds = value;
+            return this;
+        }
+
+        TestPolicyBuilder writeBehindCompensationLog(boolean value) {
+            writeBehindCompensationLog = value;
+            return this;
+        }
+
+        TestPolicyBuilder writeBehindBufferSize(int value) {
+            writeBehindBufferSize = value;
+            return this;
+        }
+
+        TestPolicyBuilder processIdBlockSize(int value) {
+            processIdBlockSize = value;
+            return this;
+        }
+
+        TestPolicyBuilder recoveryPageSize(int value) {
+            recoveryPageSize = value;
+            return this;
+        }
+
+        TestPolicyBuilder recoveryFetchSize(int value) {
+            recoveryFetchSize = value;
+            return this;
+        }
+
+        TestPolicyBuilder recoveryQueueCapacity(int value) {
+            recoveryQueueCapacity = value;
+            return this;
+        }
+
+        TestPolicyBuilder recoveryQueueOverflowPolicy(String value) {
+            recoveryQueueOverflowPolicy = value;
+            return this;
+        }
+
+        TestPolicyBuilder recoveryWeightStuck(int value) {
+            recoveryWeightStuck = value;
+            return this;
+        }
+
+        TestPolicyBuilder recoveryWeightRecompensation(int value) {
+            recoveryWeightRecompensation = value;
+            return this;
+        }
+
+        TestPolicyBuilder recoveryWeightAbandonment(int value) {
+            recoveryWeightAbandonment = value;
+            return this;
+        }
+
+        TestPolicyBuilder recoveryWeightRetention(int value) {
+            recoveryWeightRetention = value;
+            return this;
+        }
+
+        TestPolicyBuilder secondsBeforePrioritizingWaitingRecovery(int value) {
+            secondsBeforePrioritizingWaitingRecovery = value;
+            return this;
+        }
+
+        TestPolicyBuilder maxSecondsBetweenRecompensationAttempts(int value) {
+            maxSecondsBetweenRecompensationAttempts = value;
+            return this;
+        }
+
+        TestPolicyBuilder bulkPurgeRetiredProcesses(boolean value) {
+            bulkPurgeRetiredProcesses = value;
+            return this;
+        }
+
+        TestPolicyBuilder purgeChunkSize(int value) {
+            purgeChunkSize = value;
+            return this;
+        }
+
+        TestPolicyBuilder millisecondsBetweenPurgeChunks(int value) {
+            millisecondsBetweenPurgeChunks = value;
+            return this;
+        }
+
+        TestPolicyBuilder partitionedProcessStorage(boolean value) {
+            partitionedProcessStorage = value;
+            return this;
+        }
+
+        TestPolicyBuilder processesPerPartition(int value) {
+            processesPerPartition = value;
+            return this;
+        }
+
+        TestPolicyBuilder claimRecoveryLeases(boolean value) {
+            claimRecoveryLeases = value;
+            return this;
+        }
+
+        TestPolicyBuilder secondsOfRecoveryLease(int value) {
+            secondsOfRecoveryLease = value;
+            return this;
+        }
+
+        TestPolicyBuilder electRecoveryLeader(boolean value) {
+            electRecoveryLeader = value;
+            return this;
+        }
+
+        TestPolicyBuilder secondsOfLeaderLease(int value) {
+            secondsOfLeaderLease = value;
+            return this;
+        }
+
+        TestPolicyBuilder recoveryShardCount(int value) {
+            recoveryShardCount = value;
+            return this;
+        }
+
+        TestPolicyBuilder recoveryShardIndex(int value) {
+            recoveryShardIndex = value;
+            return this;
+        }
+
+        TestPolicyBuilder useVirtualRecoveryThreads(boolean value) {
+            useVirtualRecoveryThreads = value;
+            return this;
+        }
+
+        TestPolicyBuilder maxRecoveryConnections(int value) {
+            maxRecoveryConnections = value;
+            return this;
+        }
+
+        TestPolicyBuilder secondsOfRecoveryWarmUp(int value) {
+            secondsOfRecoveryWarmUp = value;
+            return this;
+        }
+
+        TestPolicyBuilder warmUpRecoveryTasksPerSecond(int value) {
+            warmUpRecoveryTasksPerSecond = value;
+            return this;
+        }
+
+        TestPolicyBuilder adaptRecoveryConcurrency(boolean value) {
+            adaptRecoveryConcurrency = value;
+            return this;
+        }
+
+        TestPolicyBuilder minRecoveryConcurrency(int value) {
+            minRecoveryConcurrency = value;
+            return this;
+        }
+
+        TestPolicyBuilder maxRecoveryConcurrency(int value) {
+            maxRecoveryConcurrency = value;
+            return this;
+        }
+
+        TestPolicyBuilder breakFailingCompensations(boolean value) {
+            breakFailingCompensations = value;
+            return this;
+        }
+
+        TestPolicyBuilder compensationFailuresBeforeBreaking(int value) {
+            compensationFailuresBeforeBreaking = value;
+            return this;
+        }
+
+        TestPolicyBuilder secondsBeforeProbingBrokenCompensation(int value) {
+            secondsBeforeProbingBrokenCompensation = value;
+            return this;
+        }
+
+        TestPolicyBuilder maxConcurrentCompensationsPerClass(int value) {
+            maxConcurrentCompensationsPerClass = value;
+            return this;
+        }
+
+        TestPolicyBuilder batchRecoveryStepFetch(boolean value) {
+            batchRecoveryStepFetch = value;
+            return this;
+        }
+
+        TestPolicyBuilder recoveryStepBatchSize(int value) {
+            recoveryStepBatchSize = value;
+            return this;
+        }
+
         MuProcessManagementPolicy build() {
             return new MuProcessManagementPolicy() {
                 @Override
@@ -283,6 +559,231 @@ abstract class AbstractMuProcessManagerTest {
                 public boolean assumeNativeProcessDataFlow() {
                     return assumeNativeProcessDataFlow;
                 }
+
+                @Override
+                public boolean holdConnectionForProcessLifecycle() {
+                    return holdConnectionForProcessLifecycle;
+                }
+
+                @Override
+                public int secondsBeforeReleasingIdleProcessConnection() {
+                    return secondsBeforeReleasingIdleProcessConnection;
+                }
+
+                @Override
+                public boolean foldProcessHeaderIntoFirstStep() {
+                    return foldProcessHeaderIntoFirstStep;
+                }
+
+                @Override
+                public int secondsBetweenProcessHeartbeats() {
+                    return secondsBetweenProcessHeartbeats;
+                }
+
+                @Override
+                public boolean deferStepOutcomeMarking() {
+                    return deferStepOutcomeMarking;
+                }
+
+                @Override
+                public boolean groupCommitCompensationLog() {
+                    return groupCommitCompensationLog;
+                }
+
+                @Override
+                public int groupCommitMaxBatchSize() {
+                    return groupCommitMaxBatchSize;
+                }
+
+                @Override
+                public int groupCommitMaxWaitMicroseconds() {
+                    return groupCommitMaxWaitMicroseconds;
+                }
+
+                @Override
+                public boolean writeBehindCompensationLog() {
+                    return writeBehindCompensationLog;
+                }
+
+                @Override
+                public int writeBehindBufferSize() {
+                    return writeBehindBufferSize;
+                }
+
+                @Override
+                public int processIdBlockSize() {
+                    return processIdBlockSize;
+                }
+
+                @Override
+                public int recoveryPageSize() {
+                    return recoveryPageSize;
+                }
+
+                @Override
+                public int recoveryFetchSize() {
+                    return recoveryFetchSize;
+                }
+
+                @Override
+                public int recoveryQueueCapacity() {
+                    return recoveryQueueCapacity;
+                }
+
+                @Override
+                public String recoveryQueueOverflowPolicy() {
+                    return recoveryQueueOverflowPolicy;
+                }
+
+                @Override
+                public int recoveryWeightStuck() {
+                    return recoveryWeightStuck;
+                }
+
+                @Override
+                public int recoveryWeightRecompensation() {
+                    return recoveryWeightRecompensation;
+                }
+
+                @Override
+                public int recoveryWeightAbandonment() {
+                    return recoveryWeightAbandonment;
+                }
+
+                @Override
+                public int recoveryWeightRetention() {
+                    return recoveryWeightRetention;
+                }
+
+                @Override
+                public int secondsBeforePrioritizingWaitingRecovery() {
+                    return secondsBeforePrioritizingWaitingRecovery;
+                }
+
+                @Override
+                public int maxSecondsBetweenRecompensationAttempts() {
+                    return maxSecondsBetweenRecompensationAttempts;
+                }
+
+                @Override
+                public boolean bulkPurgeRetiredProcesses() {
+                    return bulkPurgeRetiredProcesses;
+                }
+
+                @Override
+                public int purgeChunkSize() {
+                    return purgeChunkSize;
+                }
+
+                @Override
+                public int millisecondsBetweenPurgeChunks() {
+                    return millisecondsBetweenPurgeChunks;
+                }
+
+                @Override
+                public boolean partitionedProcessStorage() {
+                    return partitionedProcessStorage;
+                }
+
+                @Override
+                public int processesPerPartition() {
+                    return processesPerPartition;
+                }
+
+                @Override
+                public boolean claimRecoveryLeases() {
+                    return claimRecoveryLeases;
+                }
+
+                @Override
+                public int secondsOfRecoveryLease() {
+                    return secondsOfRecoveryLease;
+                }
+
+                @Override
+                public boolean electRecoveryLeader() {
+                    return electRecoveryLeader;
+                }
+
+                @Override
+                public int secondsOfLeaderLease() {
+                    return secondsOfLeaderLease;
+                }
+
+                @Override
+                public int recoveryShardCount() {
+                    return recoveryShardCount;
+                }
+
+                @Override
+                public int recoveryShardIndex() {
+                    return recoveryShardIndex;
+                }
+
+                @Override
+                public boolean useVirtualRecoveryThreads() {
+                    return useVirtualRecoveryThreads;
+                }
+
+                @Override
+                public int maxRecoveryConnections() {
+                    return maxRecoveryConnections;
+                }
+
+                @Override
+                public int secondsOfRecoveryWarmUp() {
+                    return secondsOfRecoveryWarmUp;
+                }
+
+                @Override
+                public int warmUpRecoveryTasksPerSecond() {
+                    return warmUpRecoveryTasksPerSecond;
+                }
+
+                @Override
+                public boolean adaptRecoveryConcurrency() {
+                    return adaptRecoveryConcurrency;
+                }
+
+                @Override
+                public int minRecoveryConcurrency() {
+                    return minRecoveryConcurrency;
+                }
+
+                @Override
+                public int maxRecoveryConcurrency() {
+                    return maxRecoveryConcurrency;
+                }
+
+                @Override
+                public boolean breakFailingCompensations() {
+                    return breakFailingCompensations;
+                }
+
+                @Override
+                public int compensationFailuresBeforeBreaking() {
+                    return compensationFailuresBeforeBreaking;
+                }
+
+                @Override
+                public int secondsBeforeProbingBrokenCompensation() {
+                    return secondsBeforeProbingBrokenCompensation;
+                }
+
+                @Override
+                public int maxConcurrentCompensationsPerClass() {
+                    return maxConcurrentCompensationsPerClass;
+                }
+
+                @Override
+                public boolean batchRecoveryStepFetch() {
+                    return batchRecoveryStepFetch;
+                }
+
+                @Override
+                public int recoveryStepBatchSize() {
+                    return recoveryStepBatchSize;
+                }
             };
         }
     }
@@ -301,6 +802,67 @@ abstract class AbstractMuProcessManagerTest {
         }
     }
 
+    public static class BackwardFailFirstCalls implements MuBackwardBehaviour {
+        static final AtomicInteger FAILURES_LEFT = new AtomicInteger();
+
+        static void failFirst(int calls) {
+            FAILURES_LEFT.set(calls);
+        }
+
+        @Override
+        public boolean backward(MuBackwardActivityContext context) {
+            return FAILURES_LEFT.getAndDecrement() <= 0;
+        }
+    }
+
+    public static class BackwardBlockingCounter implements MuBackwardBehaviour {
+        static final AtomicInteger CALLS = new AtomicInteger();
+        static final AtomicInteger RUNNING = new AtomicInteger();
+        static final AtomicInteger MAX_RUNNING = new AtomicInteger();
+        static volatile CountDownLatch started = new CountDownLatch(1);
+        static volatile CountDownLatch release = new CountDownLatch(0);
+
+        static void reset() {
+            CALLS.set(0);
+            RUNNING.set(0);
+            MAX_RUNNING.set(0);
+            started = new CountDownLatch(1);
+            release = new CountDownLatch(1);
+        }
+
+        @Override
+        public boolean backward(MuBackwardActivityContext context) {
+            CALLS.incrementAndGet();
+            MAX_RUNNING.accumulateAndGet(RUNNING.incrementAndGet(), Math::max);
+            try {
+                started.countDown();
+                return release.await(DEFAULT_AWAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                RUNNING.decrementAndGet();
+            }
+        }
+    }
+
+    public static class BackwardRecordingParameters implements MuBackwardBehaviour {
+        static final List<String> ACTIVITY_STEPS = Collections.synchronizedList(new ArrayList<>());
+        static final List<String> ORCHESTRATION_STEPS = Collections.synchronizedList(new ArrayList<>());
+
+        static void reset() {
+            ACTIVITY_STEPS.clear();
+            ORCHESTRATION_STEPS.clear();
+        }
+
+        @Override
+        public boolean backward(MuBackwardActivityContext context) {
+            ACTIVITY_STEPS.add(String.valueOf(((MuNativeActivityParameters) context.getActivityParameters()).get("step")));
+            ORCHESTRATION_STEPS.add(context.getOrchestrationParameters().map(p -> p.get("step")).orElse(null));
+            return true;
+        }
+    }
+
     public static class BackwardSuccessCounter implements MuBackwardBehaviour {
         static final AtomicInteger CALLS = new AtomicInteger();
 
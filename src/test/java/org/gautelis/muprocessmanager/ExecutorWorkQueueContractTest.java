@@ -19,7 +19,11 @@ package org.gautelis.muprocessmanager;
 
 import org.gautelis.vopn.queue.WorkQueue;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -29,10 +33,51 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+/*
+ * Contract of the recovery work queues, i.e. ExecutorWorkQueue and VirtualThreadWorkQueue.
+ */
+@RunWith(Parameterized.class)
 public class ExecutorWorkQueueContractTest {
+    @FunctionalInterface
+    private interface QueueFactory {
+        WorkQueue create(int nThreads, String threadNamePrefix, int capacity, ExecutorWorkQueue.OverflowPolicy overflowPolicy);
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> queues() {
+        return Arrays.asList(new Object[][] {
+                {"executor", (QueueFactory) ExecutorWorkQueue::new},
+                {"virtual-threads", (QueueFactory) VirtualThreadWorkQueue::new}
+        });
+    }
+
+    private final QueueFactory factory;
+
+    public ExecutorWorkQueueContractTest(String name, Object factory) {
+        this.factory = (QueueFactory) factory;
+    }
+
+    private WorkQueue newQueue(int nThreads) {
+        return factory.create(nThreads, "contract", /* unbounded */ 0, ExecutorWorkQueue.OverflowPolicy.BLOCK);
+    }
+
+    private static long droppedCount(WorkQueue queue) {
+        if (queue instanceof VirtualThreadWorkQueue) {
+            return ((VirtualThreadWorkQueue) queue).getDroppedCount();
+        }
+        return ((ExecutorWorkQueue) queue).getDroppedCount();
+    }
+
+    private static long discardedCount(WorkQueue queue) {
+        if (queue instanceof VirtualThreadWorkQueue) {
+            return ((VirtualThreadWorkQueue) queue).getDiscardedCount();
+        }
+        return ((ExecutorWorkQueue) queue).getDiscardedCount();
+    }
+
     @Test
     public void testQueueRejectsTasksAfterStop() {
-        ExecutorWorkQueue queue = new ExecutorWorkQueue(1);
+        WorkQueue queue = newQueue(1);
         queue.start();
         queue.stop();
 
@@ -47,7 +92,7 @@ public class ExecutorWorkQueueContractTest {
 
     @Test
     public void testQueueDropsQueuedWorkOnStop() throws Exception {
-        ExecutorWorkQueue queue = new ExecutorWorkQueue(1);
+        WorkQueue queue = newQueue(1);
         CountDownLatch started = new CountDownLatch(1);
         CountDownLatch interrupted = new CountDownLatch(1);
         AtomicBoolean secondRan = new AtomicBoolean(false);
@@ -74,21 +119,108 @@ public class ExecutorWorkQueueContractTest {
         assertEquals(0L, queue.size());
         assertTrue(queue.isEmpty());
         assertFalse(secondRan.get());
+        assertEquals(1L, discardedCount(queue));
     }
 
     @Test
     public void testQueueContinuesAfterTaskFailure() throws Exception {
-        withSuppressedUncaughtExceptions(() -> assertQueueSurvivesTaskFailure(new ExecutorWorkQueue(1)));
+        withSuppressedUncaughtExceptions(() -> assertQueueSurvivesTaskFailure(newQueue(1)));
     }
 
     @Test
     public void testStopBeforeStartIsSafe() {
-        ExecutorWorkQueue queue = new ExecutorWorkQueue(1);
+        WorkQueue queue = newQueue(1);
         queue.stop();
         assertEquals(0L, queue.size());
         assertTrue(queue.isEmpty());
     }
 
+    @Test
+    public void testBoundedQueueDropsOverflow() throws Exception {
+        WorkQueue queue = factory.create(1, "drop", 1, ExecutorWorkQueue.OverflowPolicy.DROP);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.start();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            assertTrue(queue.execute(() -> awaitRelease(started, release)));
+            assertTrue(started.await(2, TimeUnit.SECONDS));
+
+            assertTrue(queue.execute(() -> {})); // fits in queue
+            assertFalse(queue.execute(() -> {})); // does not fit
+            assertEquals(1L, queue.size());
+            assertEquals(1L, droppedCount(queue));
+        }
+        finally {
+            release.countDown();
+            queue.stop();
+        }
+    }
+
+    @Test
+    public void testBoundedQueueRunsOverflowInCaller() throws Exception {
+        WorkQueue queue = factory.create(1, "caller-runs", 1, ExecutorWorkQueue.OverflowPolicy.CALLER_RUNS);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.start();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            assertTrue(queue.execute(() -> awaitRelease(started, release)));
+            assertTrue(started.await(2, TimeUnit.SECONDS));
+
+            assertTrue(queue.execute(() -> {})); // fits in queue
+
+            Thread caller = Thread.currentThread();
+            AtomicBoolean ranInCaller = new AtomicBoolean(false);
+            assertTrue(queue.execute(() -> ranInCaller.set(Thread.currentThread() == caller)));
+            assertTrue(ranInCaller.get());
+        }
+        finally {
+            release.countDown();
+            queue.stop();
+        }
+    }
+
+    @Test
+    public void testBoundedQueueBlocksOnOverflow() throws Exception {
+        WorkQueue queue = factory.create(1, "block", 1, ExecutorWorkQueue.OverflowPolicy.BLOCK);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.start();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            assertTrue(queue.execute(() -> awaitRelease(started, release)));
+            assertTrue(started.await(2, TimeUnit.SECONDS));
+
+            assertTrue(queue.execute(() -> {})); // fits in queue
+
+            CountDownLatch ran = new CountDownLatch(1);
+            AtomicBoolean accepted = new AtomicBoolean(false);
+            Thread producer = new Thread(() -> accepted.set(queue.execute(ran::countDown)));
+            producer.start();
+
+            producer.join(200L);
+            assertTrue(producer.isAlive()); // blocked, waiting for room in queue
+
+            release.countDown();
+            producer.join(2000L);
+            assertFalse(producer.isAlive());
+            assertTrue(accepted.get());
+            assertTrue(ran.await(2, TimeUnit.SECONDS));
+        }
+        finally {
+            release.countDown();
+            queue.stop();
+        }
+    }
+
+    private static void awaitRelease(CountDownLatch started, CountDownLatch release) {
+        started.countDown();
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException expected) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static void assertQueueSurvivesTaskFailure(WorkQueue queue) throws Exception {
         CountDownLatch finished = new CountDownLatch(1);
         AtomicInteger calls = new AtomicInteger();
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import org.gautelis.muprocessmanager.payload.MuNativeActivityParameters;
+import org.gautelis.vopn.lang.DynamicLoader;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MuBackwardDispatchTest {
+    private final MuBackwardDispatch dispatch = new MuBackwardDispatch(new DynamicLoader<>("compensation activity"));
+
+    private static final MuBackwardActivityContext CONTEXT = new MuBackwardActivityContext(
+            "correlation-id", /* accept compensation failure? */ true, new MuNativeActivityParameters(), null, null
+    );
+
+    public static class Stateless implements MuBackwardBehaviour {
+        @Override
+        public boolean backward(MuBackwardActivityContext context) {
+            return true;
+        }
+
+        public boolean undo(MuBackwardActivityContext context) {
+            return false;
+        }
+
+        public void notBoolean(MuBackwardActivityContext context) {
+        }
+
+        @Override
+        public String getPersistableMethodName() {
+            return "undo";
+        }
+    }
+
+    public static class Stateful implements MuBackwardBehaviour {
+        private int calls = 0;
+
+        @Override
+        public boolean backward(MuBackwardActivityContext context) {
+            return ++calls == 1;
+        }
+    }
+
+    @Test
+    public void testStatelessInstancesAreShared() throws Exception {
+        assertSame(dispatch.instance(Stateless.class), dispatch.instance(Stateless.class));
+    }
+
+    @Test
+    public void testStatefulInstancesAreNotShared() throws Throwable {
+        MuBackwardBehaviour first = dispatch.instance(Stateful.class);
+        MuBackwardBehaviour second = dispatch.instance(Stateful.class);
+        assertNotSame(first, second);
+
+        MuBackwardDispatch.Invoker invoker = dispatch.invoker(Stateful.class, "backward");
+        assertTrue(invoker.invoke(first, CONTEXT));
+        assertTrue(invoker.invoke(second, CONTEXT));
+    }
+
+    @Test
+    public void testInvokersAreCachedPerMethod() throws Throwable {
+        MuBackwardBehaviour activity = dispatch.instance(Stateless.class);
+
+        MuBackwardDispatch.Invoker backward = dispatch.invoker(Stateless.class, "backward");
+        assertTrue(backward.invoke(activity, CONTEXT));
+
+        MuBackwardDispatch.Invoker undo = dispatch.invoker(Stateless.class, activity.getPersistableMethodName());
+        assertSame(undo, dispatch.invoker(Stateless.class, "undo"));
+        assertFalse(undo.invoke(activity, CONTEXT));
+    }
+
+    @Test
+    public void testMissingMethodIsReported() throws Exception {
+        try {
+            dispatch.invoker(Stateless.class, "redo");
+            fail("Expected missing method to be reported");
+        } catch (NoSuchMethodException expected) {
+        }
+    }
+
+    @Test
+    public void testMethodNotReturningBooleanFailsWhenInvoked() throws Exception {
+        MuBackwardDispatch.Invoker invoker = dispatch.invoker(Stateless.class, "notBoolean");
+        boolean failed = false;
+        try {
+            invoker.invoke(dispatch.instance(Stateless.class), CONTEXT);
+        } catch (Throwable expected) {
+            failed = true;
+        }
+        assertTrue(failed);
+    }
+}
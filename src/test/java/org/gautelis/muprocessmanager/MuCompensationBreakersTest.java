@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MuCompensationBreakersTest {
+    private static final String FAILING = "org.example.FailingCompensation";
+    private static final String HEALTHY = "org.example.HealthyCompensation";
+
+    @Test
+    public void testBreakerOpensAfterConsecutiveFailures() {
+        AtomicLong clock = new AtomicLong(0L);
+        MuCompensationBreakers breakers = new MuCompensationBreakers(3, 60, 0, clock::get);
+
+        // Failures interrupted by a success do not count
+        fail(breakers, FAILING);
+        fail(breakers, FAILING);
+        succeed(breakers, FAILING);
+        fail(breakers, FAILING);
+        fail(breakers, FAILING);
+        assertFalse(breakers.isBroken(FAILING));
+
+        fail(breakers, FAILING);
+        assertTrue(breakers.isBroken(FAILING));
+        assertFalse(breakers.tryAcquire(FAILING));
+        assertEquals(1, breakers.getSkippedCount());
+
+        // Other classes keep flowing
+        assertTrue(breakers.tryAcquire(HEALTHY));
+        breakers.release(HEALTHY, true);
+        assertEquals(1, breakers.getBrokenCount());
+    }
+
+    @Test
+    public void testSingleProbeClosesOrReopensBreaker() {
+        AtomicLong clock = new AtomicLong(0L);
+        MuCompensationBreakers breakers = new MuCompensationBreakers(1, 60, 0, clock::get);
+
+        fail(breakers, FAILING);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(59L));
+        assertFalse(breakers.tryAcquire(FAILING));
+
+        // A single probe is let through, and fails
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1L));
+        assertTrue(breakers.tryAcquire(FAILING));
+        assertFalse(breakers.tryAcquire(FAILING));
+        breakers.release(FAILING, false);
+        assertTrue(breakers.isBroken(FAILING));
+        assertFalse(breakers.tryAcquire(FAILING));
+
+        // ...and later succeeds
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(60L));
+        assertTrue(breakers.tryAcquire(FAILING));
+        breakers.release(FAILING, true);
+        assertFalse(breakers.isBroken(FAILING));
+        assertTrue(breakers.tryAcquire(FAILING));
+        assertTrue(breakers.tryAcquire(FAILING));
+        assertEquals(0, breakers.getBrokenCount());
+    }
+
+    @Test
+    public void testBulkheadLimitsConcurrentCompensationsPerClass() {
+        MuCompensationBreakers breakers = new MuCompensationBreakers(0, 60, 2);
+
+        assertTrue(breakers.tryAcquire(FAILING));
+        assertTrue(breakers.tryAcquire(FAILING));
+        assertFalse(breakers.tryAcquire(FAILING));
+        assertTrue(breakers.tryAcquire(HEALTHY));
+
+        breakers.release(FAILING, false);
+        assertTrue(breakers.tryAcquire(FAILING));
+
+        // Without a failure threshold, breaker never opens
+        for (int i = 0; i < 100; i++) {
+            breakers.release(FAILING, false);
+            breakers.tryAcquire(FAILING);
+        }
+        assertFalse(breakers.isBroken(FAILING));
+    }
+
+    private static void fail(MuCompensationBreakers breakers, String className) {
+        assertTrue(breakers.tryAcquire(className));
+        breakers.release(className, false);
+    }
+
+    private static void succeed(MuCompensationBreakers breakers, String className) {
+        assertTrue(breakers.tryAcquire(className));
+        breakers.release(className, true);
+    }
+}
@@ -22,8 +22,11 @@ import org.gautelis.muprocessmanager.payload.MuNativeProcessResult;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -31,6 +34,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -218,6 +223,32 @@ public class MuProcessPersistentCoreTest extends AbstractMuProcessManagerTest {
         assertEquals(MuProcessState.SUCCESSFUL, state.get());
     }
 
+    @Test
+    public void testProcessIdCollisionIsNotReportedAsDuplicate() throws MuProcessException {
+        ManagedPair pair = newManagedPair("mu_process_id_collision_test_", policy().build());
+
+        // Process ids allocated by us, while the identity of the database still starts at 1
+        MuPersistentLog allocatingLog = new MuPersistentLog(pair.dataSource, pair.sqlStatements, policy().processIdBlockSize(4).build());
+        MuProcess allocated = new MuProcess(UUID.randomUUID().toString(), allocatingLog, true, true, false);
+        allocatingLog.pushProcess(allocated);
+
+        MuPersistentLog generatingLog = new MuPersistentLog(pair.dataSource, pair.sqlStatements, policy().build());
+        try {
+            generatingLog.pushProcess(new MuProcess(UUID.randomUUID().toString(), generatingLog, true, true, false));
+            fail("Expected process id collision to fail");
+        } catch (MuProcessAlreadyExistsException unexpected) {
+            fail("Process id collision reported as duplicate correlation ID: " + unexpected.getMessage());
+        } catch (MuProcessException expected) {
+        }
+
+        // ...while a duplicate correlation ID still is
+        try {
+            generatingLog.pushProcess(new MuProcess(allocated.getCorrelationId(), generatingLog, true, true, false));
+            fail("Expected duplicate correlation ID to fail");
+        } catch (MuProcessAlreadyExistsException expected) {
+        }
+    }
+
     @Test
     public void testLambdaBackwardBehaviourIsRejectedBeforePersistence() throws MuProcessException {
         String correlationId = UUID.randomUUID().toString();
@@ -348,4 +379,407 @@ public class MuProcessPersistentCoreTest extends AbstractMuProcessManagerTest {
         assertEquals(MuProcessState.SUCCESSFUL, details.get().getState());
         assertTrue(details.get().getActivityDetails().isEmpty());
     }
+
+    @Test
+    public void testProcessHoldingConnectionFinishesAndCompensates() throws MuProcessException {
+        MuSynchronousManagerImpl syncManager = newSynchronousManager(
+                "mu_process_held_connection_test_",
+                policy().holdConnectionForProcessLifecycle(true).build()
+        );
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        String successfulId = UUID.randomUUID().toString();
+        MuProcess successful = syncManager.newProcess(successfulId);
+        successful.execute(c -> true, new BackwardSuccess(), parameters);
+        successful.execute(c -> {
+            ((MuNativeProcessResult) c.getResult()).add("ok");
+            return true;
+        }, new BackwardSuccess(), parameters);
+        successful.finished();
+
+        assertEquals(MuProcessState.SUCCESSFUL, syncManager.getProcessState(successfulId).orElse(null));
+        assertTrue(syncManager.getProcessDetails(successfulId).get().getActivityDetails().isEmpty());
+
+        String compensatedId = UUID.randomUUID().toString();
+        MuProcess compensated = syncManager.newProcess(compensatedId);
+        compensated.execute(c -> true, new BackwardSuccess(), parameters);
+        try {
+            compensated.execute(c -> false, new BackwardSuccess(), parameters);
+            fail("Expected forward failure to trigger compensation");
+        } catch (MuProcessForwardBehaviourException expected) {
+        }
+
+        assertEquals(MuProcessState.COMPENSATED, syncManager.getProcessState(compensatedId).orElse(null));
+    }
+
+    @Test
+    public void testIdleProcessConnectionIsReleasedAndReacquired() throws Exception {
+        MuSynchronousManagerImpl syncManager = newSynchronousManager(
+                "mu_process_idle_connection_test_",
+                policy().holdConnectionForProcessLifecycle(true).secondsBeforeReleasingIdleProcessConnection(1).build()
+        );
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        String correlationId = UUID.randomUUID().toString();
+        MuProcess process = syncManager.newProcess(correlationId);
+        process.execute(c -> true, new BackwardSuccess(), parameters);
+        MuProcessConnection connection = process.getConnection();
+        assertNotNull(connection);
+        assertTrue(connection.isHeld());
+
+        // The reaper releases the connection held by the (idle) process...
+        awaitCondition("idle process connection released", () -> !connection.isHeld(), 5000L);
+
+        // ...and it is re-acquired when needed
+        process.execute(c -> true, new BackwardSuccess(), parameters);
+        assertTrue(connection.isHeld());
+        process.finished();
+        assertFalse(connection.isHeld());
+
+        assertEquals(MuProcessState.SUCCESSFUL, syncManager.getProcessState(correlationId).orElse(null));
+    }
+
+    @Test
+    public void testFoldedProcessHeaderWithHeartbeats() throws MuProcessException {
+        MuSynchronousManagerImpl syncManager = newSynchronousManager(
+                "mu_process_folded_header_test_",
+                policy().foldProcessHeaderIntoFirstStep(true).secondsBetweenProcessHeartbeats(60).build()
+        );
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        String correlationId = UUID.randomUUID().toString();
+        MuProcess process = syncManager.newProcess(correlationId);
+        process.execute(c -> true, new BackwardSuccess(), parameters);
+        assertEquals(MuProcessState.PROGRESSING, syncManager.getProcessState(correlationId).orElse(null));
+
+        process.execute(c -> true, new BackwardSuccess(), parameters);
+        process.execute(c -> true, parameters);
+        assertEquals(2, syncManager.getProcessDetails(correlationId).get().getActivityDetails().size());
+        process.finished();
+        assertEquals(MuProcessState.SUCCESSFUL, syncManager.getProcessState(correlationId).orElse(null));
+
+        // Duplicate correlation ID is still detected when header is folded into first step
+        MuProcess duplicate = syncManager.newProcess(correlationId);
+        try {
+            duplicate.execute(c -> true, new BackwardSuccess(), parameters);
+            fail("Expected duplicate correlation ID to fail");
+        } catch (MuProcessForwardBehaviourException expected) {
+        }
+        assertEquals(MuProcessState.SUCCESSFUL, syncManager.getProcessState(correlationId).orElse(null));
+
+        String compensatedId = UUID.randomUUID().toString();
+        MuProcess compensated = syncManager.newProcess(compensatedId);
+        compensated.execute(c -> true, new BackwardSuccess(), parameters);
+        try {
+            compensated.execute(c -> false, new BackwardSuccess(), parameters);
+            fail("Expected forward failure to trigger compensation");
+        } catch (MuProcessForwardBehaviourException expected) {
+        }
+        assertEquals(MuProcessState.COMPENSATED, syncManager.getProcessState(compensatedId).orElse(null));
+    }
+
+    @Test
+    public void testDeferredStepOutcomesAreHonouredOnCompensation() throws MuProcessException {
+        MuSynchronousManagerImpl syncManager = newSynchronousManager(
+                "mu_process_deferred_outcome_test_",
+                policy().deferStepOutcomeMarking(true).onlyCompensateIfTransactionWasSuccessful(true).build()
+        );
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+        BackwardSuccessCounter.reset();
+
+        String correlationId = UUID.randomUUID().toString();
+        MuProcess process = syncManager.newProcess(correlationId);
+        process.execute(c -> true, new BackwardSuccessCounter(), parameters);
+        process.execute(c -> true, new BackwardSuccessCounter(), parameters);
+        try {
+            process.execute(c -> false, new BackwardSuccessCounter(), parameters);
+            fail("Expected forward failure to trigger compensation");
+        } catch (MuProcessForwardBehaviourException expected) {
+        }
+
+        // The failed step should not be compensated, since its outcome was recorded before compensating
+        assertEquals(2, BackwardSuccessCounter.CALLS.get());
+        assertEquals(MuProcessState.COMPENSATED, syncManager.getProcessState(correlationId).orElse(null));
+
+        String successfulId = UUID.randomUUID().toString();
+        MuProcess successful = syncManager.newProcess(successfulId);
+        successful.execute(c -> true, new BackwardSuccess(), parameters);
+        successful.execute(c -> true, new BackwardSuccess(), parameters);
+        successful.finished();
+        assertEquals(MuProcessState.SUCCESSFUL, syncManager.getProcessState(successfulId).orElse(null));
+    }
+
+    @Test
+    public void testConcurrentProcessesWithGroupCommit() throws Exception {
+        MuSynchronousManagerImpl syncManager = newSynchronousManager(
+                "mu_process_group_commit_test_",
+                policy().groupCommitCompensationLog(true).groupCommitMaxBatchSize(16).groupCommitMaxWaitMicroseconds(2000).build()
+        );
+
+        int processCount = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch latch = new CountDownLatch(processCount);
+        List<String> successfulIds = new ArrayList<>();
+        List<String> compensatedIds = new ArrayList<>();
+
+        for (int i = 0; i < processCount; i++) {
+            String correlationId = UUID.randomUUID().toString();
+            boolean fail = i % 4 == 0;
+            (fail ? compensatedIds : successfulIds).add(correlationId);
+
+            executor.execute(() -> {
+                MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+                try {
+                    MuProcess process = syncManager.newProcess(correlationId);
+                    process.execute(c -> true, new BackwardSuccess(), parameters);
+                    process.execute(c -> !fail, new BackwardSuccess(), parameters);
+                    process.finished();
+                } catch (MuProcessException ignore) {
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(20, TimeUnit.SECONDS));
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        for (String correlationId : successfulIds) {
+            assertEquals(MuProcessState.SUCCESSFUL, syncManager.getProcessState(correlationId).orElse(null));
+        }
+        for (String correlationId : compensatedIds) {
+            assertEquals(MuProcessState.COMPENSATED, syncManager.getProcessState(correlationId).orElse(null));
+        }
+    }
+
+    @Test
+    public void testWriteBehindProcessesAreCompensatedAndFinished() throws MuProcessException {
+        MuSynchronousManagerImpl syncManager = newSynchronousManager(
+                "mu_process_write_behind_test_",
+                policy().writeBehindBufferSize(16).build()
+        );
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+        BackwardSuccessCounter.reset();
+
+        String compensatedId = UUID.randomUUID().toString();
+        MuProcess process = syncManager.newProcess(compensatedId, MuProcessDurability.WRITE_BEHIND);
+        assertEquals(MuProcessDurability.WRITE_BEHIND, process.getDurability());
+        process.execute(c -> true, new BackwardSuccessCounter(), parameters);
+        process.execute(c -> true, new BackwardSuccessCounter(), parameters);
+        try {
+            process.execute(c -> false, new BackwardSuccessCounter(), parameters);
+            fail("Expected forward failure to trigger compensation");
+        } catch (MuProcessForwardBehaviourException expected) {
+        }
+
+        // All steps written behind the process must be in place when compensating
+        assertEquals(3, BackwardSuccessCounter.CALLS.get());
+        assertEquals(MuProcessState.COMPENSATED, syncManager.getProcessState(compensatedId).orElse(null));
+
+        String successfulId = UUID.randomUUID().toString();
+        MuProcess successful = syncManager.newProcess(successfulId, false, MuProcessDurability.WRITE_BEHIND);
+        for (int i = 0; i < 20; i++) {
+            successful.execute(c -> true, new BackwardSuccess(), parameters);
+        }
+        successful.finished();
+        assertEquals(MuProcessState.SUCCESSFUL, syncManager.getProcessState(successfulId).orElse(null));
+
+        String durableId = UUID.randomUUID().toString();
+        MuProcess durable = syncManager.newProcess(durableId);
+        assertEquals(MuProcessDurability.DURABLE, durable.getDurability());
+        durable.execute(c -> true, new BackwardSuccess(), parameters);
+        durable.finished();
+        assertEquals(MuProcessState.SUCCESSFUL, syncManager.getProcessState(durableId).orElse(null));
+    }
+
+    @Test
+    public void testWriteBehindRecordsAreWrittenOnStop() throws MuProcessException {
+        MuSynchronousManagerImpl syncManager = newSynchronousManager(
+                "mu_process_write_behind_stop_test_",
+                policy().writeBehindBufferSize(64).groupCommitMaxBatchSize(64).groupCommitMaxWaitMicroseconds(2_000_000).build()
+        );
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        String correlationId = UUID.randomUUID().toString();
+        MuProcess process = syncManager.newProcess(correlationId, MuProcessDurability.WRITE_BEHIND);
+        for (int i = 0; i < 5; i++) {
+            process.execute(c -> true, new BackwardSuccess(), parameters);
+        }
+
+        // Queued writes are written when stopping, rather than lost
+        syncManager.stop();
+        assertEquals(MuProcessState.PROGRESSING, syncManager.getProcessState(correlationId).orElse(null));
+        assertEquals(5, syncManager.getProcessDetails(correlationId).get().getActivityDetails().size());
+    }
+
+    @Test
+    public void testWriteBehindStepsKeepParametersAsOfExecution() throws MuProcessException {
+        MuSynchronousManagerImpl syncManager = newSynchronousManager(
+                "mu_process_write_behind_parameters_test_",
+                policy().writeBehindBufferSize(64).groupCommitMaxBatchSize(64).groupCommitMaxWaitMicroseconds(2_000_000).build()
+        );
+        BackwardRecordingParameters.reset();
+
+        // Same (mutable) parameters for all steps, modified after each step has been executed
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+        MuOrchestrationParameters orchestrationParameters = new MuOrchestrationParameters();
+
+        String correlationId = UUID.randomUUID().toString();
+        MuProcess process = syncManager.newProcess(correlationId, MuProcessDurability.WRITE_BEHIND);
+        for (int step = 1; step <= 3; step++) {
+            parameters.put("step", "" + step);
+            orchestrationParameters.put("step", "" + step);
+            boolean success = step < 3;
+            try {
+                process.execute(c -> success, new BackwardRecordingParameters(), parameters, orchestrationParameters);
+            } catch (MuProcessForwardBehaviourException expected) {
+                assertFalse(success);
+            }
+            parameters.put("step", "modified");
+            orchestrationParameters.put("step", "modified");
+        }
+
+        // Compensations see parameters as they were when each step was executed
+        assertEquals(Arrays.asList("3", "2", "1"), BackwardRecordingParameters.ACTIVITY_STEPS);
+        assertEquals(Arrays.asList("3", "2", "1"), BackwardRecordingParameters.ORCHESTRATION_STEPS);
+        assertEquals(MuProcessState.COMPENSATED, syncManager.getProcessState(correlationId).orElse(null));
+    }
+
+    @Test
+    public void testProcessIdsAllocatedInBlocks() throws Exception {
+        ManagedPair pair = newManagedPair("mu_process_id_block_test_", policy().build());
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        // Process ids generated by the database, before allocating process ids in blocks
+        Set<Long> processIds = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            MuProcess process = pair.syncManager.newProcess(UUID.randomUUID().toString());
+            process.execute(c -> true, new BackwardSuccess(), parameters);
+            assertTrue(processIds.add(process.getProcessId()));
+            process.finished();
+        }
+
+        MuSynchronousManagerImpl syncManager = new MuSynchronousManagerImpl(
+                pair.dataSource, pair.sqlStatements,
+                policy().processIdBlockSize(4).foldProcessHeaderIntoFirstStep(true).groupCommitCompensationLog(true).build()
+        );
+
+        int processCount = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch latch = new CountDownLatch(processCount);
+        List<MuProcess> processes = new ArrayList<>();
+
+        for (int i = 0; i < processCount; i++) {
+            String correlationId = UUID.randomUUID().toString();
+            boolean fail = i % 4 == 0;
+            MuProcess process = syncManager.newProcess(correlationId);
+            processes.add(process);
+
+            executor.execute(() -> {
+                try {
+                    process.execute(c -> true, new BackwardSuccess(), parameters);
+                    process.execute(c -> !fail, new BackwardSuccess(), parameters);
+                    process.finished();
+                } catch (MuProcessException ignore) {
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(20, TimeUnit.SECONDS));
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        for (int i = 0; i < processCount; i++) {
+            MuProcess process = processes.get(i);
+            assertTrue(processIds.add(process.getProcessId()));
+
+            MuProcessState expected = i % 4 == 0 ? MuProcessState.COMPENSATED : MuProcessState.SUCCESSFUL;
+            assertEquals(expected, syncManager.getProcessState(process.getCorrelationId()).orElse(null));
+        }
+
+        // Duplicates are still detected when the header is written together with the first step
+        String correlationId = processes.get(1).getCorrelationId();
+        try {
+            syncManager.newProcess(correlationId).execute(c -> true, new BackwardSuccess(), parameters);
+            fail("Expected duplicate correlation ID to be rejected");
+        } catch (MuProcessForwardBehaviourException expected) {
+            // Just as when the header is written on its own, see testDuplicateCorrelationIdThrows
+        }
+        assertEquals(MuProcessState.SUCCESSFUL, syncManager.getProcessState(correlationId).orElse(null));
+    }
+
+    @Test
+    public void testProcessIdsBeyond32Bits() throws MuProcessException {
+        MuProcessManagementPolicy policy = policy().processIdBlockSize(Integer.MAX_VALUE).build();
+        ManagedPair pair = newManagedPair("mu_process_64bit_id_test_", policy);
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        // First manager reserves all 32-bit process ids...
+        MuProcess first = pair.syncManager.newProcess(UUID.randomUUID().toString());
+        first.execute(c -> true, new BackwardSuccess(), parameters);
+        first.finished();
+        assertEquals(1L, first.getProcessId());
+
+        // ...so a second manager has to allocate process ids beyond 32 bits
+        MuSynchronousManagerImpl syncManager = new MuSynchronousManagerImpl(pair.dataSource, pair.sqlStatements, policy);
+
+        String successfulId = UUID.randomUUID().toString();
+        MuProcess successful = syncManager.newProcess(successfulId);
+        successful.execute(c -> true, new BackwardSuccess(), parameters);
+        successful.execute(c -> true, new BackwardSuccess(), parameters);
+        successful.finished();
+        assertTrue(successful.getProcessId() > Integer.MAX_VALUE);
+        assertEquals(MuProcessState.SUCCESSFUL, syncManager.getProcessState(successfulId).orElse(null));
+
+        String compensatedId = UUID.randomUUID().toString();
+        MuProcess compensated = syncManager.newProcess(compensatedId);
+        compensated.execute(c -> true, new BackwardSuccess(), parameters);
+        try {
+            compensated.execute(c -> false, new BackwardSuccess(), parameters);
+            fail("Expected forward failure to trigger compensation");
+        } catch (MuProcessForwardBehaviourException expected) {
+        }
+        assertTrue(compensated.getProcessId() > Integer.MAX_VALUE);
+        assertEquals(MuProcessState.COMPENSATED, syncManager.getProcessState(compensatedId).orElse(null));
+
+        Optional<MuProcessDetails> details = syncManager.getProcessDetails(compensatedId);
+        assertTrue(details.isPresent());
+        assertEquals(compensated.getProcessId(), details.get().getProcessId());
+    }
+
+    @Test
+    public void testMultiStepProcessIsCleanedUpOnSuccess() throws MuProcessException {
+        MuSynchronousManagerImpl syncManager = newSynchronousManager(
+                "mu_process_set_based_cleanup_test_",
+                policy().holdConnectionForProcessLifecycle(true).build()
+        );
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        String correlationId = UUID.randomUUID().toString();
+        MuProcess process = syncManager.newProcess(correlationId);
+        for (int i = 0; i < 10; i++) {
+            final String value = "step-" + i;
+            process.execute(
+                    c -> {
+                        ((MuNativeProcessResult) c.getResult()).add(value);
+                        return true;
+                    },
+                    new BackwardSuccess(),
+                    parameters
+            );
+        }
+        process.finished();
+
+        Optional<MuProcessDetails> details = syncManager.getProcessDetails(correlationId);
+        assertTrue(details.isPresent());
+        assertEquals(MuProcessState.SUCCESSFUL, details.get().getState());
+        assertTrue(details.get().getActivityDetails().isEmpty());
+
+        Optional<MuProcessResult> result = syncManager.getProcessResult(correlationId);
+        assertTrue(result.isPresent());
+        assertEquals("step-9", ((MuNativeProcessResult) result.get()).get(9));
+    }
 }
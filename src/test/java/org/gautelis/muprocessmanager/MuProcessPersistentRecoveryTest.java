@@ -21,11 +21,19 @@ import org.gautelis.muprocessmanager.payload.MuNativeActivityParameters;
 import org.junit.Test;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -93,6 +101,176 @@ public class MuProcessPersistentRecoveryTest extends AbstractMuProcessManagerTes
         }
     }
 
+    @Test
+    public void testRecoverStuckProcessWithoutRecoveryStatements() throws Exception {
+        MuProcessManagementPolicy policy = policy()
+                .minutesToTrackProcess(1)
+                .minutesBeforeAssumingProcessStuck(0)
+                .secondsBetweenRecoveryAttempts(1)
+                .secondsBetweenRecompensationAttempts(1)
+                .build();
+        DataSource dataSource = MuProcessManagerFactory.getDefaultDataSource(uniqueDbName("mu_process_manager_recover_legacy_"));
+        MuProcessManagerFactory.prepareInternalDatabase(dataSource);
+
+        // Statements as found in an older configuration, lacking the specific recovery statements
+        Properties sqlStatements = MuProcessManagerFactory.getDefaultSqlStatements();
+        sqlStatements.remove("FETCH_STUCK_PROCESSES");
+        sqlStatements.remove("FETCH_RETIRED_PROCESSES");
+        sqlStatements.remove("FETCH_FAILED_PROCESSES");
+
+        MuSynchronousManagerImpl syncManager = new MuSynchronousManagerImpl(dataSource, sqlStatements, policy);
+        MuAsynchronousManagerImpl asyncManager = new MuAsynchronousManagerImpl(dataSource, sqlStatements, policy);
+
+        String correlationId = UUID.randomUUID().toString();
+        MuProcess process = syncManager.newProcess(correlationId);
+        process.execute(c -> true, new BackwardSuccess(), new MuNativeActivityParameters());
+
+        Thread.sleep(10);
+
+        asyncManager.start();
+        try {
+            asyncManager.recover();
+            assertEquals(MuProcessState.COMPENSATED, awaitProcessState(syncManager, correlationId, MuProcessState.COMPENSATED, 5000));
+        } finally {
+            asyncManager.stop();
+        }
+    }
+
+    @Test
+    public void testRecoverRetiredProcessesInPages() throws Exception {
+        ManagedPair pair = newManagedPair(
+                "mu_process_manager_recover_pages_",
+                policy()
+                        .minutesToTrackProcess(0)
+                        .minutesBeforeAssumingProcessStuck(1)
+                        .secondsBetweenRecoveryAttempts(3)
+                        .secondsBetweenRecompensationAttempts(1)
+                        .recoveryPageSize(2)
+                        .recoveryFetchSize(1)
+                        .build()
+        );
+
+        List<String> correlationIds = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            String correlationId = UUID.randomUUID().toString();
+            MuProcess process = pair.syncManager.newProcess(correlationId);
+            process.execute(c -> true, new BackwardSuccess(), new MuNativeActivityParameters());
+            process.finished();
+            correlationIds.add(correlationId);
+        }
+
+        Thread.sleep(10);
+
+        pair.asyncManager.start();
+        try {
+            pair.asyncManager.recover();
+            for (String correlationId : correlationIds) {
+                assertTrue(awaitProcessMissing(pair.syncManager, correlationId, 5000));
+            }
+        } finally {
+            pair.asyncManager.stop();
+        }
+    }
+
+    @Test
+    public void testPurgeRetiredProcessesInChunks() throws Exception {
+        ManagedPair pair = newManagedPair(
+                "mu_process_manager_purge_chunks_",
+                policy()
+                        .minutesToTrackProcess(0)
+                        .minutesBeforeAssumingProcessStuck(1)
+                        .secondsBetweenRecoveryAttempts(3)
+                        .secondsBetweenRecompensationAttempts(1)
+                        .bulkPurgeRetiredProcesses(true)
+                        .purgeChunkSize(2)
+                        .millisecondsBetweenPurgeChunks(1)
+                        .build()
+        );
+
+        List<String> correlationIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            String correlationId = UUID.randomUUID().toString();
+            MuProcess process = pair.syncManager.newProcess(correlationId);
+            process.execute(c -> true, new BackwardSuccess(), new MuNativeActivityParameters());
+            process.finished();
+            correlationIds.add(correlationId);
+        }
+
+        Thread.sleep(10);
+
+        pair.asyncManager.start();
+        try {
+            // Purged chunk by chunk, without any recovery
+            pair.asyncManager.purge();
+            for (String correlationId : correlationIds) {
+                assertTrue(awaitProcessMissing(pair.syncManager, correlationId, 5000));
+            }
+        } finally {
+            pair.asyncManager.stop();
+        }
+    }
+
+    @Test
+    public void testPurgeRetiredProcessesWithinRange() throws Exception {
+        MuProcessManagementPolicy policy = policy()
+                .minutesToTrackProcess(0)
+                .purgeChunkSize(2)
+                .build();
+        ManagedPair pair = newManagedPair("mu_process_manager_purge_range_", policy);
+
+        List<MuProcess> processes = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            MuProcess process = pair.syncManager.newProcess(UUID.randomUUID().toString());
+            process.execute(c -> true, new BackwardSuccess(), new MuNativeActivityParameters());
+            process.finished();
+            processes.add(process);
+        }
+
+        Thread.sleep(10);
+
+        // As with a partition that could not be dropped, covering all but the first and the last process
+        MuPersistentLog compensationLog = new MuPersistentLog(pair.dataSource, pair.sqlStatements, policy);
+        long purged = compensationLog.purgeRetiredProcesses(
+                0, processes.get(1).getProcessId(), processes.get(5).getProcessId(), () -> true
+        );
+        assertEquals(4L, purged);
+
+        for (int i = 0; i < processes.size(); i++) {
+            Optional<MuProcessState> state = pair.syncManager.getProcessState(processes.get(i).getCorrelationId());
+            assertEquals(0 == i || 5 == i, state.isPresent());
+        }
+    }
+
+    @Test
+    public void testRecoverRetiredProcessesWithoutPartitionStatements() throws Exception {
+        // Derby has no partition statements, so retired processes are still removed by recovery
+        ManagedPair pair = newManagedPair(
+                "mu_process_manager_no_partitions_",
+                policy()
+                        .minutesToTrackProcess(0)
+                        .minutesBeforeAssumingProcessStuck(1)
+                        .secondsBetweenRecoveryAttempts(3)
+                        .secondsBetweenRecompensationAttempts(1)
+                        .partitionedProcessStorage(true)
+                        .build()
+        );
+
+        String correlationId = UUID.randomUUID().toString();
+        MuProcess process = pair.syncManager.newProcess(correlationId);
+        process.execute(c -> true, new BackwardSuccess(), new MuNativeActivityParameters());
+        process.finished();
+
+        Thread.sleep(10);
+
+        pair.asyncManager.start();
+        try {
+            pair.asyncManager.recover();
+            assertTrue(awaitProcessMissing(pair.syncManager, correlationId, 5000));
+        } finally {
+            pair.asyncManager.stop();
+        }
+    }
+
     @Test
     public void testRecoverCompensationFailedAbandonsWhenNotAllowed() throws Exception {
         ManagedPair pair = newManagedPair(
@@ -237,6 +415,433 @@ public class MuProcessPersistentRecoveryTest extends AbstractMuProcessManagerTes
         }
     }
 
+    @Test
+    public void testFailedStepIsNotRecompensatedUntilDue() throws Exception {
+        MuProcessManagementPolicy policy = policy()
+                .minutesToTrackProcess(60)
+                .minutesBeforeAssumingProcessStuck(1)
+                .secondsBetweenRecompensationAttempts(1)
+                .maxSecondsBetweenRecompensationAttempts(3600)
+                .build();
+        ManagedPair pair = newManagedPair("mu_process_manager_backoff_", policy);
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        // Both processes fail compensation, and are due for re-compensation within a second
+        long[] processIds = new long[2];
+        for (int i = 0; i < processIds.length; i++) {
+            String correlationId = UUID.randomUUID().toString();
+            MuProcess process = pair.syncManager.newProcess(correlationId);
+            process.execute(c -> true, new BackwardFail(), parameters);
+            try {
+                process.execute(c -> false, new BackwardSuccess(), parameters);
+                fail("Expected compensation failure to throw");
+            } catch (MuProcessBackwardBehaviourException expected) {
+            }
+
+            Optional<MuProcessDetails> details = pair.syncManager.getProcessDetails(correlationId);
+            assertTrue(details.isPresent());
+            assertEquals(MuProcessState.COMPENSATION_FAILED, details.get().getState());
+            processIds[i] = details.get().getProcessId();
+        }
+
+        // ...but the first one has failed a lot of times, and has to wait a lot longer
+        MuPersistentLog compensationLog = new MuPersistentLog(pair.dataSource, pair.sqlStatements, policy);
+        Optional<MuProcessDetails> first = pair.syncManager.getProcessDetails().stream()
+                .filter(details -> details.getProcessId() == processIds[0])
+                .findFirst();
+        assertTrue(first.isPresent());
+        for (MuProcessDetails.MuActivityDetails activity : first.get().getActivityDetails()) {
+            compensationLog.markRetry(processIds[0], activity.getStepId(), 10);
+        }
+
+        Thread.sleep(1100);
+
+        List<Long> fetched = new ArrayList<>();
+        assertTrue(compensationLog.recover(60, 3600, 1, () -> true,
+                (correlationId, processId, state, acceptCompensationFailure, created, modified, now) -> fetched.add(processId)));
+
+        assertFalse(fetched.contains(processIds[0]));
+        assertTrue(fetched.contains(processIds[1]));
+    }
+
+    @Test
+    public void testLeasedProcessesAreRecoveredByOneNodeOnly() throws Exception {
+        MuProcessManagementPolicy policy = policy()
+                .minutesToTrackProcess(60)
+                .minutesBeforeAssumingProcessStuck(1)
+                .secondsBetweenRecompensationAttempts(1)
+                .claimRecoveryLeases(true)
+                .secondsOfRecoveryLease(300)
+                .build();
+        ManagedPair pair = newManagedPair("mu_process_manager_leases_", policy);
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        // Processes failing compensation, thus due for re-compensation within a second
+        List<Long> processIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String correlationId = UUID.randomUUID().toString();
+            MuProcess process = pair.syncManager.newProcess(correlationId);
+            process.execute(c -> true, new BackwardFail(), parameters);
+            try {
+                process.execute(c -> false, new BackwardSuccess(), parameters);
+                fail("Expected compensation failure to throw");
+            } catch (MuProcessBackwardBehaviourException expected) {
+            }
+
+            Optional<MuProcessDetails> details = pair.syncManager.getProcessDetails(correlationId);
+            assertTrue(details.isPresent());
+            processIds.add(details.get().getProcessId());
+        }
+
+        Thread.sleep(1100);
+
+        // Two nodes, recovering against the same database
+        MuPersistentLog firstNode = new MuPersistentLog(pair.dataSource, pair.sqlStatements, policy);
+        MuPersistentLog secondNode = new MuPersistentLog(pair.dataSource, pair.sqlStatements, policy);
+        assertTrue(firstNode.claimsRecoveryLeases());
+
+        List<Long> firstFetched = new ArrayList<>();
+        assertTrue(firstNode.recover(60, 3600, 1, () -> true,
+                (correlationId, processId, state, acceptCompensationFailure, created, modified, now) -> firstFetched.add(processId)));
+
+        List<Long> secondFetched = new ArrayList<>();
+        assertTrue(secondNode.recover(60, 3600, 1, () -> true,
+                (correlationId, processId, state, acceptCompensationFailure, created, modified, now) -> secondFetched.add(processId)));
+
+        assertTrue(firstFetched.containsAll(processIds));
+        for (Long processId : processIds) {
+            assertFalse(secondFetched.contains(processId));
+        }
+    }
+
+    @Test
+    public void testLeaseIsCountedFromClaimAndRenewedOnlyByOwner() throws Exception {
+        MuProcessManagementPolicy policy = policy()
+                .minutesToTrackProcess(60)
+                .minutesBeforeAssumingProcessStuck(1)
+                .secondsBetweenRecompensationAttempts(1)
+                .claimRecoveryLeases(true)
+                .secondsOfRecoveryLease(300)
+                .build();
+        ManagedPair pair = newManagedPair("mu_process_manager_lease_renewal_", policy);
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        // Process failing compensation, thus due for re-compensation within a second
+        String correlationId = UUID.randomUUID().toString();
+        MuProcess process = pair.syncManager.newProcess(correlationId);
+        process.execute(c -> true, new BackwardFail(), parameters);
+        try {
+            process.execute(c -> false, new BackwardSuccess(), parameters);
+            fail("Expected compensation failure to throw");
+        } catch (MuProcessBackwardBehaviourException expected) {
+        }
+
+        Optional<MuProcessDetails> details = pair.syncManager.getProcessDetails(correlationId);
+        assertTrue(details.isPresent());
+        long processId = details.get().getProcessId();
+
+        Thread.sleep(1100);
+
+        MuPersistentLog firstNode = new MuPersistentLog(pair.dataSource, pair.sqlStatements, policy);
+        MuPersistentLog secondNode = new MuPersistentLog(pair.dataSource, pair.sqlStatements, policy);
+        assertTrue(firstNode.renewsRecoveryLeases());
+
+        // Lease is stamped when claimed, not when the process is eventually recovered
+        Map<Long, Long> leasedAt = new HashMap<>();
+        long before = System.currentTimeMillis();
+        assertTrue(firstNode.recover(60, 3600, 1, () -> true,
+                (_correlationId, _processId, state, acceptCompensationFailure, created, modified, now, steps, _leasedAt)
+                        -> leasedAt.put(_processId, _leasedAt)));
+        long after = System.currentTimeMillis();
+        assertTrue(leasedAt.containsKey(processId));
+        assertTrue(leasedAt.get(processId) >= before && leasedAt.get(processId) <= after);
+
+        // Only the node holding the lease may renew it...
+        assertTrue(firstNode.renewRecoveryLease(processId));
+        assertFalse(secondNode.renewRecoveryLease(processId));
+
+        // ...and not once let go of
+        firstNode.releaseRecoveryLease(processId);
+        assertFalse(firstNode.renewRecoveryLease(processId));
+    }
+
+    @Test
+    public void testLeaseIsReleasedSoThatFailedRecompensationIsRetried() throws Exception {
+        ManagedPair pair = newManagedPair(
+                "mu_process_manager_lease_release_",
+                policy()
+                        .minutesToTrackProcess(60)
+                        .minutesBeforeAssumingProcessStuck(1)
+                        .secondsBetweenRecoveryAttempts(1)
+                        .secondsBetweenRecompensationAttempts(1)
+                        .maxSecondsBetweenRecompensationAttempts(2)
+                        .claimRecoveryLeases(true)
+                        .secondsOfRecoveryLease(300) // way longer than this test
+                        .build()
+        );
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        // Compensation fails when the process fails, and once more when first re-compensated
+        BackwardFailFirstCalls.failFirst(2);
+        String correlationId = UUID.randomUUID().toString();
+        MuProcess process = pair.syncManager.newProcess(correlationId);
+        process.execute(c -> true, new BackwardFailFirstCalls(), parameters);
+        try {
+            process.execute(c -> false, new BackwardSuccess(), parameters);
+            fail("Expected compensation failure to throw");
+        } catch (MuProcessBackwardBehaviourException expected) {
+        }
+        assertEquals(MuProcessState.COMPENSATION_FAILED, pair.syncManager.getProcessState(correlationId).orElse(null));
+
+        pair.asyncManager.start();
+        try {
+            // Second re-compensation happens when due, rather than when the lease of the first runs out
+            MuProcessState state = awaitValue(
+                    "process " + correlationId + " to be re-compensated",
+                    () -> {
+                        pair.asyncManager.recover();
+                        return pair.syncManager.getProcessState(correlationId).orElse(null);
+                    },
+                    value -> MuProcessState.COMPENSATED == value,
+                    15_000L
+            );
+            assertEquals(MuProcessState.COMPENSATED, state);
+            assertTrue(BackwardFailFirstCalls.FAILURES_LEFT.get() < 0); // i.e. failed twice, then succeeded
+        } finally {
+            pair.asyncManager.stop();
+        }
+    }
+
+    @Test
+    public void testShardedRecoveryCoversEveryProcessOnce() throws Exception {
+        ManagedPair pair = newManagedPair(
+                "mu_process_manager_shards_",
+                policy()
+                        .minutesToTrackProcess(60)
+                        .minutesBeforeAssumingProcessStuck(1)
+                        .secondsBetweenRecompensationAttempts(1)
+                        .build()
+        );
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        // Processes failing compensation, thus due for re-compensation within a second
+        List<Long> processIds = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            String correlationId = UUID.randomUUID().toString();
+            MuProcess process = pair.syncManager.newProcess(correlationId);
+            process.execute(c -> true, new BackwardFail(), parameters);
+            try {
+                process.execute(c -> false, new BackwardSuccess(), parameters);
+                fail("Expected compensation failure to throw");
+            } catch (MuProcessBackwardBehaviourException expected) {
+            }
+
+            Optional<MuProcessDetails> details = pair.syncManager.getProcessDetails(correlationId);
+            assertTrue(details.isPresent());
+            processIds.add(details.get().getProcessId());
+        }
+
+        Thread.sleep(1100);
+
+        // Two nodes, sharing recovery
+        List<List<Long>> fetchedByShard = new ArrayList<>();
+        for (int shardIndex = 0; shardIndex < 2; shardIndex++) {
+            MuProcessManagementPolicy policy = policy()
+                    .minutesToTrackProcess(60)
+                    .minutesBeforeAssumingProcessStuck(1)
+                    .secondsBetweenRecompensationAttempts(1)
+                    .recoveryShardCount(2)
+                    .recoveryShardIndex(shardIndex)
+                    .build();
+            MuPersistentLog node = new MuPersistentLog(pair.dataSource, pair.sqlStatements, policy);
+
+            List<Long> fetched = new ArrayList<>();
+            assertTrue(node.recover(60, 3600, 1, () -> true,
+                    (correlationId, processId, state, acceptCompensationFailure, created, modified, now) -> {
+                        assertTrue(node.ownsRecoveryOf(processId));
+                        fetched.add(processId);
+                    }));
+            fetchedByShard.add(fetched);
+        }
+
+        for (Long processId : processIds) {
+            assertTrue(fetchedByShard.get(0).contains(processId) ^ fetchedByShard.get(1).contains(processId));
+        }
+    }
+
+    @Test
+    public void testRecoveryFetchesStepsInBatches() throws Exception {
+        ManagedPair pair = newManagedPair(
+                "mu_process_manager_step_batches_",
+                policy()
+                        .minutesToTrackProcess(60)
+                        .minutesBeforeAssumingProcessStuck(1)
+                        .secondsBetweenRecompensationAttempts(1)
+                        .build()
+        );
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        // Processes failing compensation of two steps, thus due for re-compensation within a second
+        List<Long> processIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            String correlationId = UUID.randomUUID().toString();
+            MuProcess process = pair.syncManager.newProcess(correlationId);
+            process.execute(c -> true, new BackwardFail(), parameters);
+            process.execute(c -> true, new BackwardFail(), parameters);
+            try {
+                process.execute(c -> false, new BackwardSuccess(), parameters);
+                fail("Expected compensation failure to throw");
+            } catch (MuProcessBackwardBehaviourException expected) {
+            }
+
+            Optional<MuProcessDetails> details = pair.syncManager.getProcessDetails(correlationId);
+            assertTrue(details.isPresent());
+            processIds.add(details.get().getProcessId());
+        }
+
+        Thread.sleep(1100);
+
+        // Batches not aligned with pages
+        MuProcessManagementPolicy policy = policy()
+                .minutesToTrackProcess(60)
+                .minutesBeforeAssumingProcessStuck(1)
+                .secondsBetweenRecompensationAttempts(1)
+                .recoveryPageSize(3)
+                .batchRecoveryStepFetch(true)
+                .recoveryStepBatchSize(2)
+                .build();
+        MuPersistentLog compensationLog = new MuPersistentLog(pair.dataSource, pair.sqlStatements, policy);
+        assertTrue(compensationLog.fetchesRecoveryStepsInBatches());
+
+        List<Long> fetched = new ArrayList<>();
+        assertTrue(compensationLog.recover(60, 3600, 1, () -> true,
+                (correlationId, processId, state, acceptCompensationFailure, created, modified, now, steps, leasedAt) -> {
+                    assertEquals(MuProcessState.COMPENSATION_FAILED.ordinal(), state);
+                    assertTrue(null != steps);
+                    assertEquals(2, steps.size());
+                    fetched.add(processId);
+                }));
+        assertTrue(fetched.containsAll(processIds));
+
+        // ...only for processes that will be recovered, e.g. not for those already being recovered
+        long alreadyRecovering = processIds.get(0);
+        List<Long> withSteps = new ArrayList<>();
+        assertTrue(compensationLog.recover(60, 3600, 1, () -> true,
+                (processId, state) -> processId != alreadyRecovering,
+                (correlationId, processId, state, acceptCompensationFailure, created, modified, now, steps, leasedAt) -> {
+                    if (null != steps) {
+                        withSteps.add(processId);
+                    }
+                }));
+        assertFalse(withSteps.contains(alreadyRecovering));
+        assertTrue(withSteps.containsAll(processIds.subList(1, processIds.size())));
+
+        // ...and not unless asked for
+        MuPersistentLog defaultLog = new MuPersistentLog(pair.dataSource, pair.sqlStatements, policy().build());
+        assertFalse(defaultLog.fetchesRecoveryStepsInBatches());
+        assertTrue(defaultLog.recover(60, 3600, 1, () -> true,
+                (correlationId, processId, state, acceptCompensationFailure, created, modified, now, steps, leasedAt) -> assertTrue(null == steps)));
+    }
+
+    @Test
+    public void testRecoverStuckProcessWithStepsFetchedInBatches() throws Exception {
+        ManagedPair pair = newManagedPair(
+                "mu_process_manager_recover_batched_",
+                policy()
+                        .minutesToTrackProcess(1)
+                        .minutesBeforeAssumingProcessStuck(0)
+                        .secondsBetweenRecoveryAttempts(1)
+                        .secondsBetweenRecompensationAttempts(1)
+                        .batchRecoveryStepFetch(true)
+                        .recoveryStepBatchSize(2)
+                        .build()
+        );
+        List<String> correlationIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String correlationId = UUID.randomUUID().toString();
+            MuProcess process = pair.syncManager.newProcess(correlationId);
+            process.execute(c -> true, new BackwardSuccess(), new MuNativeActivityParameters());
+            process.execute(c -> true, new BackwardSuccess(), new MuNativeActivityParameters());
+            correlationIds.add(correlationId);
+        }
+
+        Thread.sleep(10);
+
+        pair.asyncManager.start();
+        try {
+            pair.asyncManager.recover();
+            for (String correlationId : correlationIds) {
+                assertEquals(MuProcessState.COMPENSATED, awaitProcessState(pair.syncManager, correlationId, MuProcessState.COMPENSATED, 5000));
+            }
+        } finally {
+            pair.asyncManager.stop();
+        }
+    }
+
+    @Test
+    public void testOnlyElectedLeaderRunsBackgroundTasks() throws Exception {
+        MuProcessManagementPolicy policy = policy()
+                .minutesToTrackProcess(60)
+                .minutesBeforeAssumingProcessStuck(1)
+                .secondsBetweenRecoveryAttempts(60)
+                .electRecoveryLeader(true)
+                .secondsOfLeaderLease(30)
+                .build();
+        ManagedPair pair = newManagedPair("mu_process_manager_leader_", policy);
+
+        // Two nodes, running against the same database
+        MuAsynchronousManagerImpl firstNode = new MuAsynchronousManagerImpl(pair.dataSource, pair.sqlStatements, policy);
+        MuAsynchronousManagerImpl secondNode = new MuAsynchronousManagerImpl(pair.dataSource, pair.sqlStatements, policy);
+
+        firstNode.start();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!firstNode.isLeader() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(firstNode.isLeader());
+
+            secondNode.heartbeat();
+            assertFalse(secondNode.isLeader());
+        } finally {
+            firstNode.stop();
+        }
+
+        // Leadership was let go when stopping, so the second node takes over right away
+        assertFalse(firstNode.isLeader());
+        secondNode.heartbeat();
+        assertTrue(secondNode.isLeader());
+    }
+
+    @Test
+    public void testOutcomeOfCompensationsIsWrittenTogether() throws Exception {
+        ManagedPair pair = newManagedPair(
+                "mu_process_manager_outcomes_",
+                policy()
+                        .minutesToTrackProcess(1)
+                        .build()
+        );
+        String correlationId = UUID.randomUUID().toString();
+        MuProcess process = pair.syncManager.newProcess(correlationId);
+        MuNativeActivityParameters parameters = new MuNativeActivityParameters();
+
+        process.execute(c -> true, new BackwardFail(), parameters);
+        process.execute(c -> true, new BackwardSuccess(), parameters);
+        process.execute(c -> true, new BackwardSuccess(), parameters);
+        try {
+            process.execute(c -> false, new BackwardSuccess(), parameters);
+            fail("Expected compensation failure to throw");
+        } catch (MuProcessBackwardBehaviourException expected) {
+        }
+
+        // Compensated steps are removed, while the step failing compensation is kept for retry
+        Optional<MuProcessDetails> details = pair.syncManager.getProcessDetails(correlationId);
+        assertTrue(details.isPresent());
+        assertEquals(MuProcessState.COMPENSATION_FAILED, details.get().getState());
+        assertEquals(1, details.get().getActivityDetails().size());
+        assertTrue(maxRetries(details.get()) >= 1);
+    }
+
     @Test
     public void testActivityRetriesIncreaseAfterRecovery() throws Exception {
         ManagedPair pair = newManagedPair(
@@ -283,4 +888,66 @@ public class MuProcessPersistentRecoveryTest extends AbstractMuProcessManagerTes
             pair.asyncManager.stop();
         }
     }
+
+    @Test
+    public void testProcessIsRecoveredByAtMostOneTaskAtATime() throws Exception {
+        ManagedPair pair = newManagedPair(
+                "mu_process_manager_in_flight_",
+                policy()
+                        .minutesToTrackProcess(1)
+                        .minutesBeforeAssumingProcessStuck(0)
+                        .secondsBetweenRecoveryAttempts(1)
+                        .secondsBetweenRecompensationAttempts(1)
+                        .build(),
+                new ExecutorWorkQueue(4)
+        );
+        BackwardBlockingCounter.reset();
+
+        String correlationId = UUID.randomUUID().toString();
+        MuProcess process = pair.syncManager.newProcess(correlationId);
+        process.execute(c -> true, new BackwardBlockingCounter(), new MuNativeActivityParameters());
+
+        Thread.sleep(10);
+
+        pair.asyncManager.start();
+        try {
+            // Concurrent recoveries all find the stuck process, but only one of them may submit it
+            final int recoveries = 4;
+            final CyclicBarrier barrier = new CyclicBarrier(recoveries);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < recoveries; i++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        barrier.await(DEFAULT_AWAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                        pair.asyncManager.recover();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            assertTrue(BackwardBlockingCounter.started.await(DEFAULT_AWAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            for (Thread thread : threads) {
+                thread.join(DEFAULT_AWAIT_TIMEOUT_MILLIS);
+                assertFalse(thread.isAlive());
+            }
+
+            // Compensation is still blocked, so the process is in flight
+            assertEquals(1L, pair.asyncManager.getSubmittedRecoveryCount());
+            assertTrue(pair.asyncManager.getDuplicateRecoveryCount() <= recoveries - 1);
+
+            // ...nor by a later recovery, while it is still in flight
+            pair.asyncManager.recover();
+            assertEquals(1L, pair.asyncManager.getSubmittedRecoveryCount());
+
+            BackwardBlockingCounter.release.countDown();
+            assertEquals(MuProcessState.COMPENSATED, awaitProcessState(pair.syncManager, correlationId, MuProcessState.COMPENSATED, DEFAULT_AWAIT_TIMEOUT_MILLIS));
+            assertEquals(1, BackwardBlockingCounter.CALLS.get());
+            assertEquals(1, BackwardBlockingCounter.MAX_RUNNING.get());
+        } finally {
+            BackwardBlockingCounter.release.countDown();
+            pair.asyncManager.stop();
+        }
+    }
 }
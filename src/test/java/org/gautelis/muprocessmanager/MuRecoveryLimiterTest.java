@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MuRecoveryLimiterTest {
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    @Test
+    public void testLimitGrowsWhileHeldBackAndLatencyIsSteady() throws Exception {
+        MuRecoveryLimiter limiter = new MuRecoveryLimiter(2, 1, 4);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.observeDatabaseLatency(10 * MILLIS);
+            limiter.observeCompensationLatency(100 * MILLIS);
+            runHeldBack(limiter);
+        }
+        assertEquals(4, limiter.getLimit()); // but not beyond max
+        assertEquals(10.0, limiter.getDatabaseLatencyMillis(), 0.01);
+        assertEquals(100.0, limiter.getCompensationBaselineMillis(), 0.01);
+    }
+
+    @Test
+    public void testLimitDoesNotGrowUnlessHeldBack() throws Exception {
+        MuRecoveryLimiter limiter = new MuRecoveryLimiter(2, 1, 4);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.observeDatabaseLatency(10 * MILLIS);
+            limiter.acquire();
+            limiter.release();
+        }
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getRunning());
+    }
+
+    @Test
+    public void testLimitBacksOffWhenLatencyGrows() throws Exception {
+        MuRecoveryLimiter limiter = new MuRecoveryLimiter(16, 2, 16);
+
+        // Establish baseline
+        for (int i = 0; i < 50; i++) {
+            limiter.observeDatabaseLatency(10 * MILLIS);
+            limiter.acquire();
+            limiter.release();
+        }
+        assertEquals(16, limiter.getLimit());
+
+        // Database gets busy
+        for (int i = 0; i < 16; i++) {
+            limiter.observeDatabaseLatency(100 * MILLIS);
+            limiter.acquire();
+            limiter.release();
+        }
+        int limit = limiter.getLimit();
+        assertTrue(limit < 16);
+
+        // ...and stays busy, but never below min
+        for (int i = 0; i < 100; i++) {
+            limiter.observeDatabaseLatency(100 * MILLIS);
+            limiter.acquire();
+            limiter.release();
+        }
+        assertTrue(limiter.getLimit() <= limit);
+        assertTrue(limiter.getLimit() >= 2);
+    }
+
+    @Test
+    public void testAcquireWaitsForLimit() throws Exception {
+        MuRecoveryLimiter limiter = new MuRecoveryLimiter(1, 1, 1);
+        limiter.acquire();
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        other.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        limiter.release();
+        assertTrue(acquired.await(2, TimeUnit.SECONDS));
+        assertEquals(1, limiter.getRunning());
+    }
+
+    /*
+     * Runs one task while another task is held back by the limit.
+     */
+    private static void runHeldBack(MuRecoveryLimiter limiter) throws Exception {
+        int limit = limiter.getLimit();
+        for (int i = 0; i < limit; i++) {
+            limiter.acquire();
+        }
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiting = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+        while (waiting.getState() != Thread.State.WAITING) {
+            Thread.sleep(1L);
+        }
+
+        for (int i = 0; i < limit; i++) {
+            limiter.release();
+        }
+        assertTrue(acquired.await(2, TimeUnit.SECONDS));
+        limiter.release();
+    }
+}
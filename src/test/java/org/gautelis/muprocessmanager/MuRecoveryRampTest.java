@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MuRecoveryRampTest {
+    @Test
+    public void testRateGrowsDuringWarmUp() {
+        AtomicLong clock = new AtomicLong(0L);
+        MuRecoveryRamp ramp = new MuRecoveryRamp(10_000L, 100, clock::get);
+        long deadline = System.currentTimeMillis() - 1L; // i.e. never wait
+
+        // A tenth of full rate at start, i.e. 10 tasks per second, and some more a second later
+        assertTrue(ramp.isWarmingUp());
+        assertEquals(0.1, ramp.fraction(), 0.001);
+        assertFalse(ramp.acquire(deadline));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1L));
+        int acquired = acquireAll(ramp, deadline);
+        assertTrue(acquired >= 10 && acquired < 20);
+
+        // Halfway, more than half of full rate
+        clock.set(TimeUnit.SECONDS.toNanos(5L));
+        ramp.acquire(deadline);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1L));
+        assertTrue(acquireAll(ramp, deadline) > 50);
+
+        // After warm-up, no limit
+        clock.set(TimeUnit.SECONDS.toNanos(10L));
+        assertFalse(ramp.isWarmingUp());
+        assertEquals(1.0, ramp.fraction(), 0.001);
+        assertEquals(1000, acquireAll(ramp, deadline));
+
+        // Restarting warms up again
+        ramp.begin();
+        assertTrue(ramp.isWarmingUp());
+        assertFalse(ramp.acquire(deadline));
+    }
+
+    @Test
+    public void testWorkIsSpreadOverWarmUp() {
+        AtomicLong clock = new AtomicLong(0L);
+        MuRecoveryRamp ramp = new MuRecoveryRamp(10_000L, 100, clock::get);
+
+        final int processes = 1000;
+        int[] dueAt = new int[11]; // number of processes due after each second
+        for (int second = 0; second <= 10; second++) {
+            clock.set(TimeUnit.SECONDS.toNanos(second));
+            for (long processId = 1; processId <= processes; processId++) {
+                if (ramp.isDue(processId)) {
+                    dueAt[second]++;
+                }
+            }
+        }
+
+        // Roughly a tenth more each second, everything at end of warm-up
+        for (int second = 1; second < 10; second++) {
+            assertEquals(second * processes / 10, dueAt[second], processes / 20);
+        }
+        assertEquals(processes, dueAt[10]);
+    }
+
+    @Test
+    public void testNoWarmUp() {
+        MuRecoveryRamp ramp = new MuRecoveryRamp(0L, 1);
+        long deadline = System.currentTimeMillis() - 1L;
+
+        assertFalse(ramp.isWarmingUp());
+        assertTrue(ramp.isDue(1L));
+        assertEquals(1000, acquireAll(ramp, deadline));
+    }
+
+    private static int acquireAll(MuRecoveryRamp ramp, long deadline) {
+        int acquired = 0;
+        while (acquired < 1000 && ramp.acquire(deadline)) {
+            acquired++;
+        }
+        return acquired;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2017-2026 Frode Randers
+ * All rights reserved
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.gautelis.muprocessmanager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MuRecoverySchedulerTest {
+    @Test
+    public void testLanesTakeTurnsAccordingToWeight() {
+        MuRecoveryScheduler scheduler = new MuRecoveryScheduler(new int[] {3, 1, 0, 0}, 0L);
+        List<String> order = new ArrayList<>();
+
+        // Housekeeping submitted first, should still wait
+        for (int i = 0; i < 2; i++) {
+            scheduler.add(MuRecoveryScheduler.Lane.RETENTION, () -> order.add("retention"), () -> {});
+        }
+        for (int i = 0; i < 4; i++) {
+            scheduler.add(MuRecoveryScheduler.Lane.RECOMPENSATION, () -> order.add("recompensation"), () -> {});
+        }
+        for (int i = 0; i < 6; i++) {
+            scheduler.add(MuRecoveryScheduler.Lane.STUCK, () -> order.add("stuck"), () -> {});
+        }
+
+        for (int i = 0; i < 12; i++) {
+            scheduler.runNext();
+        }
+
+        assertEquals(Arrays.asList(
+                "stuck", "stuck", "recompensation", "stuck",
+                "stuck", "stuck", "recompensation", "stuck",
+                "recompensation", "recompensation",
+                "retention", "retention"
+        ), order);
+
+        // No more tasks
+        scheduler.runNext();
+        assertEquals(12, order.size());
+    }
+
+    @Test
+    public void testWaitingTaskGoesFirst() throws Exception {
+        MuRecoveryScheduler scheduler = new MuRecoveryScheduler(new int[] {1, 1, 1, 1}, 10L);
+        List<String> order = new ArrayList<>();
+
+        scheduler.add(MuRecoveryScheduler.Lane.RETENTION, () -> order.add("retention"), () -> {});
+        Thread.sleep(50L);
+        scheduler.add(MuRecoveryScheduler.Lane.STUCK, () -> order.add("stuck"), () -> {});
+
+        scheduler.runNext();
+        scheduler.runNext();
+        assertEquals(Arrays.asList("retention", "stuck"), order);
+    }
+
+    @Test
+    public void testDropAndClearRunDropHandlers() {
+        MuRecoveryScheduler scheduler = new MuRecoveryScheduler(new int[] {1, 1, 1, 1}, 0L);
+        List<String> dropped = new ArrayList<>();
+
+        scheduler.add(MuRecoveryScheduler.Lane.RETENTION, () -> {}, () -> dropped.add("retention-1"));
+        scheduler.add(MuRecoveryScheduler.Lane.RETENTION, () -> {}, () -> dropped.add("retention-2"));
+        scheduler.add(MuRecoveryScheduler.Lane.STUCK, () -> {}, () -> dropped.add("stuck"));
+
+        // Most recently added task of least prioritized lane
+        scheduler.dropOne();
+        assertEquals(Arrays.asList("retention-2"), dropped);
+
+        scheduler.clear();
+        assertEquals(3, dropped.size());
+        assertTrue(dropped.containsAll(Arrays.asList("stuck", "retention-1")));
+        assertEquals(0, scheduler.size(MuRecoveryScheduler.Lane.STUCK));
+        assertEquals(0, scheduler.size(MuRecoveryScheduler.Lane.RETENTION));
+    }
+}